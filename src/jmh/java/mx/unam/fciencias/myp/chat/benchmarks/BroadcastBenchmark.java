@@ -0,0 +1,120 @@
+package mx.unam.fciencias.myp.chat.benchmarks;
+
+import mx.unam.fciencias.myp.chat.models.AbstractChatUser;
+import mx.unam.fciencias.myp.chat.services.ChatRoom;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Measures broadcasting messages to rooms of different sizes, from one and from several senders at once.
+ *
+ * @author Luis Daniel Aragon Bermudez 416041271
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BroadcastBenchmark {
+    /**
+     * Amount of online users.
+     */
+    @Param({"10", "100", "1000"})
+    public int roomSize;
+    /**
+     * The room.
+     */
+    private ChatRoom room;
+    /**
+     * The room's users.
+     */
+    private AbstractChatUser[] users;
+    /**
+     * Source of sender indexes, so that every benchmark thread sends on behalf of a different user.
+     */
+    private final AtomicInteger senders = new AtomicInteger();
+
+    /**
+     * Fills a fresh room before every iteration, so that its logs don't grow across iterations.
+     */
+    @Setup(Level.Iteration)
+    public void fill() {
+        room = new ChatRoom("broadcast");
+        users = new AbstractChatUser[roomSize];
+        for (int i = 0; i < roomSize; i++) {
+            users[i] = Users.mixed(i);
+            room.register(users[i]);
+        }
+    }
+
+    /**
+     * A benchmark thread's sender.
+     */
+    @State(Scope.Thread)
+    public static class Sender {
+        /**
+         * Index of the thread's sender in {@link BroadcastBenchmark#users}.
+         */
+        int index;
+
+        /**
+         * Picks the thread's sender.
+         *
+         * @param benchmark the benchmark's shared state.
+         */
+        @Setup
+        public void pick(BroadcastBenchmark benchmark) {
+            index = benchmark.senders.getAndIncrement() % benchmark.roomSize;
+        }
+    }
+
+    /**
+     * A single user broadcasts a message.
+     *
+     * @param sender the thread's sender.
+     */
+    @Benchmark
+    @Threads(1)
+    public void singleSender(Sender sender) {
+        users[sender.index].sendMessage(room, "Hello there!");
+    }
+
+    /**
+     * Four users broadcast messages at the same time.
+     *
+     * @param sender the thread's sender.
+     */
+    @Benchmark
+    @Threads(4)
+    public void multiSender(Sender sender) {
+        users[sender.index].sendMessage(room, "Hello there!");
+    }
+
+    /**
+     * A single user broadcasts an ephemeral message, which should allocate nothing (see the GC profiler's
+     * {@code gc.alloc.rate.norm}).
+     *
+     * @param sender the thread's sender.
+     * @return whether the message was delivered.
+     */
+    @Benchmark
+    @Threads(1)
+    public boolean ephemeral(Sender sender) {
+        return room.broadcast(users[sender.index], "Hello there!");
+    }
+}
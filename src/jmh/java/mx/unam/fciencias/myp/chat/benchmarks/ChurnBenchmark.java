@@ -0,0 +1,70 @@
+package mx.unam.fciencias.myp.chat.benchmarks;
+
+import mx.unam.fciencias.myp.chat.models.AbstractChatUser;
+import mx.unam.fciencias.myp.chat.services.ChatRoom;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures a user joining and then leaving rooms of different sizes. Both operations notify every online user.
+ *
+ * @author Luis Daniel Aragon Bermudez 416041271
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChurnBenchmark {
+    /**
+     * Amount of users that stay online. Filling a room notifies everyone already in it, so larger rooms take too long
+     * to set up; {@link MembershipBenchmark} measures the membership alone at larger sizes.
+     */
+    @Param({"10", "1000"})
+    public int roomSize;
+    /**
+     * The room.
+     */
+    private ChatRoom room;
+    /**
+     * Amount of users that have churned, used to name them.
+     */
+    private int churned;
+
+    /**
+     * Fills a fresh room before every iteration, so that its history doesn't grow across iterations.
+     */
+    @Setup(Level.Iteration)
+    public void fill() {
+        room = new ChatRoom("churn");
+        for (int i = 0; i < roomSize; i++) {
+            room.register(Users.mixed(i));
+        }
+    }
+
+    /**
+     * A new user joins the room and leaves right away.
+     *
+     * @return the user, so its work isn't eliminated.
+     */
+    @Benchmark
+    public AbstractChatUser joinAndLeave() {
+        AbstractChatUser user = Users.mixed(churned++);
+        room.register(user);
+        room.unregister(user);
+        return user;
+    }
+}
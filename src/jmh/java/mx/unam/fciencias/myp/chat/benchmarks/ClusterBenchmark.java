@@ -0,0 +1,162 @@
+package mx.unam.fciencias.myp.chat.benchmarks;
+
+import mx.unam.fciencias.myp.chat.models.AbstractChatUser;
+import mx.unam.fciencias.myp.chat.models.RoomHistory;
+import mx.unam.fciencias.myp.chat.services.ChatRoom;
+import mx.unam.fciencias.myp.chat.services.ClusterNode;
+import mx.unam.fciencias.myp.chat.services.LoopbackTransport;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Measures the aggregate throughput of rooms replicated over clusters of different sizes, linked by a
+ * {@link LoopbackTransport}. Every operation is a message that's forwarded to its room's owner, ordered and applied
+ * back on the sender's node, so adding nodes spreads both the ordering and the deliveries.
+ *
+ * @author Luis Daniel Aragon Bermudez 416041271
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ClusterBenchmark {
+    /**
+     * Amount of replicated rooms.
+     */
+    private static final int ROOMS = 8;
+    /**
+     * Amount of users in every room, spread evenly over the nodes.
+     */
+    private static final int ROOM_SIZE = 60;
+    /**
+     * Amount of nodes.
+     */
+    @Param({"1", "2", "4"})
+    public int nodeCount;
+    /**
+     * The cluster's nodes.
+     */
+    private ClusterNode[] nodes;
+    /**
+     * Every node's replica of every room, indexed by node and room.
+     */
+    private ChatRoom[][] rooms;
+    /**
+     * The users of every room, indexed by room. User i is connected to node {@code i % nodeCount}.
+     */
+    private AbstractChatUser[][] users;
+    /**
+     * Source of sender indexes, so that every benchmark thread sends to a different room.
+     */
+    private final AtomicInteger senders = new AtomicInteger();
+
+    /**
+     * Builds a fresh cluster before every iteration, so that the rooms' logs don't grow across iterations.
+     *
+     * @throws InterruptedException if interrupted while the users join.
+     */
+    @Setup(Level.Iteration)
+    public void fill() throws InterruptedException {
+        LoopbackTransport transport = new LoopbackTransport();
+        nodes = new ClusterNode[nodeCount];
+        rooms = new ChatRoom[nodeCount][ROOMS];
+        for (int n = 0; n < nodeCount; n++) {
+            nodes[n] = new ClusterNode("node" + n, transport);
+            for (int r = 0; r < ROOMS; r++) {
+                rooms[n][r] = new ChatRoom("room" + r);
+                nodes[n].replicate(rooms[n][r]);
+            }
+            nodes[n].start();
+        }
+        for (ClusterNode node : nodes) {
+            while (node.getNodes().size() < nodeCount) {
+                Thread.sleep(1);
+            }
+        }
+        users = new AbstractChatUser[ROOMS][ROOM_SIZE];
+        for (int r = 0; r < ROOMS; r++) {
+            for (int i = 0; i < ROOM_SIZE; i++) {
+                users[r][i] = Users.mixed(i);
+                rooms[i % nodeCount][r].register(users[r][i]);
+            }
+        }
+        for (ChatRoom[] replicas : rooms) {
+            for (ChatRoom room : replicas) {
+                while (room.getOnlineCount() < ROOM_SIZE) {
+                    Thread.sleep(1);
+                }
+            }
+        }
+    }
+
+    /**
+     * Takes every node out of the cluster, which stops their threads.
+     */
+    @TearDown(Level.Iteration)
+    public void stop() {
+        for (ClusterNode node : nodes) {
+            node.stop();
+        }
+    }
+
+    /**
+     * A benchmark thread's sender.
+     */
+    @State(Scope.Thread)
+    public static class Sender {
+        /**
+         * The room the thread sends to, as replicated by its sender's node.
+         */
+        ChatRoom room;
+        /**
+         * The thread's sender.
+         */
+        AbstractChatUser user;
+
+        /**
+         * Picks the thread's room and sender, spreading the threads over the nodes.
+         *
+         * @param benchmark the benchmark's shared state.
+         */
+        @Setup(Level.Iteration)
+        public void pick(ClusterBenchmark benchmark) {
+            int index = benchmark.senders.getAndIncrement();
+            int node = index % benchmark.nodeCount;
+            room = benchmark.rooms[node][index % ROOMS];
+            user = benchmark.users[index % ROOMS][node];
+        }
+    }
+
+    /**
+     * Four users in different rooms send a message and wait until their node has applied it.
+     *
+     * @param sender the thread's sender.
+     */
+    @Benchmark
+    @Threads(4)
+    public void roundTrip(Sender sender) {
+        RoomHistory history = sender.room.getHistory();
+        long sent = history.getNextSequence();
+        sender.user.sendMessage(sender.room, "Hello there!");
+        while (history.getNextSequence() <= sent) {
+            Thread.yield();
+        }
+    }
+}
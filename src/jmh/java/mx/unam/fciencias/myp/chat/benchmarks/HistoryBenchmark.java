@@ -0,0 +1,113 @@
+package mx.unam.fciencias.myp.chat.benchmarks;
+
+import mx.unam.fciencias.myp.chat.models.AbstractChatUser;
+import mx.unam.fciencias.myp.chat.services.ChatRoom;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures reading a user's chat history and the room's logs after a number of messages.
+ *
+ * @author Luis Daniel Aragon Bermudez 416041271
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HistoryBenchmark {
+    /**
+     * Amount of messages broadcast before reading.
+     */
+    @Param({"100", "10000"})
+    public int messages;
+    /**
+     * The room.
+     */
+    private ChatRoom room;
+    /**
+     * The user whose history is read.
+     */
+    private AbstractChatUser reader;
+    /**
+     * Amount of lines before the history's last page. The room may have evicted the oldest messages.
+     */
+    private long lastPageStart;
+    /**
+     * Sequence number of the first notification in the logs' last page.
+     */
+    private long lastLogsPage;
+
+    /**
+     * Broadcasts the messages.
+     */
+    @Setup
+    public void fill() {
+        room = new ChatRoom("history");
+        reader = Users.of("es-MX", "reader");
+        AbstractChatUser writer = Users.of("en-GB", "writer");
+        room.register(reader);
+        room.register(writer);
+        for (int i = 0; i < messages; i++) {
+            writer.sendMessage(room, "Message #" + i);
+        }
+        lastPageStart = Math.max(0, reader.getChatHistory().size() - 50);
+        lastLogsPage = Math.max(0, room.getHistory().getNextSequence() - 50);
+    }
+
+    /**
+     * Reads the whole history.
+     *
+     * @return the history.
+     */
+    @Benchmark
+    public List<String> wholeHistory() {
+        return reader.getChatHistory();
+    }
+
+    /**
+     * Reads the last page of the history, as a client scrolling back would.
+     *
+     * @param blackhole consumes the lines.
+     * @return the amount of lines read.
+     */
+    @Benchmark
+    public int lastPage(Blackhole blackhole) {
+        return reader.readChatHistory(lastPageStart, 50, blackhole::consume);
+    }
+
+    /**
+     * Copies the room's logs.
+     *
+     * @return the logs.
+     */
+    @Benchmark
+    public List<String> logs() {
+        return room.getLogs();
+    }
+
+    /**
+     * Reads the last page of the room's logs from its sequence number.
+     *
+     * @param blackhole consumes the lines.
+     * @return the sequence number after the page.
+     */
+    @Benchmark
+    public long lastLogsPage(Blackhole blackhole) {
+        return room.readLogs(lastLogsPage, 50, blackhole::consume);
+    }
+}
@@ -0,0 +1,100 @@
+package mx.unam.fciencias.myp.chat.benchmarks;
+
+import mx.unam.fciencias.myp.chat.models.AbstractChatUser;
+import mx.unam.fciencias.myp.chat.services.Membership;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures a room's set of online users on its own, without notifying anyone, at sizes too large to fill a room with.
+ *
+ * @author Luis Daniel Aragon Bermudez 416041271
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MembershipBenchmark {
+    /**
+     * Amount of members.
+     */
+    @Param({"10", "1000", "100000"})
+    public int size;
+    /**
+     * The membership.
+     */
+    private Membership membership;
+    /**
+     * The members.
+     */
+    private AbstractChatUser[] members;
+    /**
+     * A user that joins and leaves.
+     */
+    private AbstractChatUser churner;
+    /**
+     * Amount of lookups made, used to pick the member looked up.
+     */
+    private int lookups;
+
+    /**
+     * Fills the membership.
+     */
+    @Setup
+    public void fill() {
+        membership = new Membership(16);
+        members = new AbstractChatUser[size];
+        for (int i = 0; i < size; i++) {
+            members[i] = Users.mixed(i);
+            membership.add(members[i]);
+        }
+        churner = Users.mixed(size);
+    }
+
+    /**
+     * A user joins and leaves right away. Leaving moves the last member to the user's slot.
+     *
+     * @return whether the user left, so the work isn't eliminated.
+     */
+    @Benchmark
+    public boolean addAndRemove() {
+        membership.add(churner);
+        return membership.remove(churner);
+    }
+
+    /**
+     * Looks a member up.
+     *
+     * @return whether the member's online.
+     */
+    @Benchmark
+    public boolean contains() {
+        return membership.contains(members[lookups++ % size]);
+    }
+
+    /**
+     * A user joins and leaves, then the members are listed as a broadcast would, which rebuilds the snapshot.
+     *
+     * @return the members.
+     */
+    @Benchmark
+    public List<AbstractChatUser> churnAndSnapshot() {
+        membership.add(churner);
+        membership.remove(churner);
+        return membership.snapshot();
+    }
+}
@@ -0,0 +1,91 @@
+package mx.unam.fciencias.myp.chat.benchmarks;
+
+import mx.unam.fciencias.myp.chat.models.AbstractChatUser;
+import mx.unam.fciencias.myp.chat.models.ChatNotification;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how users of each bundled locale render notifications through {@link AbstractChatUser#update}.
+ *
+ * @author Luis Daniel Aragon Bermudez 416041271
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RenderBenchmark {
+    /**
+     * The recipient's locale.
+     */
+    @Param({"es-MX", "es-ES", "en-GB"})
+    public String locale;
+    /**
+     * The recipient.
+     */
+    private AbstractChatUser recipient;
+    /**
+     * The sender.
+     */
+    private AbstractChatUser sender;
+    /**
+     * A notification that's been rendered before.
+     */
+    private ChatNotification rendered;
+
+    /**
+     * Builds the users and renders {@link #rendered} once.
+     */
+    @Setup
+    public void prepare() {
+        recipient = Users.of(locale, "recipient");
+        sender = Users.of(locale, "sender");
+        rendered = new ChatNotification(sender, "Hello there!", ChatNotification.NEW_MESSAGE);
+        recipient.update(rendered);
+    }
+
+    /**
+     * Renders a new message, as the first recipient of every broadcast does.
+     */
+    @Benchmark
+    public void message() {
+        recipient.update(new ChatNotification(sender, "Hello there!", ChatNotification.NEW_MESSAGE));
+    }
+
+    /**
+     * Renders a message the recipient's locale has already rendered, as every other recipient does.
+     */
+    @Benchmark
+    public void cachedMessage() {
+        recipient.update(rendered);
+    }
+
+    /**
+     * Renders someone joining.
+     */
+    @Benchmark
+    public void joined() {
+        recipient.update(new ChatNotification(sender, "sender joined", ChatNotification.NEW_USER));
+    }
+
+    /**
+     * Renders the recipient itself leaving.
+     */
+    @Benchmark
+    public void leftSelf() {
+        recipient.update(new ChatNotification(recipient, "recipient left", ChatNotification.USER_LEFT));
+    }
+}
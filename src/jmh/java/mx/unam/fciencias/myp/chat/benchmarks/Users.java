@@ -0,0 +1,57 @@
+package mx.unam.fciencias.myp.chat.benchmarks;
+
+import mx.unam.fciencias.myp.chat.models.AbstractChatUser;
+import mx.unam.fciencias.myp.chat.models.Sink;
+import mx.unam.fciencias.myp.chat.services.LocaleRegistry;
+import mx.unam.fciencias.myp.chat.services.LocalizedChatUser;
+
+/**
+ * Builds the users the benchmarks work with. Their lines are written as shared UTF-8 bytes to a sink that discards
+ * everything, so benchmarks measure the chat and not the console.
+ *
+ * @author Luis Daniel Aragon Bermudez 416041271
+ */
+final class Users {
+    /**
+     * Sink shared by every benchmark user, it discards everything written to it.
+     */
+    static final Sink DISCARD = line -> {
+    };
+
+    /**
+     * Private constructor.
+     */
+    private Users() {
+    }
+
+    /**
+     * Builds a user of the chat's bundled locales.
+     *
+     * @param locale   "es-MX", "es-ES" or "en-GB".
+     * @param username the user's username.
+     * @return the user.
+     */
+    static AbstractChatUser of(String locale, String username) {
+        LocaleRegistry registry = LocaleRegistry.getDefault();
+        if (!registry.getLocaleIds().contains(locale))
+            throw new IllegalArgumentException(String.format("Unknown locale: %s", locale));
+        return new LocalizedChatUser(username, DISCARD, registry, locale);
+    }
+
+    /**
+     * Builds a user of the i-th bundled locale, so that consecutive users cycle through all of them.
+     *
+     * @param i the user's index.
+     * @return the user.
+     */
+    static AbstractChatUser mixed(int i) {
+        switch (i % 3) {
+            case 0:
+                return of("es-MX", "user" + i);
+            case 1:
+                return of("es-ES", "user" + i);
+            default:
+                return of("en-GB", "user" + i);
+        }
+    }
+}
@@ -57,14 +57,14 @@ public class ChatDemo {
 
         // Print chat events
         System.out.println("Chat history: ");
-        chat.getLogs().forEach(System.out::println);
+        chat.readLogs(0, Integer.MAX_VALUE, System.out::println);
         System.out.println();
 
         // Print chat history for each user:
         AbstractChatUser[] users = {juan, raul, john};
         for (AbstractChatUser user : users) {
             System.out.println(user.getUsername() + " saw:");
-            user.getChatHistory().forEach(System.out::println);
+            user.readChatHistory(0, Integer.MAX_VALUE, System.out::println);
             System.out.println();
         }
 
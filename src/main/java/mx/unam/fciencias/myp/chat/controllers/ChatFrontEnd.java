@@ -0,0 +1,568 @@
+package mx.unam.fciencias.myp.chat.controllers;
+
+import mx.unam.fciencias.myp.chat.models.AbstractChatUser;
+import mx.unam.fciencias.myp.chat.services.AsyncDispatcher;
+import mx.unam.fciencias.myp.chat.services.ChatRoom;
+import mx.unam.fciencias.myp.chat.services.LocaleRegistry;
+import mx.unam.fciencias.myp.chat.services.LocalizedChatUser;
+import mx.unam.fciencias.myp.chat.services.MetricsReporter;
+
+import javax.management.JMException;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>TCP front-end that lets remote clients join a {@link ChatRoom}.</p>
+ * <p>The protocol is line-based UTF-8 text. A client's first line is its username followed by its locale id (i.e.
+ * {@code "John en-GB"}), every following line is a message, {@code /ping} keeps an idle client from being evicted (see
+ * {@link ChatRoom#trackPresence}) and {@code /quit} leaves the room. Every connection is mapped to a
+ * {@link LocalizedChatUser} whose screen writes into the connection's outbound queue.</p>
+ * <p>Connections are spread across a small pool of selector threads. Outbound lines are queued per connection and
+ * sent with gathering writes once the socket is writable; connections whose queue exceeds its limit are dropped, so a
+ * slow client only hurts itself. Likewise, a client that sends a line longer than {@link #MAX_LINE_LENGTH} bytes is
+ * dropped instead of being buffered until it ends.</p>
+ *
+ * @author Luis Daniel Aragon Bermudez 416041271
+ */
+public class ChatFrontEnd implements Closeable {
+    /**
+     * Maximum amount of buffers sent by a single gathering write.
+     */
+    private static final int GATHER_LIMIT = 64;
+    /**
+     * Size of each connection's read buffer.
+     */
+    private static final int READ_BUFFER_SIZE = 4096;
+    /**
+     * Maximum length of a line sent by a client, in bytes and without its line terminator.
+     */
+    static final int MAX_LINE_LENGTH = 16 * 1024;
+    /**
+     * The room clients join.
+     */
+    private final ChatRoom room;
+    /**
+     * Registry that holds the clients' locales.
+     */
+    private final LocaleRegistry registry;
+    /**
+     * Maximum amount of bytes queued for a single connection.
+     */
+    private final int maxPendingBytes;
+    /**
+     * The listening socket.
+     */
+    private final ServerSocketChannel server;
+    /**
+     * Selector threads connections are spread across.
+     */
+    private final SelectorLoop[] loops;
+    /**
+     * Thread that accepts connections.
+     */
+    private final Thread acceptor;
+    /**
+     * Amount of open connections.
+     */
+    private final AtomicInteger connections = new AtomicInteger();
+    /**
+     * Whether the front-end has been closed.
+     */
+    private volatile boolean closed;
+
+    /**
+     * Starts listening for clients.
+     *
+     * @param room            the room clients join.
+     * @param registry        registry that holds the clients' locales.
+     * @param address         address to listen on.
+     * @param selectorThreads amount of selector threads.
+     * @param maxPendingBytes maximum amount of bytes queued for a single connection before it's dropped.
+     * @throws IOException if the address can't be bound.
+     */
+    public ChatFrontEnd(ChatRoom room, LocaleRegistry registry, InetSocketAddress address, int selectorThreads,
+                        int maxPendingBytes) throws IOException {
+        if (selectorThreads < 1 || maxPendingBytes < 1)
+            throw new IllegalArgumentException("Invalid selector thread count or pending byte limit.");
+        this.room = room;
+        this.registry = registry;
+        this.maxPendingBytes = maxPendingBytes;
+        this.server = ServerSocketChannel.open();
+        server.bind(address, 1024);
+        this.loops = new SelectorLoop[selectorThreads];
+        for (int i = 0; i < selectorThreads; i++) {
+            loops[i] = new SelectorLoop(String.format("chat-selector-%d", i));
+        }
+        this.acceptor = new Thread(this::accept, "chat-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    /**
+     * Runs a front-end for a room delivered by an {@link AsyncDispatcher}.
+     *
+     * @param args the port to listen on (defaults to 4000), the amount of selector threads (defaults to the
+     *             amount of available cores) and the seconds between metrics dumps (defaults to 0, no dumps). The
+     *             metrics are also exposed through JMX.
+     * @throws IOException          if the port can't be bound.
+     * @throws InterruptedException if interrupted while serving.
+     * @throws JMException          if the metrics can't be exposed through JMX.
+     */
+    public static void main(String[] args) throws IOException, InterruptedException, JMException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 4000;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        ExecutorService delivery = Executors.newWorkStealingPool();
+        ChatRoom room = new ChatRoom("lobby", new AsyncDispatcher(delivery));
+        ChatFrontEnd frontEnd = new ChatFrontEnd(
+                room, LocaleRegistry.getDefault(), new InetSocketAddress(port), threads, 1 << 20
+        );
+        room.getMetrics().register();
+        AbstractChatUser.getDeliveryMetrics().register();
+        int dumpPeriod = args.length > 2 ? Integer.parseInt(args[2]) : 0;
+        if (dumpPeriod > 0) {
+            ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor(task -> {
+                Thread thread = new Thread(task, "chat-metrics");
+                thread.setDaemon(true);
+                return thread;
+            });
+            new MetricsReporter(System.out, () -> Collections.singletonList(room))
+                    .schedule(reporter, dumpPeriod, TimeUnit.SECONDS);
+        }
+        System.out.println("Listening on " + frontEnd.getLocalAddress());
+        // every front-end thread is a daemon, so keep the JVM alive for as long as it accepts clients.
+        frontEnd.acceptor.join();
+    }
+
+    /**
+     * Retrieves the address the front-end's listening on.
+     *
+     * @return the local address.
+     * @throws IOException if the socket's closed.
+     */
+    public InetSocketAddress getLocalAddress() throws IOException {
+        return (InetSocketAddress) server.getLocalAddress();
+    }
+
+    /**
+     * Retrieves the amount of open connections.
+     *
+     * @return the amount of open connections.
+     */
+    public int getConnectionCount() {
+        return connections.get();
+    }
+
+    /**
+     * Stops accepting clients and closes every connection, unregistering their users.
+     *
+     * @throws IOException if the listening socket can't be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        server.close();
+        for (SelectorLoop loop : loops) {
+            loop.shutdown();
+        }
+    }
+
+    /**
+     * Acceptor thread's main loop. Connections are handed to the selector threads round-robin.
+     */
+    private void accept() {
+        int next = 0;
+        while (!closed) {
+            try {
+                SocketChannel channel = server.accept();
+                channel.configureBlocking(false);
+                channel.socket().setTcpNoDelay(true);
+                loops[next].adopt(channel);
+                next = (next + 1) % loops.length;
+            } catch (IOException e) {
+                if (!server.isOpen()) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * A selector thread along with the tasks other threads have asked it to run.
+     */
+    private final class SelectorLoop implements Runnable {
+        /**
+         * The selector.
+         */
+        private final Selector selector;
+        /**
+         * Tasks to run on the selector thread.
+         */
+        private final ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+        /**
+         * The selector thread.
+         */
+        private final Thread thread;
+
+        SelectorLoop(String name) throws IOException {
+            this.selector = Selector.open();
+            this.thread = new Thread(this, name);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        /**
+         * Runs a task on the selector thread.
+         *
+         * @param task the task.
+         */
+        void execute(Runnable task) {
+            tasks.add(task);
+            selector.wakeup();
+        }
+
+        /**
+         * Starts serving a connection.
+         *
+         * @param channel the connection's channel.
+         */
+        void adopt(SocketChannel channel) {
+            execute(() -> {
+                try {
+                    Connection connection = new Connection(this, channel);
+                    connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+                    connections.incrementAndGet();
+                } catch (ClosedChannelException e) {
+                    // the client's already gone.
+                }
+            });
+        }
+
+        /**
+         * Closes every connection and stops the thread.
+         */
+        void shutdown() {
+            execute(() -> {
+                for (SelectionKey key : selector.keys()) {
+                    ((Connection) key.attachment()).close();
+                }
+                try {
+                    selector.close();
+                } catch (IOException e) {
+                    // nothing left to release.
+                }
+            });
+        }
+
+        @Override
+        public void run() {
+            while (selector.isOpen()) {
+                try {
+                    selector.select();
+                } catch (IOException e) {
+                    return;
+                }
+                Runnable task;
+                while ((task = tasks.poll()) != null) {
+                    task.run();
+                }
+                if (!selector.isOpen()) {
+                    return;
+                }
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    Connection connection = (Connection) key.attachment();
+                    try {
+                        if (key.isValid() && key.isReadable()) {
+                            connection.read();
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            connection.write();
+                        }
+                    } catch (IOException e) {
+                        connection.close();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * A client connection. Reading happens on the owning selector thread; lines can be queued from any thread.
+     */
+    private final class Connection {
+        /**
+         * The selector thread that owns the connection.
+         */
+        private final SelectorLoop loop;
+        /**
+         * The connection's channel.
+         */
+        private final SocketChannel channel;
+        /**
+         * Incoming bytes.
+         */
+        private final ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        /**
+         * Bytes of the incoming line being read.
+         */
+        private final ByteArrayOutputStream line = new ByteArrayOutputStream(128);
+        /**
+         * Outbound buffers. Guarded by the connection's monitor.
+         */
+        private final ArrayDeque<ByteBuffer> writes = new ArrayDeque<>();
+        /**
+         * Reusable array used to gather outbound buffers. Only used by the selector thread.
+         */
+        private final ByteBuffer[] gather = new ByteBuffer[GATHER_LIMIT];
+        /**
+         * The connection's key.
+         */
+        private SelectionKey key;
+        /**
+         * The connection's user, once it's logged in.
+         */
+        private AbstractChatUser user;
+        /**
+         * Amount of outbound bytes queued. Guarded by the connection's monitor.
+         */
+        private long pendingBytes;
+        /**
+         * Whether the selector thread's been asked to watch for writability. Guarded by the connection's monitor.
+         */
+        private boolean writeScheduled;
+        /**
+         * Whether the connection's been closed.
+         */
+        private volatile boolean closed;
+
+        Connection(SelectorLoop loop, SocketChannel channel) {
+            this.loop = loop;
+            this.channel = channel;
+        }
+
+        /**
+         * Reads whatever the client sent and handles every complete line. Closes the connection if a line's too long.
+         *
+         * @throws IOException if the read fails.
+         */
+        void read() throws IOException {
+            if (channel.read(readBuffer) < 0) {
+                close();
+                return;
+            }
+            readBuffer.flip();
+            while (readBuffer.hasRemaining() && !closed) {
+                byte b = readBuffer.get();
+                if (b == '\n') {
+                    String text = new String(line.toByteArray(), StandardCharsets.UTF_8);
+                    int length = text.endsWith("\r") ? line.size() - 1 : line.size();
+                    line.reset();
+                    if (length > MAX_LINE_LENGTH) {
+                        close();
+                    } else {
+                        handle(text.substring(0, text.endsWith("\r") ? text.length() - 1 : text.length()));
+                    }
+                } else if (line.size() <= MAX_LINE_LENGTH) {
+                    // one extra byte for the carriage return that may end the line.
+                    line.write(b);
+                } else {
+                    close();
+                }
+            }
+            readBuffer.clear();
+        }
+
+        /**
+         * Handles a line sent by the client.
+         *
+         * @param text the line.
+         */
+        private void handle(String text) {
+            if (user == null) {
+                login(text);
+            } else if (text.equals("/quit")) {
+                close();
+            } else if (text.equals("/ping")) {
+                room.heartbeat(user);
+            } else if (!text.isEmpty()) {
+                try {
+                    user.sendMessage(room, text);
+                } catch (IllegalStateException e) {
+                    close();
+                }
+            }
+        }
+
+        /**
+         * Creates and registers the connection's user.
+         *
+         * @param text the login line.
+         */
+        private void login(String text) {
+            String[] parts = text.trim().split("\\s+");
+            if (parts.length != 2 || !registry.getLocaleIds().contains(parts[1])) {
+                enqueue(ByteBuffer.wrap("Expected: <username> <locale>\n".getBytes(StandardCharsets.UTF_8)));
+                return;
+            }
+            try {
+                PrintStream screen = new PrintStream(new ConnectionStream(this), true, "UTF-8");
+                user = new LocalizedChatUser(parts[0], screen, registry, parts[1]);
+            } catch (UnsupportedEncodingException e) {
+                throw new IllegalStateException(e);
+            }
+            room.register(user);
+        }
+
+        /**
+         * Queues bytes to be sent to the client. Drops the connection if too many bytes are queued.
+         *
+         * @param buffer the bytes.
+         */
+        void enqueue(ByteBuffer buffer) {
+            boolean schedule = false;
+            boolean overflow = false;
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                if (pendingBytes + buffer.remaining() > maxPendingBytes) {
+                    overflow = true;
+                } else {
+                    writes.add(buffer);
+                    pendingBytes += buffer.remaining();
+                    if (!writeScheduled) {
+                        writeScheduled = true;
+                        schedule = true;
+                    }
+                }
+            }
+            if (overflow) {
+                loop.execute(this::close);
+            } else if (schedule) {
+                loop.execute(this::watchWritability);
+            }
+        }
+
+        /**
+         * Asks the selector to report when the connection's writable.
+         */
+        private void watchWritability() {
+            if (key != null && key.isValid()) {
+                key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+            }
+        }
+
+        /**
+         * Sends as many queued buffers as the socket accepts with a single gathering write.
+         *
+         * @throws IOException if the write fails.
+         */
+        void write() throws IOException {
+            synchronized (this) {
+                int count = 0;
+                for (ByteBuffer buffer : writes) {
+                    if (count == GATHER_LIMIT) {
+                        break;
+                    }
+                    gather[count++] = buffer;
+                }
+                long written = channel.write(gather, 0, count);
+                pendingBytes -= written;
+                while (!writes.isEmpty() && !writes.peekFirst().hasRemaining()) {
+                    writes.pollFirst();
+                }
+                Arrays.fill(gather, 0, count, null);
+                if (writes.isEmpty()) {
+                    writeScheduled = false;
+                    key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+                }
+            }
+        }
+
+        /**
+         * Closes the connection, unregistering its user. Only called from the selector thread.
+         */
+        void close() {
+            if (closed) {
+                return;
+            }
+            synchronized (this) {
+                closed = true;
+                writes.clear();
+            }
+            connections.decrementAndGet();
+            if (user != null) {
+                room.unregister(user);
+            }
+            if (key != null) {
+                key.cancel();
+            }
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // nothing left to release.
+            }
+        }
+    }
+
+    /**
+     * Output stream that turns whatever a user's screen prints into buffers queued on its connection. Bytes are
+     * accumulated until the screen's flushed, which a {@link PrintStream} with automatic flushing does after every line.
+     */
+    private static final class ConnectionStream extends OutputStream {
+        /**
+         * The connection.
+         */
+        private final Connection connection;
+        /**
+         * Bytes printed since the last flush.
+         */
+        private final ByteArrayOutputStream pending = new ByteArrayOutputStream(128);
+
+        ConnectionStream(Connection connection) {
+            this.connection = connection;
+        }
+
+        @Override
+        public synchronized void write(int b) {
+            pending.write(b);
+        }
+
+        @Override
+        public synchronized void write(byte[] bytes, int offset, int length) {
+            pending.write(bytes, offset, length);
+        }
+
+        @Override
+        public synchronized void flush() {
+            if (pending.size() > 0) {
+                connection.enqueue(ByteBuffer.wrap(pending.toByteArray()));
+                pending.reset();
+            }
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package mx.unam.fciencias.myp.chat.controllers;
+
+import mx.unam.fciencias.myp.chat.models.LatencyHistogram;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+
+/**
+ * <p>Loopback load generator for {@link ChatFrontEnd}.</p>
+ * <p>Opens many connections from a single selector thread and logs each one in. Once every client has seen its own
+ * join notification, and thus every client is in the room, each one sends a number of {@code ping <nanoTime>}
+ * messages. Since every client runs in the same process, whoever receives a ping can compute
+ * its send-to-deliver latency. Once every ping has reached every client, or the timeout expires, it reports throughput
+ * and latency percentiles.</p>
+ *
+ * @author Luis Daniel Aragon Bermudez 416041271
+ */
+public class LoadTestClient {
+    /**
+     * Marker that precedes a ping's timestamp.
+     */
+    private static final String PING = "ping ";
+    /**
+     * The line a client sees once it has joined, clients log in using the "en-GB" locale.
+     */
+    private static final String JOINED = "You have joined";
+
+    /**
+     * Runs the load test.
+     *
+     * @param args host (defaults to localhost), port (defaults to 4000), amount of connections (defaults to 100),
+     *             messages per connection (defaults to 100) and timeout in seconds (defaults to 60).
+     * @throws IOException if the server can't be reached.
+     */
+    public static void main(String[] args) throws IOException {
+        String host = args.length > 0 ? args[0] : "localhost";
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : 4000;
+        int connections = args.length > 2 ? Integer.parseInt(args[2]) : 100;
+        int messages = args.length > 3 ? Integer.parseInt(args[3]) : 100;
+        long timeout = (args.length > 4 ? Long.parseLong(args[4]) : 60) * 1_000_000_000L;
+
+        long expected = (long) connections * connections * messages;
+        LatencyHistogram latencies = new LatencyHistogram();
+        long received = 0;
+        int joined = 0;
+        boolean started = false;
+
+        Selector selector = Selector.open();
+        InetSocketAddress address = new InetSocketAddress(host, port);
+        for (int i = 0; i < connections; i++) {
+            SocketChannel channel = SocketChannel.open();
+            channel.configureBlocking(false);
+            channel.connect(address);
+            channel.register(selector, SelectionKey.OP_CONNECT, new Client(i, messages));
+        }
+
+        long start = System.nanoTime();
+        while (received < expected && System.nanoTime() - start < timeout) {
+            selector.select(100);
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+                Client client = (Client) key.attachment();
+                SocketChannel channel = (SocketChannel) key.channel();
+                if (key.isConnectable() && channel.finishConnect()) {
+                    key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                }
+                if (key.isValid() && key.isWritable() && client.write(channel, started)) {
+                    key.interestOps(SelectionKey.OP_READ);
+                }
+                if (key.isValid() && key.isReadable()) {
+                    boolean wasJoined = client.joined;
+                    received += client.read(channel, latencies);
+                    joined += !wasJoined && client.joined ? 1 : 0;
+                }
+            }
+            if (!started && joined == connections) {
+                started = true;
+                for (SelectionKey key : selector.keys()) {
+                    if (key.isValid()) {
+                        key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                    }
+                }
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        selector.close();
+
+        System.out.printf("connections=%d messages/connection=%d%n", connections, messages);
+        System.out.printf("deliveries=%d/%d in %.3f s (%.0f deliveries/s)%n",
+                received, expected, elapsed / 1e9, received / (elapsed / 1e9));
+        if (received > 0) {
+            System.out.printf("latency p50=%.3f ms p99=%.3f ms p99.9=%.3f ms max=%.3f ms%n",
+                    latencies.getPercentile(50) / 1e6, latencies.getPercentile(99) / 1e6,
+                    latencies.getPercentile(99.9) / 1e6, latencies.getMax() / 1e6);
+        }
+    }
+
+    /**
+     * A simulated client.
+     */
+    private static final class Client {
+        /**
+         * Outbound bytes: the login line followed by every ping.
+         */
+        private final ByteBuffer outbound;
+        /**
+         * Incoming bytes.
+         */
+        private final ByteBuffer inbound = ByteBuffer.allocate(16 * 1024);
+        /**
+         * Amount of pings that still have to be written into {@link #outbound}.
+         */
+        private int pingsLeft;
+        /**
+         * Whether the client has seen its own join notification.
+         */
+        private boolean joined;
+
+        Client(int id, int messages) {
+            this.outbound = ByteBuffer.allocate(64 * 1024);
+            this.pingsLeft = messages;
+            outbound.put(String.format("client%d en-GB%n", id).getBytes(StandardCharsets.UTF_8));
+            outbound.flip();
+        }
+
+        /**
+         * Writes pending bytes, generating pings as the buffer drains so their timestamps are fresh.
+         *
+         * @param channel the client's channel.
+         * @param started whether every client has joined and pings can be sent.
+         * @return true once there's nothing left to write for now.
+         * @throws IOException if the write fails.
+         */
+        boolean write(SocketChannel channel, boolean started) throws IOException {
+            if (started && !outbound.hasRemaining() && pingsLeft > 0) {
+                outbound.clear();
+                while (pingsLeft > 0 && outbound.remaining() > 64) {
+                    outbound.put((PING + System.nanoTime() + "\n").getBytes(StandardCharsets.UTF_8));
+                    pingsLeft--;
+                }
+                outbound.flip();
+            }
+            channel.write(outbound);
+            return !outbound.hasRemaining() && (!started || pingsLeft == 0);
+        }
+
+        /**
+         * Reads incoming lines and records the latency of every ping found.
+         *
+         * @param channel   the client's channel.
+         * @param latencies histogram the latencies are recorded into, in nanoseconds.
+         * @return the amount of latencies recorded.
+         * @throws IOException if the read fails.
+         */
+        int read(SocketChannel channel, LatencyHistogram latencies) throws IOException {
+            int received = 0;
+            if (channel.read(inbound) < 0) {
+                channel.close();
+                return received;
+            }
+            long now = System.nanoTime();
+            inbound.flip();
+            int lineStart = 0;
+            for (int i = 0; i < inbound.limit(); i++) {
+                if (inbound.get(i) == '\n') {
+                    String line = new String(inbound.array(), lineStart, i - lineStart, StandardCharsets.UTF_8);
+                    int ping = line.lastIndexOf(PING);
+                    if (line.startsWith(JOINED)) {
+                        joined = true;
+                    } else if (ping >= 0) {
+                        latencies.record(now - Long.parseLong(line.substring(ping + PING.length()).trim()));
+                        received++;
+                    }
+                    lineStart = i + 1;
+                }
+            }
+            inbound.position(lineStart);
+            inbound.compact();
+            return received;
+        }
+    }
+}
@@ -1,8 +1,17 @@
 package mx.unam.fciencias.myp.chat.models;
 
+import java.io.OutputStream;
 import java.io.PrintStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
 /**
  * Basic Chat user template.
@@ -11,9 +20,69 @@ import java.util.List;
  */
 public abstract class AbstractChatUser {
     /**
-     * Holds the user's chat history.
+     * Compiled templates of every concrete user class, built the first time one of its instances renders a line.
      */
-    private final ArrayList<String> chatHistory;
+    private static final ConcurrentHashMap<Class<?>, LocaleTemplates> TEMPLATES = new ConcurrentHashMap<>();
+
+    /**
+     * Handler that renders the original kinds of notifications from the user's templates.
+     */
+    private static final NotificationHandler TEMPLATE = (user, notification) ->
+            notification.render(user.getTemplates(), notification.getOrigin().equals(user));
+
+    /**
+     * Handlers that pass the original kinds of notifications to the rendering methods, for classes that override them.
+     */
+    private static final NotificationHandler[] CUSTOM_HANDLERS = {
+            (user, notification) -> {
+                user.gotNewMessage(notification.getOrigin(), notification.getMessage());
+                return null;
+            },
+            (user, notification) -> {
+                user.userJoined(notification.getOrigin());
+                return null;
+            },
+            (user, notification) -> {
+                user.userLeft(notification.getOrigin());
+                return null;
+            }
+    };
+
+    /**
+     * Handlers set for specific user classes, by kind id.
+     */
+    private static final ConcurrentHashMap<Class<?>, ConcurrentHashMap<Integer, NotificationHandler>> HANDLERS =
+            new ConcurrentHashMap<>();
+
+    /**
+     * Handler table of every user class, rebuilt whenever handlers or kinds change.
+     */
+    private static final ConcurrentHashMap<Class<?>, HandlerTable> TABLES = new ConcurrentHashMap<>();
+
+    /**
+     * Incremented whenever handlers or kinds change, so that outdated handler tables are rebuilt.
+     */
+    private static final AtomicInteger HANDLERS_VERSION = new AtomicInteger();
+
+    /**
+     * Measurements of every notification delivered to any user.
+     */
+    private static final DeliveryMetrics DELIVERIES = new DeliveryMetrics();
+
+    /**
+     * Source of user ids.
+     */
+    private static final AtomicInteger IDS = new AtomicInteger();
+
+    /**
+     * Holds the user's unique id, used instead of a reference wherever a user has to be identified compactly.
+     */
+    private final int id;
+
+    /**
+     * Holds the ranges of room histories the user witnessed, in the order the user joined them.
+     */
+    private final List<HistorySpan> chatHistory;
 
     /**
      * Holds the user's username.
@@ -25,6 +94,22 @@ public abstract class AbstractChatUser {
      */
     private final PrintStream screen;
 
+    /**
+     * Holds a reference to the sink the user's UTF-8 encoded lines are written to, or null if the user's lines are
+     * printed to its screen, in the screen's own charset.
+     */
+    private final Sink sink;
+
+    /**
+     * Holds a reference to the user's outbound buffer, if the user's screen is buffered.
+     */
+    private volatile Outbox outbox;
+
+    /**
+     * Holds the handler table of the user's class as last looked up, or null until the user's first updated.
+     */
+    private HandlerTable table;
+
     /**
      * When constructing a user without specifying an output print stream, {@link System#out} is chosen by default.
      *
@@ -41,18 +126,190 @@ public abstract class AbstractChatUser {
      * @param screen   The user's display as a PrintStream.
      */
     public AbstractChatUser(String username, PrintStream screen) {
-        this.chatHistory = new ArrayList<>(100);
+        this(IDS.getAndIncrement(), username, screen, null);
+    }
+
+    /**
+     * Rebuilds a user that existed before a restart with the id it had then, so that whatever was persisted about it,
+     * such as event log records and snapshots, still refers to it. Ids up to that one are never handed out again, but
+     * users built earlier in the process may already hold it, so users should be rebuilt before any new one is built.
+     *
+     * @param id       The id the user had before the restart.
+     * @param username The username chosen by the user to identify him/herself with.
+     * @param screen   The user's display as a PrintStream.
+     */
+    protected AbstractChatUser(int id, String username, PrintStream screen) {
+        this(reserve(id), username, screen, null);
+    }
+
+    /**
+     * Builds a user whose lines are written to a sink as UTF-8 bytes, e.g. a socket's stream or channel, instead of a
+     * PrintStream. Lines that can't be written as shared bytes, such as those of overridden rendering methods or of an
+     * outbox, are printed to a UTF-8 PrintStream over the sink, which may split them into several writes.
+     *
+     * @param username The username chosen by the user to identify him/herself with.
+     * @param sink     The user's display as a sink.
+     */
+    public AbstractChatUser(String username, Sink sink) {
+        this(IDS.getAndIncrement(), username, screenOf(sink), sink);
+    }
+
+    /**
+     * Builds a user.
+     *
+     * @param id       The user's id.
+     * @param username The username chosen by the user to identify him/herself with.
+     * @param screen   The user's display as a PrintStream.
+     * @param sink     The sink that writes UTF-8 encoded lines to the user's display, or null to print them.
+     */
+    private AbstractChatUser(int id, String username, PrintStream screen, Sink sink) {
+        this.id = id;
+        this.chatHistory = new CopyOnWriteArrayList<>();
         this.username = username;
         this.screen = screen;
+        this.sink = sink;
     }
 
     /**
-     * Retrieves a copy of the user's chat history.
+     * Retrieves a copy of the user's chat history. Lines are rendered on demand out of the histories of the rooms the
+     * user has been in, so entries those rooms have evicted are no longer part of it.
      *
      * @return a copy of the user's chat history.
+     * @see #readChatHistory(long, int, Consumer)
      */
     public List<String> getChatHistory() {
-        return new ArrayList<>(chatHistory);
+        List<String> lines = new ArrayList<>();
+        readChatHistory(0, Integer.MAX_VALUE, lines::add);
+        return lines;
+    }
+
+    /**
+     * Reads a page of the user's chat history without copying it, rendering each line as it's read. Direct messages
+     * between other users are part of the rooms' histories but aren't shown, so a page may hold fewer lines than
+     * entries.
+     *
+     * @param skip   the amount of entries to skip.
+     * @param limit  the maximum amount of entries to read.
+     * @param action action performed on every line read.
+     * @return the amount of entries read, which can be added to {@code skip} to read the next page.
+     */
+    public int readChatHistory(long skip, int limit, Consumer<String> action) {
+        LocaleTemplates templates = getTemplates();
+        Consumer<ChatNotification> renderer = notification -> {
+            if (!notification.isVisibleTo(this)) {
+                return;
+            }
+            int type = notification.getType();
+            if (type <= ChatNotification.USER_LEFT) {
+                action.accept(notification.render(templates, notification.getOrigin().equals(this)));
+                return;
+            }
+            // other kinds are shown as their handler would show them, if at all.
+            NotificationHandler handler = handlerOf(type);
+            String line = handler == null ? null : handler.handle(this, notification);
+            if (line != null) {
+                action.accept(line);
+            }
+        };
+        int read = 0;
+        for (HistorySpan span : chatHistory) {
+            if (read == limit) {
+                break;
+            }
+            long to = span.to;
+            long available = span.history.count(span.from, to);
+            if (skip >= available) {
+                skip -= available;
+                continue;
+            }
+            long from = Math.max(span.from, span.history.getFirstSequence()) + skip;
+            skip = 0;
+            long end = span.history.read(from, to, limit - read, renderer);
+            read += (int) (end - from);
+        }
+        return read;
+    }
+
+    /**
+     * Lets the user know it has joined a room, so that the room's history becomes part of the user's chat history.
+     * Spans of any room whose notifications have all been evicted are dropped, so users that come and go don't pile
+     * them up.
+     *
+     * @param history  the room's history.
+     * @param sequence sequence number of the first notification the user witnessed.
+     */
+    public void openHistory(RoomHistory history, long sequence) {
+        chatHistory.removeIf(span -> span.to <= span.history.getFirstSequence());
+        chatHistory.add(new HistorySpan(history, sequence));
+    }
+
+    /**
+     * Retrieves where the user's chat history starts within a room's history.
+     *
+     * @param history the room's history.
+     * @return the sequence number of the first notification the user witnessed since it last joined the room, or -1 if
+     * the user isn't following the room's history.
+     */
+    public long getHistoryStart(RoomHistory history) {
+        for (HistorySpan span : chatHistory) {
+            if (span.history == history && span.to == Long.MAX_VALUE) {
+                return span.from;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Lets the user know it has left a room, so that its chat history stops following the room's history.
+     *
+     * @param history  the room's history.
+     * @param sequence sequence number after the last notification the user witnessed.
+     */
+    public void closeHistory(RoomHistory history, long sequence) {
+        for (HistorySpan span : chatHistory) {
+            if (span.history == history && span.to == Long.MAX_VALUE) {
+                span.to = sequence;
+            }
+        }
+    }
+
+    /**
+     * <p>Buffers the user's screen. From now on, lines are put into a bounded {@link Outbox} that's drained by a writer
+     * task instead of being printed by whoever updates the user, so a slow screen only affects its own user.</p>
+     * <p>If the {@link OverflowPolicy#DISCONNECT} policy is chosen, the user is unregistered from the specified chat
+     * when its outbox overflows.</p>
+     *
+     * @param chat     the chat the user is unregistered from on overflow, can be null for other policies.
+     * @param capacity the maximum amount of lines waiting to be printed.
+     * @param policy   what to do when the outbox is full.
+     * @param writer   executor that runs the writer task.
+     * @return the user's new outbox, which exposes its depth and drop counts.
+     */
+    public Outbox bufferScreen(Chat chat, int capacity, OverflowPolicy policy, Executor writer) {
+        if (policy == OverflowPolicy.DISCONNECT && chat == null)
+            throw new IllegalArgumentException("A chat is required by the disconnect policy.");
+        Runnable onDisconnect = chat == null ? null : () -> chat.unregister(this);
+        Outbox buffer = new Outbox(screen, capacity, policy, writer, onDisconnect);
+        this.outbox = buffer;
+        return buffer;
+    }
+
+    /**
+     * Retrieves the user's outbound buffer.
+     *
+     * @return the user's outbox, or null if the user's screen isn't buffered.
+     */
+    public Outbox getOutbox() {
+        return outbox;
+    }
+
+    /**
+     * Retrieves the user's unique id. Ids are assigned in creation order, starting at zero.
+     *
+     * @return the user's id.
+     */
+    public int getId() {
+        return id;
     }
 
     /**
@@ -64,6 +321,15 @@ public abstract class AbstractChatUser {
         return username;
     }
 
+    /**
+     * Retrieves the id of the user's locale, if it's one of a registry's, so that the user can be rebuilt elsewhere.
+     *
+     * @return the user's locale id, or null if its phrases don't come from a registry.
+     */
+    public String getLocaleId() {
+        return null;
+    }
+
     /**
      * Attempts to broadcast a message to the specified chat.
      *
@@ -80,6 +346,24 @@ public abstract class AbstractChatUser {
         }
     }
 
+    /**
+     * Sends a direct message to another user of a chat. Only the recipient and this user are updated with it.
+     *
+     * @param chat      the chat both users are in.
+     * @param recipient the user the message's addressed to.
+     * @param message   the message.
+     * @throws IllegalStateException if this user is offline.
+     */
+    public void sendDirectMessage(Chat chat, AbstractChatUser recipient, String message) {
+        if (chat.isOnline(this)) {
+            chat.updateUsers(new ChatNotification(
+                    this, message, ChatNotification.NEW_MESSAGE, recipient
+            ));
+        } else {
+            throw new IllegalStateException("Offline user trying to send a message.");
+        }
+    }
+
     /**
      * <p>This method receives a chat notification and dynamically updates the user's screen depending on what kind of
      * notification is passed as a parameter. This method should work seamlessly among extending subclasses that
@@ -104,8 +388,17 @@ public abstract class AbstractChatUser {
      * notification is leaving.
      * </li>
      * </ul>
+     * <p>
+     * Unless a subclass renders them itself, see {@link #rendersItself()}, lines are rendered from its compiled
+     * {@link LocaleTemplates} and shared with every other recipient that uses the same templates.
+     * <p>
+     * Every kind of notification is looked up in the handler table of the user's class, so other kinds (see
+     * {@link NotificationKind}) are handled by the handlers set with
+     * {@link #setHandler(Class, NotificationKind, NotificationHandler)} or by their default handler, and ignored if
+     * there's none.
      *
      * @param notification the notification.
+     * @see #getTemplates()
      * @see #getHaveJoinedSecond()
      * @see #getHaveJoinedThird()
      * @see #getHaveLeftSecond()
@@ -115,89 +408,300 @@ public abstract class AbstractChatUser {
      * @see #getPronounYou()
      */
     public final void update(ChatNotification notification) {
-        // Call the appropriate method:
-        switch (notification.getType()) {
-            case ChatNotification.NEW_MESSAGE:
-                gotNewMessage(notification.getOrigin(), notification.getMessage());
-                break;
-            case ChatNotification.NEW_USER:
-                userJoined(notification.getOrigin());
-                break;
-            case ChatNotification.USER_LEFT:
-                userLeft(notification.getOrigin());
-                break;
-            default:
-                throw new IllegalArgumentException("Unsupported update.");
+        long start = System.nanoTime();
+        NotificationHandler handler = handlerOf(notification.getType());
+        if (handler == TEMPLATE && outbox == null && sink != null) {
+            // encoded once per templates and point of view, every recipient sharing them gets the same bytes.
+            sink.write(notification.encode(getTemplates(), notification.getOrigin().equals(this)));
+        } else {
+            String line = handler == null ? null : handler.handle(this, notification);
+            if (line != null) {
+                display(line);
+            }
         }
+        DELIVERIES.delivered(notification, start, System.nanoTime());
     }
 
     /**
-     * Prints a message about the specified user leaving the chat to the user's screen and adds it to the chat history.
-     * By default its functionality depends on the {@link #getHaveLeftSecond()} and {@link #getHaveLeftThird()} methods.
-     * The resulting components are put into the default template "%s %s" as needed. This method can be overridden but
-     * it's not recommended.
+     * Updates the user with several notifications at once. Every notification is rendered as {@link #update} would, but
+     * the resulting lines are shown on the user's screen with a single write. Subclasses that render notifications
+     * themselves, see {@link #rendersItself()}, are updated one notification at a time instead.
+     *
+     * @param notifications the notifications, in the order they should be shown.
+     */
+    public final void update(List<ChatNotification> notifications) {
+        if (rendersItself()) {
+            notifications.forEach(this::update);
+            return;
+        }
+        if (notifications.isEmpty()) {
+            return;
+        }
+        long start = System.nanoTime();
+        String separator = System.lineSeparator();
+        StringBuilder block = new StringBuilder(64 * notifications.size());
+        for (ChatNotification notification : notifications) {
+            NotificationHandler handler = handlerOf(notification.getType());
+            String line = handler == null ? null : handler.handle(this, notification);
+            if (line == null) {
+                continue;
+            }
+            if (block.length() > 0) {
+                block.append(separator);
+            }
+            block.append(line);
+        }
+        if (block.length() > 0) {
+            display(block.toString());
+        }
+        long end = System.nanoTime();
+        for (ChatNotification notification : notifications) {
+            DELIVERIES.delivered(notification, start, end);
+        }
+    }
+
+    /**
+     * <p>Updates the user with a notification that was never built as a {@link ChatNotification}, see
+     * {@code ChatRoom#broadcast}. The line is rendered into the shared buffer, or reused from it when an earlier
+     * recipient had the same templates and point of view, and written to the user's sink as UTF-8 bytes, or
+     * printed to its screen if it has no sink.</p>
+     * <p>Nothing is allocated for users with a sink unless they have an outbox or don't render the notification's kind
+     * from their templates, in which case a notification is built and passed to {@link #update(ChatNotification)}.
+     * Users without a sink still allocate: the line's copied out of the buffer into a string for their screen, which
+     * then allocates whatever it needs to encode it in its charset.</p>
+     *
+     * @param type    the notification's type.
+     * @param origin  the user that created the notification.
+     * @param message the notification's message.
+     * @param buffer  scratch space shared by the notification's recipients.
+     */
+    public final void deliver(int type, AbstractChatUser origin, CharSequence message, LineBuffer buffer) {
+        if (outbox != null || handlerOf(type) != TEMPLATE) {
+            update(new ChatNotification(origin, message.toString(), type));
+            return;
+        }
+        long start = System.nanoTime();
+        buffer.render(getTemplates(), type, origin.getUsername(), message, origin == this);
+        if (sink == null) {
+            screen.println(buffer.toString());
+        } else {
+            buffer.writeTo(sink);
+        }
+        DELIVERIES.delivered(null, start, System.nanoTime());
+    }
+
+    /**
+     * Sets what the users of a class, and of its subclasses unless they have their own, do with a kind of
+     * notification. This is how user classes handle kinds defined after them without changes to {@link #update}.
+     *
+     * @param type    the user class.
+     * @param kind    the kind of notification.
+     * @param handler what the users do with the kind's notifications, or null to go back to the inherited handler.
+     */
+    public static void setHandler(Class<? extends AbstractChatUser> type, NotificationKind kind,
+                                  NotificationHandler handler) {
+        ConcurrentHashMap<Integer, NotificationHandler> handlers =
+                HANDLERS.computeIfAbsent(type, t -> new ConcurrentHashMap<>());
+        if (handler == null) {
+            handlers.remove(kind.getId());
+        } else {
+            handlers.put(kind.getId(), handler);
+        }
+        handlersChanged();
+    }
+
+    /**
+     * Invalidates every handler table, called whenever handlers or kinds change.
+     */
+    static void handlersChanged() {
+        HANDLERS_VERSION.incrementAndGet();
+    }
+
+    /**
+     * Retrieves the handler of every kind of notification for the user's class, indexed by kind id. Tables are built
+     * once per class and cached by every user, so updating a user is a version check and an array lookup; the class'
+     * table is only looked up again after handlers or kinds change.
+     *
+     * @return the user's handlers, null entries are kinds the user ignores.
+     */
+    private NotificationHandler[] handlers() {
+        int version = HANDLERS_VERSION.get();
+        // tables are immutable, so a user updated from several threads may at worst look its table up twice.
+        HandlerTable cached = table;
+        if (cached == null || cached.version != version) {
+            Class<?> type = getClass();
+            cached = TABLES.get(type);
+            if (cached == null || cached.version != version) {
+                cached = new HandlerTable(version, buildHandlers(type, rendersItself()));
+                TABLES.put(type, cached);
+            }
+            table = cached;
+        }
+        return cached.handlers;
+    }
+
+    /**
+     * Retrieves the user's handler of a kind of notification.
+     *
+     * @param type the kind's id.
+     * @return the handler, or null if the user ignores that kind.
+     */
+    private NotificationHandler handlerOf(int type) {
+        NotificationHandler[] handlers = handlers();
+        // a kind defined while the table was being read isn't in it yet.
+        return type < handlers.length ? handlers[type] : null;
+    }
+
+    /**
+     * Builds the handler table of a user class. Handlers set for the class or its closest superclass win; otherwise
+     * the original kinds are rendered from the templates, or through the rendering methods if the class renders them
+     * itself, and other kinds use their default handler.
+     *
+     * @param type   the user class.
+     * @param custom whether the class renders the original kinds itself, see {@link #rendersItself()}.
+     * @return the class' handlers, indexed by kind id.
+     */
+    private static NotificationHandler[] buildHandlers(Class<?> type, boolean custom) {
+        NotificationHandler[] handlers = new NotificationHandler[NotificationKind.count()];
+        for (int id = 0; id < handlers.length; id++) {
+            NotificationHandler handler = null;
+            for (Class<?> c = type; handler == null && c != AbstractChatUser.class; c = c.getSuperclass()) {
+                Map<Integer, NotificationHandler> set = HANDLERS.get(c);
+                handler = set == null ? null : set.get(id);
+            }
+            if (handler == null) {
+                handler = id > ChatNotification.USER_LEFT
+                        ? NotificationKind.of(id).getDefaultHandler()
+                        : custom ? CUSTOM_HANDLERS[id] : TEMPLATE;
+            }
+            handlers[id] = handler;
+        }
+        return handlers;
+    }
+
+    /**
+     * Retrieves the measurements of every notification delivered to any user, such as render times and
+     * send-to-deliver latencies.
+     *
+     * @return the process-wide delivery metrics.
+     */
+    public static DeliveryMetrics getDeliveryMetrics() {
+        return DELIVERIES;
+    }
+
+    /**
+     * Tells whether the user renders the original kinds of notifications through {@link #userLeft},
+     * {@link #userJoined} and {@link #gotNewMessage}. Classes that override any of those must override this method to
+     * return true, otherwise their notifications are rendered from shared templates and the overrides are never
+     * called. Like the phrase getters, it's expected to return the same value for every instance of a class.
+     *
+     * @return false by default.
+     */
+    protected boolean rendersItself() {
+        return false;
+    }
+
+    /**
+     * Prints a message about the specified user leaving the chat to the user's screen. By default its functionality
+     * depends on the {@link #getHaveLeftSecond()} and {@link #getHaveLeftThird()} methods. The resulting components are
+     * put into the default template "%s %s" as needed. This method can be overridden but it's not recommended, and only
+     * takes effect if {@link #rendersItself()} is overridden too.
      *
      * @param user the user that left the chat.
      */
     protected void userLeft(AbstractChatUser user) {
-        String goodbye = user.equals(this) ? getHaveLeftSecond() : getHaveLeftThird();
-        String string = String.format(
-                "%s %s",
-                user.getUsername(),
-                goodbye
-        );
-        chatHistory.add(string);
-        screen.println(string);
+        display(getTemplates().renderLeft(user.getUsername(), user.equals(this)));
     }
 
     /**
-     * Prints a message about the specified user joining the chat to the user's screen and adds it to the chat history.
-     * By default its functionality depends on the {@link #getHaveJoinedSecond()}, {@link #getHaveJoinedThird()} and
-     * {@link #getPronounYou()} methods. The resulting components are put into the default template "%s %s" as needed.
-     * This method can be overridden but it's not recommended.
+     * Prints a message about the specified user joining the chat to the user's screen. By default its functionality
+     * depends on the {@link #getHaveJoinedSecond()}, {@link #getHaveJoinedThird()} and {@link #getPronounYou()} methods.
+     * The resulting components are put into the default template "%s %s" as needed. This method can be overridden but
+     * it's not recommended, and only takes effect if {@link #rendersItself()} is overridden too.
      *
      * @param user the user that joined the chat.
      */
     protected void userJoined(AbstractChatUser user) {
-        String subject = user.getUsername();
-        String predicate = getHaveJoinedThird();
-        if (user.equals(this)) {
-            subject = getPronounYou();
-            predicate = getHaveJoinedSecond();
-        }
-        String string = String.format(
-                "%s %s",
-                subject,
-                predicate
-        );
-        chatHistory.add(string);
-        screen.println(string);
+        display(getTemplates().renderJoined(user.getUsername(), user.equals(this)));
     }
 
     /**
-     * Prints a message sent by another user to the user's screen and adds it to the chat history. By default its
-     * functionality depends on the {@link #getVerbSaySecond()}, {@link #getVerbSayThird()} and {@link #getPronounYou()}
-     * methods that are put into the default template "%s %s: %s" as needed. This method can be overridden but it's not
-     * recommended.
+     * Prints a message sent by another user to the user's screen. By default its functionality depends on the
+     * {@link #getVerbSaySecond()}, {@link #getVerbSayThird()} and {@link #getPronounYou()} methods that are put into the
+     * default template "%s %s: %s" as needed. This method can be overridden but it's not recommended, and only takes
+     * effect if {@link #rendersItself()} is overridden too.
      *
      * @param user    the user that sent the message.
      * @param message the message sent by {@code user}.
      */
     protected void gotNewMessage(AbstractChatUser user, String message) {
-        String username = user.getUsername();
-        String verb = getVerbSayThird();
-        if (user.equals(this)) {
-            username = getPronounYou();
-            verb = getVerbSaySecond();
+        display(getTemplates().renderMessage(user.getUsername(), message, user.equals(this)));
+    }
+
+    /**
+     * Retrieves the templates used to render this user's notifications. By default they're compiled once per class out
+     * of the abstract phrase getters, so these are expected to return the same phrases for every instance of a class.
+     *
+     * @return the user's templates.
+     */
+    protected LocaleTemplates getTemplates() {
+        LocaleTemplates templates = TEMPLATES.get(getClass());
+        return templates != null ? templates : TEMPLATES.computeIfAbsent(getClass(), type -> LocaleTemplates.of(this));
+    }
+
+    /**
+     * Makes sure an id that's being given back to a rebuilt user is never handed out to a new one.
+     *
+     * @param id the id.
+     * @return the id.
+     */
+    private static int reserve(int id) {
+        if (id < 0)
+            throw new IllegalArgumentException(String.format("Invalid id: %d", id));
+        IDS.accumulateAndGet(id + 1, Math::max);
+        return id;
+    }
+
+    /**
+     * Adapts a sink to a UTF-8 screen, for the lines that are printed rather than written as shared bytes.
+     *
+     * @param sink the sink.
+     * @return a screen that writes whatever's printed to it to the sink.
+     */
+    private static PrintStream screenOf(Sink sink) {
+        if (sink == null)
+            throw new IllegalArgumentException("Sink can't be null.");
+        OutputStream out = new OutputStream() {
+            @Override
+            public void write(int b) {
+                sink.write(ByteBuffer.wrap(new byte[]{(byte) b}));
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                sink.write(ByteBuffer.wrap(b, off, len));
+            }
+        };
+        try {
+            return new PrintStream(out, false, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            // every JVM supports UTF-8.
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Shows a line on the user's screen, going through the user's outbox if there is one.
+     *
+     * @param line the line.
+     */
+    private void display(String line) {
+        Outbox buffer = outbox;
+        if (buffer == null) {
+            screen.println(line);
+        } else {
+            buffer.offer(line);
         }
-        String string = String.format(
-                "%s %s: %s",
-                username,
-                verb,
-                message
-        );
-        chatHistory.add(string);
-        screen.println(string);
     }
 
     /**
@@ -234,4 +738,46 @@ public abstract class AbstractChatUser {
      * @return a string that is equivalent to the pronoun "you"
      */
     protected abstract String getPronounYou();
+
+    /**
+     * A user class' handlers, as of a version of the handlers set.
+     */
+    private static final class HandlerTable {
+        /**
+         * The handlers' version.
+         */
+        final int version;
+        /**
+         * The handlers, indexed by kind id.
+         */
+        final NotificationHandler[] handlers;
+
+        HandlerTable(int version, NotificationHandler[] handlers) {
+            this.version = version;
+            this.handlers = handlers;
+        }
+    }
+
+    /**
+     * A range of a room's history witnessed by the user.
+     */
+    private static final class HistorySpan {
+        /**
+         * The room's history.
+         */
+        final RoomHistory history;
+        /**
+         * Sequence number of the first notification witnessed.
+         */
+        final long from;
+        /**
+         * Sequence number after the last notification witnessed, or {@link Long#MAX_VALUE} while still in the room.
+         */
+        volatile long to = Long.MAX_VALUE;
+
+        HistorySpan(RoomHistory history, long from) {
+            this.history = history;
+            this.from = from;
+        }
+    }
 }
@@ -1,6 +1,8 @@
 package mx.unam.fciencias.myp.chat.models;
 
+import java.nio.ByteBuffer;
 import java.sql.Timestamp;
+import java.util.Arrays;
 
 /**
  * An extendable chat notification.
@@ -20,10 +22,18 @@ public class ChatNotification {
      * Flag that denotes a notification about a user leaving the chat.
      */
     public static final int USER_LEFT = 2;
+    /**
+     * Estimated amount of bytes taken by a rendering besides its line.
+     */
+    private static final int RENDERING_OVERHEAD = 64;
     /**
      * A reference to the user that created the notification.
      */
     private AbstractChatUser origin;
+    /**
+     * The only user this notification's addressed to, or null if it's addressed to the whole room.
+     */
+    private final AbstractChatUser recipient;
     /**
      * Either a descriptive message about this notification, or a custom message sent by a user.
      */
@@ -36,8 +46,33 @@ public class ChatNotification {
      * <li>{@code 1} ({@link #NEW_USER}): A notification that communicates that its user has joined the chat.</li>
      * <li>{@code 2} ({@link #USER_LEFT}): A notification that communicates that its user has left the chat.</li>
      * </ul>
+     * <p>Any other flag is the id of a kind defined through {@link NotificationKind#define}.</p>
      */
     private int type;
+    /**
+     * The time this notification was created, in milliseconds since the epoch.
+     */
+    private final long timestamp;
+    /**
+     * The time this notification was created, as given by {@link System#nanoTime()}. Only meaningful within this
+     * process, it's used to measure how long delivering the notification takes.
+     */
+    private final long nanoTime;
+    /**
+     * Lines this notification has been rendered into, shared by every recipient that uses the same templates. Entries
+     * are immutable and the array is replaced, never modified, whenever a rendering is added.
+     */
+    private volatile Rendering[] renderings = new Rendering[0];
+    /**
+     * History this notification's renderings are charged to, see {@link RoomHistory#recharge}. Only set and cleared by
+     * that history while holding its monitor, or null once it's evicted.
+     */
+    volatile RoomHistory history;
+    /**
+     * Estimated amount of bytes taken by this notification's renderings, as last charged to its history. Guarded by
+     * that history's monitor.
+     */
+    long charged;
 
     /**
      * <p>A chat notification carries a reference to the user that created it, a descriptive message (or
@@ -48,17 +83,48 @@ public class ChatNotification {
      * <li>{@code 1} ({@link #NEW_USER}): A notification that communicates that its user has joined the chat.</li>
      * <li>{@code 2} ({@link #USER_LEFT}): A notification that communicates that its user has left the chat.</li>
      * </ul>
+     * <p>Any other flag must be the id of a kind defined through {@link NotificationKind#define}.</p>
      *
      * @param context The user that created this notification.
      * @param message Either a descriptive message about this notification, or a custom message sent by the user.
      * @param flag    A flag that specifies in which category this notification falls into.
      */
     public ChatNotification(AbstractChatUser context, String message, int flag) {
-        if (flag < NEW_MESSAGE || flag > USER_LEFT)
-            throw new IllegalArgumentException(String.format("Invalid flag: %d", flag));
+        this(context, message, flag, null);
+    }
+
+    /**
+     * Builds a notification addressed to a single user, such as a direct message. Only that user and the notification's
+     * origin are updated with it.
+     *
+     * @param context   The user that created this notification.
+     * @param message   Either a descriptive message about this notification, or a custom message sent by the user.
+     * @param flag      A flag that specifies in which category this notification falls into.
+     * @param recipient The only user this notification's addressed to, or null to address the whole room.
+     */
+    public ChatNotification(AbstractChatUser context, String message, int flag, AbstractChatUser recipient) {
+        this(context, message, flag, recipient, System.currentTimeMillis());
+    }
+
+    /**
+     * Rebuilds a notification that was created earlier, e.g. one read back from an event log.
+     *
+     * @param context   The user that created this notification.
+     * @param message   Either a descriptive message about this notification, or a custom message sent by the user.
+     * @param flag      A flag that specifies in which category this notification falls into.
+     * @param recipient The only user this notification's addressed to, or null to address the whole room.
+     * @param timestamp The time this notification was originally created, in milliseconds since the epoch.
+     */
+    public ChatNotification(AbstractChatUser context, String message, int flag, AbstractChatUser recipient,
+                            long timestamp) {
+        // throws if the flag isn't a defined kind.
+        NotificationKind.of(flag);
         this.origin = context;
+        this.recipient = recipient;
         this.message = message;
         this.type = flag;
+        this.timestamp = timestamp;
+        this.nanoTime = System.nanoTime();
     }
 
     /**
@@ -70,6 +136,35 @@ public class ChatNotification {
         return origin;
     }
 
+    /**
+     * This method returns this notification's kind.
+     *
+     * @return this notification's kind, whose id is its type.
+     */
+    public NotificationKind getKind() {
+        return NotificationKind.of(type);
+    }
+
+    /**
+     * This method returns the only user this notification's addressed to.
+     *
+     * @return the notification's recipient, or null if it's addressed to the whole room.
+     */
+    public AbstractChatUser getRecipient() {
+        return recipient;
+    }
+
+    /**
+     * This method tells whether a user may see this notification, i.e. it's addressed to the whole room, to that user,
+     * or was created by that user.
+     *
+     * @param user a user.
+     * @return true if the user may see this notification.
+     */
+    public boolean isVisibleTo(AbstractChatUser user) {
+        return recipient == null || recipient == user || origin == user;
+    }
+
     /**
      * This method returns a message if this notification corresponds to a chat message.
      *
@@ -88,15 +183,159 @@ public class ChatNotification {
         return type;
     }
 
+    /**
+     * This method returns the time this notification was created.
+     *
+     * @return this notification's creation time, in milliseconds since the epoch.
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * This method returns the time this notification was created, with nanosecond precision.
+     *
+     * @return this notification's creation time, as given by {@link System#nanoTime()}.
+     */
+    public long getNanoTime() {
+        return nanoTime;
+    }
+
+    /**
+     * Renders this notification using the specified templates. Each distinct (templates, self) pair is rendered once
+     * and then shared by every recipient that asks for it.
+     *
+     * @param templates the recipient's templates.
+     * @param self      whether the recipient is the user that created this notification.
+     * @return the rendered line.
+     */
+    public String render(LocaleTemplates templates, boolean self) {
+        return renderingOf(templates, self).line;
+    }
+
+    /**
+     * Renders this notification using the specified templates and encodes the line, followed by a line separator, as
+     * UTF-8. Each distinct (templates, self) pair is encoded once and the bytes are then shared by every recipient that
+     * asks for them, so they must be left as they are, see {@link Sink}.
+     *
+     * @param templates the recipient's templates.
+     * @param self      whether the recipient is the user that created this notification.
+     * @return the encoded line.
+     */
+    public ByteBuffer encode(LocaleTemplates templates, boolean self) {
+        Rendering rendering = renderingOf(templates, self);
+        ByteBuffer bytes = rendering.bytes;
+        if (bytes == null) {
+            // recipients racing here encode the same bytes, whichever are kept will do.
+            bytes = LineBuffer.encode(rendering.line);
+            rendering.bytes = bytes;
+            recharge();
+        }
+        return bytes;
+    }
+
+    /**
+     * Finds this notification's rendering with the specified templates, rendering it if it's the first time.
+     *
+     * @param templates the recipient's templates.
+     * @param self      whether the recipient is the user that created this notification.
+     * @return the rendering.
+     */
+    private Rendering renderingOf(LocaleTemplates templates, boolean self) {
+        for (Rendering rendering : renderings) {
+            if (rendering.templates == templates && rendering.self == self) {
+                return rendering;
+            }
+        }
+        Rendering rendering = new Rendering(templates, self, templates.render(this, self));
+        synchronized (this) {
+            Rendering[] current = renderings;
+            Rendering[] extended = Arrays.copyOf(current, current.length + 1);
+            extended[current.length] = rendering;
+            renderings = extended;
+        }
+        recharge();
+        return rendering;
+    }
+
+    /**
+     * Makes a history responsible for this notification's renderings, unless another one already is, e.g. because the
+     * notification's shared by two rooms.
+     *
+     * @param owner the history.
+     * @return true if the renderings are now charged to the history.
+     */
+    synchronized boolean chargeTo(RoomHistory owner) {
+        if (history != null) {
+            return false;
+        }
+        history = owner;
+        charged = 0;
+        return true;
+    }
+
+    /**
+     * Lets the history that holds this notification know that its renderings grew.
+     */
+    private void recharge() {
+        RoomHistory owner = history;
+        if (owner != null) {
+            owner.recharge(this);
+        }
+    }
+
+    /**
+     * Estimates the amount of bytes taken by this notification's renderings, both their lines and their encoded bytes.
+     *
+     * @return the renderings' estimated size.
+     */
+    long getRenderedBytes() {
+        long size = 0;
+        for (Rendering rendering : renderings) {
+            ByteBuffer bytes = rendering.bytes;
+            size += RENDERING_OVERHEAD + 2L * rendering.line.length() + (bytes == null ? 0 : bytes.capacity());
+        }
+        return size;
+    }
+
     @Override
     public String toString() {
         return "[@"
-                + new Timestamp(System.currentTimeMillis())
+                + new Timestamp(timestamp)
                 + "] Origin: "
                 + origin.getUsername()
                 + "  Message: "
                 + message
                 + "  Type: "
-                + type;
+                + type
+                + (recipient == null ? "" : "  Recipient: " + recipient.getUsername());
+    }
+
+    /**
+     * A line this notification has been rendered into.
+     */
+    private static final class Rendering {
+        /**
+         * The templates used to render the line.
+         */
+        final LocaleTemplates templates;
+        /**
+         * Whether the line was rendered for the notification's origin.
+         */
+        final boolean self;
+        /**
+         * The rendered line.
+         */
+        final String line;
+        /**
+         * The line's UTF-8 bytes, followed by a line separator, or null until a recipient asks for them.
+         */
+        volatile ByteBuffer bytes;
+
+        Rendering(LocaleTemplates templates, boolean self, String line) {
+            this.templates = templates;
+            this.self = self;
+            this.line = line;
+        }
     }
 }
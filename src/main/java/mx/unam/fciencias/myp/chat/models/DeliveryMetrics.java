@@ -0,0 +1,151 @@
+package mx.unam.fciencias.myp.chat.models;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>Process-wide measurements of how notifications reach users, recorded by {@link AbstractChatUser} on every update.
+ * Recording only takes lock-free counters, so it's always on. See {@link AbstractChatUser#getDeliveryMetrics()}.</p>
+ * <p>Every delivering thread records into one of several stripes of histograms, picked by the thread's id, so threads
+ * delivering at once rarely touch the same buckets. Histograms are merged from every stripe when they're read.</p>
+ *
+ * @author Luis Daniel Aragon Bermudez 416041271
+ */
+public final class DeliveryMetrics implements DeliveryMetricsMXBean {
+    /**
+     * Amount of lines delivered.
+     */
+    private final LongAdder delivered = new LongAdder();
+    /**
+     * Time users spent rendering and showing each notification, striped by thread. The amount of stripes is a power of
+     * two.
+     */
+    private final LatencyHistogram[] render;
+    /**
+     * Time between each notification's creation and its delivery to a user, striped like {@link #render}.
+     */
+    private final LatencyHistogram[] latency;
+
+    /**
+     * Package-private constructor, there's a single instance.
+     */
+    DeliveryMetrics() {
+        int stripes = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors() * 2 - 1)) << 1;
+        render = new LatencyHistogram[stripes];
+        latency = new LatencyHistogram[stripes];
+        for (int i = 0; i < stripes; i++) {
+            render[i] = new LatencyHistogram();
+            latency[i] = new LatencyHistogram();
+        }
+    }
+
+    /**
+     * Records a notification's delivery to one user.
+     *
+     * @param notification the notification, or null if it was never built as one.
+     * @param start        when the user started rendering it, as given by {@link System#nanoTime()}.
+     * @param end          when the user was done showing it.
+     */
+    void delivered(ChatNotification notification, long start, long end) {
+        int stripe = (int) Thread.currentThread().getId() & (render.length - 1);
+        delivered.increment();
+        render[stripe].record(end - start);
+        if (notification != null) {
+            latency[stripe].record(end - notification.getNanoTime());
+        }
+    }
+
+    /**
+     * Retrieves the histogram of the time users spent rendering and showing each notification.
+     *
+     * @return a snapshot of the render time histogram, in nanoseconds.
+     */
+    public LatencyHistogram getRenderTimes() {
+        return merge(render);
+    }
+
+    /**
+     * Retrieves the histogram of the time between each notification's creation and its delivery. Users with an outbox
+     * are considered delivered once the line's in the outbox.
+     *
+     * @return a snapshot of the send-to-deliver latency histogram, in nanoseconds.
+     */
+    public LatencyHistogram getLatencies() {
+        return merge(latency);
+    }
+
+    /**
+     * Merges a histogram's stripes.
+     *
+     * @param stripes the stripes.
+     * @return a new histogram with every value recorded by the stripes.
+     */
+    private static LatencyHistogram merge(LatencyHistogram[] stripes) {
+        LatencyHistogram merged = new LatencyHistogram();
+        for (LatencyHistogram stripe : stripes) {
+            merged.add(stripe);
+        }
+        return merged;
+    }
+
+    /**
+     * Registers these metrics with the platform's MBean server.
+     *
+     * @return the name they were registered under.
+     * @throws JMException if they couldn't be registered, e.g. because they already were.
+     */
+    public ObjectName register() throws JMException {
+        ObjectName name = new ObjectName("mx.unam.fciencias.myp.chat:type=Deliveries");
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+        return name;
+    }
+
+    @Override
+    public long getDelivered() {
+        return delivered.sum();
+    }
+
+    @Override
+    public long getRenderNanosP50() {
+        return getRenderTimes().getPercentile(50);
+    }
+
+    @Override
+    public long getRenderNanosP99() {
+        return getRenderTimes().getPercentile(99);
+    }
+
+    @Override
+    public long getRenderNanosMax() {
+        return getRenderTimes().getMax();
+    }
+
+    @Override
+    public long getLatencyNanosP50() {
+        return getLatencies().getPercentile(50);
+    }
+
+    @Override
+    public long getLatencyNanosP99() {
+        return getLatencies().getPercentile(99);
+    }
+
+    @Override
+    public long getLatencyNanosP999() {
+        return getLatencies().getPercentile(99.9);
+    }
+
+    @Override
+    public long getLatencyNanosMax() {
+        return getLatencies().getMax();
+    }
+
+    @Override
+    public String toString() {
+        return "delivered=" + getDelivered()
+                + System.lineSeparator() + "  render (ns): " + getRenderTimes()
+                + System.lineSeparator() + "  send-to-deliver (ns): " + getLatencies();
+    }
+}
@@ -0,0 +1,48 @@
+package mx.unam.fciencias.myp.chat.models;
+
+/**
+ * Management interface of {@link DeliveryMetrics}. Times are in nanoseconds.
+ *
+ * @author Luis Daniel Aragon Bermudez 416041271
+ */
+public interface DeliveryMetricsMXBean {
+    /**
+     * @return the amount of lines delivered to users' screens or outboxes.
+     */
+    long getDelivered();
+
+    /**
+     * @return the median time a user spent rendering and showing a notification.
+     */
+    long getRenderNanosP50();
+
+    /**
+     * @return the 99th percentile of the time a user spent rendering and showing a notification.
+     */
+    long getRenderNanosP99();
+
+    /**
+     * @return the longest time a user spent rendering and showing a notification.
+     */
+    long getRenderNanosMax();
+
+    /**
+     * @return the median time between a notification's creation and its delivery.
+     */
+    long getLatencyNanosP50();
+
+    /**
+     * @return the 99th percentile of the time between a notification's creation and its delivery.
+     */
+    long getLatencyNanosP99();
+
+    /**
+     * @return the 99.9th percentile of the time between a notification's creation and its delivery.
+     */
+    long getLatencyNanosP999();
+
+    /**
+     * @return the longest time between a notification's creation and its delivery.
+     */
+    long getLatencyNanosMax();
+}
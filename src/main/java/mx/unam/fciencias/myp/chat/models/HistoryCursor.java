@@ -0,0 +1,90 @@
+package mx.unam.fciencias.myp.chat.models;
+
+import java.util.function.ObjLongConsumer;
+
+/**
+ * <p>Reads a {@link RoomHistory} incrementally, without copying it. A cursor remembers the sequence number of the next
+ * entry to read, so reading can be resumed later, even by another cursor, from {@link #getPosition()}.</p>
+ * <p>Entries evicted before the cursor gets to them are skipped and counted. Cursors aren't thread-safe.</p>
+ *
+ * @author Luis Daniel Aragon Bermudez 416041271
+ */
+public class HistoryCursor {
+    /**
+     * The history being read.
+     */
+    private final RoomHistory history;
+    /**
+     * Sequence number of the next entry to read.
+     */
+    private long position;
+    /**
+     * Amount of entries evicted before the cursor got to them.
+     */
+    private long skipped;
+
+    /**
+     * Builds a cursor.
+     *
+     * @param history the history to read.
+     * @param from    sequence number of the first entry to read.
+     */
+    HistoryCursor(RoomHistory history, long from) {
+        if (from < 0)
+            throw new IllegalArgumentException(String.format("Invalid sequence number: %d", from));
+        this.history = history;
+        this.position = from;
+    }
+
+    /**
+     * Reads the next entries.
+     *
+     * @param limit  the maximum amount of entries to read.
+     * @param action action performed on every entry read and its sequence number.
+     * @return the amount of entries read, zero if the cursor has caught up with the history.
+     */
+    public int next(int limit, ObjLongConsumer<ChatNotification> action) {
+        long first = history.getFirstSequence();
+        if (position < first) {
+            skipped += first - position;
+            position = first;
+        }
+        long[] read = {0, position};
+        long end = history.readSequenced(position, Long.MAX_VALUE, limit, (notification, sequence) -> {
+            // the history may evict entries between reads too.
+            skipped += sequence - read[1];
+            read[0]++;
+            read[1] = sequence + 1;
+            action.accept(notification, sequence);
+        });
+        position = Math.max(position, end);
+        return (int) read[0];
+    }
+
+    /**
+     * Checks whether there are entries the cursor hasn't read yet.
+     *
+     * @return true if the history has entries at or after the cursor's position.
+     */
+    public boolean hasNext() {
+        return position < history.getNextSequence();
+    }
+
+    /**
+     * Retrieves the sequence number of the next entry to read, which can be used to resume reading.
+     *
+     * @return the cursor's position.
+     */
+    public long getPosition() {
+        return position;
+    }
+
+    /**
+     * Retrieves the amount of entries evicted before the cursor got to them.
+     *
+     * @return the amount of skipped entries.
+     */
+    public long getSkipped() {
+        return skipped;
+    }
+}
@@ -0,0 +1,171 @@
+package mx.unam.fciencias.myp.chat.models;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>A lock-free histogram of non-negative values, usually latencies in nanoseconds.</p>
+ * <p>Buckets follow HDR histograms' log-linear layout: values below 16 get a bucket each, and every power of two above
+ * that is split into 16 equally sized buckets, so any recorded value is known within about 6% no matter its
+ * magnitude. Recording is a few atomic increments and never allocates.</p>
+ *
+ * @author Luis Daniel Aragon Bermudez 416041271
+ */
+public final class LatencyHistogram {
+    /**
+     * Amount of bits that select a bucket within a power of two.
+     */
+    private static final int PRECISION = 4;
+    /**
+     * Amount of buckets per power of two.
+     */
+    private static final int SUB_BUCKETS = 1 << PRECISION;
+    /**
+     * Amount of buckets needed to cover every positive long.
+     */
+    private static final int BUCKETS = (64 - PRECISION) * SUB_BUCKETS;
+    /**
+     * Amount of values recorded in every bucket.
+     */
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    /**
+     * Amount of values recorded.
+     */
+    private final LongAdder count = new LongAdder();
+    /**
+     * Sum of the values recorded.
+     */
+    private final LongAdder sum = new LongAdder();
+    /**
+     * Largest value recorded.
+     */
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    /**
+     * Records a value. Negative values are recorded as zero.
+     *
+     * @param value the value.
+     */
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        counts.incrementAndGet(indexOf(value));
+        count.increment();
+        sum.add(value);
+        max.accumulate(value);
+    }
+
+    /**
+     * Records every value recorded by another histogram, e.g. to merge histograms recorded by different threads.
+     * Values the other histogram records meanwhile may be partially added.
+     *
+     * @param other the other histogram.
+     */
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < BUCKETS; i++) {
+            long recorded = other.counts.get(i);
+            if (recorded != 0) {
+                counts.addAndGet(i, recorded);
+            }
+        }
+        count.add(other.count.sum());
+        sum.add(other.sum.sum());
+        max.accumulate(other.max.get());
+    }
+
+    /**
+     * Retrieves the amount of values recorded.
+     *
+     * @return the amount of values recorded.
+     */
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * Retrieves the mean of the values recorded.
+     *
+     * @return the mean, or zero if nothing was recorded.
+     */
+    public double getMean() {
+        long recorded = count.sum();
+        return recorded == 0 ? 0 : (double) sum.sum() / recorded;
+    }
+
+    /**
+     * Retrieves the largest value recorded.
+     *
+     * @return the largest value, or zero if nothing was recorded.
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Estimates a percentile of the values recorded, as the largest value of the bucket the percentile falls in.
+     *
+     * @param percentile the percentile, between 0 and 100.
+     * @return the percentile's estimate, or zero if nothing was recorded.
+     */
+    public long getPercentile(double percentile) {
+        if (percentile < 0 || percentile > 100)
+            throw new IllegalArgumentException(String.format("Invalid percentile: %f", percentile));
+        long recorded = 0;
+        long[] snapshot = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            recorded += snapshot[i];
+        }
+        if (recorded == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * recorded));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return Math.min(upperBoundOf(i), getMax());
+            }
+        }
+        return getMax();
+    }
+
+    /**
+     * Computes the bucket a value falls in.
+     *
+     * @param value a non-negative value.
+     * @return the value's bucket.
+     */
+    private static int indexOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - PRECISION)) & (SUB_BUCKETS - 1);
+        return (exponent - PRECISION + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * Computes the largest value that falls in a bucket.
+     *
+     * @param index the bucket.
+     * @return the bucket's largest value.
+     */
+    private static long upperBoundOf(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int exponent = index / SUB_BUCKETS + PRECISION - 1;
+        long width = 1L << (exponent - PRECISION);
+        long lower = (SUB_BUCKETS + index % SUB_BUCKETS) * width;
+        return lower + width - 1;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("count=%d mean=%.0f p50=%d p99=%d p99.9=%d max=%d",
+                getCount(), getMean(), getPercentile(50), getPercentile(99), getPercentile(99.9), getMax());
+    }
+}
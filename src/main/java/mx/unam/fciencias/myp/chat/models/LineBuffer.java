@@ -0,0 +1,183 @@
+package mx.unam.fciencias.myp.chat.models;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * <p>Reusable scratch space to render notifications straight into UTF-8 bytes, see
+ * {@link AbstractChatUser#deliver(int, AbstractChatUser, CharSequence, LineBuffer)}.</p>
+ * <p>The buffer keeps every line it rendered for the current notification, one per templates and point of view, so
+ * each distinct line is rendered, and encoded if it's written to a {@link Sink}, once no matter how recipients are
+ * ordered. Once warmed up, rendering a line and writing it to sinks allocates nothing, while {@link #toString()} copies
+ * the line into a new string. A buffer must only be used by one thread at a time.</p>
+ *
+ * @author Luis Daniel Aragon Bermudez 416041271
+ */
+public final class LineBuffer {
+    /**
+     * The line separator's bytes.
+     */
+    private static final byte[] SEPARATOR = System.lineSeparator().getBytes(StandardCharsets.UTF_8);
+    /**
+     * The lines rendered so far, the first {@link #count} of which belong to the current notification. Lines past those
+     * are kept to be reused.
+     */
+    private Line[] lines = {new Line()};
+    /**
+     * Amount of lines rendered for the current notification.
+     */
+    private int count;
+    /**
+     * The line last rendered or reused, or null if there's none.
+     */
+    private Line current;
+
+    /**
+     * Encodes a line, followed by a line separator, into a buffer of its own.
+     *
+     * @param line the line.
+     * @return the line's bytes, from position zero to the buffer's limit.
+     */
+    static ByteBuffer encode(CharSequence line) {
+        ByteBuffer bytes = ByteBuffer.allocate(NotificationCodec.utf8Length(line) + SEPARATOR.length);
+        NotificationCodec.putUtf8(bytes, line);
+        bytes.put(SEPARATOR);
+        bytes.flip();
+        return bytes;
+    }
+
+    /**
+     * Forgets the current notification's lines. Must be called before rendering a different notification.
+     */
+    public void clear() {
+        count = 0;
+        current = null;
+    }
+
+    /**
+     * Renders a notification, unless it was already rendered with the same templates and point of view.
+     *
+     * @param templates the recipient's templates.
+     * @param type      the notification's type.
+     * @param username  the username of the notification's origin.
+     * @param message   the notification's message.
+     * @param self      whether the notification's being rendered for the user that created it.
+     * @return this buffer.
+     */
+    public LineBuffer render(LocaleTemplates templates, int type, CharSequence username, CharSequence message,
+                             boolean self) {
+        int templatesId = templates.getId();
+        if (current != null && current.templatesId == templatesId && current.self == self) {
+            return this;
+        }
+        for (int i = 0; i < count; i++) {
+            if (lines[i].templatesId == templatesId && lines[i].self == self) {
+                current = lines[i];
+                return this;
+            }
+        }
+        if (count == lines.length) {
+            lines = Arrays.copyOf(lines, count * 2);
+            for (int i = count; i < lines.length; i++) {
+                lines[i] = new Line();
+            }
+        }
+        current = lines[count++];
+        current.render(templates, type, username, message, self);
+        return this;
+    }
+
+    /**
+     * Writes the current line, followed by a line separator, as a single write.
+     *
+     * @param sink the target sink.
+     */
+    public void writeTo(Sink sink) {
+        sink.write(current.encoded());
+    }
+
+    /**
+     * Retrieves the current line, built once per line however many recipients print it.
+     *
+     * @return the current line, without line separator.
+     */
+    @Override
+    public String toString() {
+        if (current == null) {
+            return "";
+        }
+        if (current.text == null) {
+            current.text = current.chars.toString();
+        }
+        return current.text;
+    }
+
+    /**
+     * A line rendered with some templates and point of view.
+     */
+    private static final class Line {
+        /**
+         * The line's characters.
+         */
+        final StringBuilder chars = new StringBuilder(256);
+        /**
+         * The line's characters as a string, or null until a recipient prints it.
+         */
+        String text;
+        /**
+         * The line's bytes, followed by a line separator, from position zero to the limit.
+         */
+        ByteBuffer bytes = ByteBuffer.allocate(1024);
+        /**
+         * Whether the line's bytes are up to date.
+         */
+        boolean encoded;
+        /**
+         * Id of the templates the line was rendered with.
+         */
+        int templatesId;
+        /**
+         * Whether the line was rendered for the notification's origin.
+         */
+        boolean self;
+
+        /**
+         * Renders a notification into this line.
+         *
+         * @param templates the recipient's templates.
+         * @param type      the notification's type.
+         * @param username  the username of the notification's origin.
+         * @param message   the notification's message.
+         * @param self      whether the notification's being rendered for the user that created it.
+         */
+        void render(LocaleTemplates templates, int type, CharSequence username, CharSequence message, boolean self) {
+            chars.setLength(0);
+            text = null;
+            encoded = false;
+            templates.appendTo(chars, type, username, message, self);
+            this.templatesId = templates.getId();
+            this.self = self;
+        }
+
+        /**
+         * Encodes the line, unless it's already been encoded.
+         *
+         * @return the line's bytes, followed by a line separator.
+         */
+        ByteBuffer encoded() {
+            if (!encoded) {
+                int length = NotificationCodec.utf8Length(chars) + SEPARATOR.length;
+                if (length > bytes.capacity()) {
+                    bytes = ByteBuffer.allocate(Math.max(length, bytes.capacity() * 2));
+                }
+                bytes.clear();
+                NotificationCodec.putUtf8(bytes, chars);
+                bytes.put(SEPARATOR);
+                bytes.flip();
+                encoded = true;
+            }
+            return bytes;
+        }
+    }
+}
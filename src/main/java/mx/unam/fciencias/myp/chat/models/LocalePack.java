@@ -0,0 +1,94 @@
+package mx.unam.fciencias.myp.chat.models;
+
+import java.util.Properties;
+
+/**
+ * An immutable table of a locale's phrases, along with the templates compiled out of them.
+ *
+ * @author Luis Daniel Aragon Bermudez 416041271
+ */
+public final class LocalePack {
+    /**
+     * The locale's id, i.e. "en-GB".
+     */
+    private final String id;
+    /**
+     * Interned phrases, indexed by {@link Phrase#ordinal()}.
+     */
+    private final String[] phrases;
+    /**
+     * Templates compiled out of the phrases.
+     */
+    private final LocaleTemplates templates;
+
+    /**
+     * Builds a locale pack.
+     *
+     * @param id      the locale's id.
+     * @param phrases the locale's phrases, indexed by {@link Phrase#ordinal()}.
+     */
+    public LocalePack(String id, String[] phrases) {
+        if (id == null || phrases == null || phrases.length != Phrase.values().length)
+            throw new IllegalArgumentException("A locale pack needs an id and every phrase.");
+        this.id = id;
+        this.phrases = new String[phrases.length];
+        for (int i = 0; i < phrases.length; i++) {
+            if (phrases[i] == null)
+                throw new IllegalArgumentException(String.format("Missing phrase: %s", Phrase.values()[i].getKey()));
+            this.phrases[i] = phrases[i].intern();
+        }
+        this.templates = new LocaleTemplates(
+                phrase(Phrase.HAVE_JOINED_SECOND),
+                phrase(Phrase.HAVE_JOINED_THIRD),
+                phrase(Phrase.HAVE_LEFT_SECOND),
+                phrase(Phrase.HAVE_LEFT_THIRD),
+                phrase(Phrase.VERB_SAY_SECOND),
+                phrase(Phrase.VERB_SAY_THIRD),
+                phrase(Phrase.PRONOUN_YOU)
+        );
+    }
+
+    /**
+     * Builds a locale pack out of a set of properties keyed by {@link Phrase#getKey()}.
+     *
+     * @param id         the locale's id.
+     * @param properties the locale's phrases.
+     * @return the locale pack.
+     */
+    public static LocalePack fromProperties(String id, Properties properties) {
+        Phrase[] keys = Phrase.values();
+        String[] phrases = new String[keys.length];
+        for (Phrase phrase : keys) {
+            phrases[phrase.ordinal()] = properties.getProperty(phrase.getKey());
+        }
+        return new LocalePack(id, phrases);
+    }
+
+    /**
+     * Retrieves the locale's id.
+     *
+     * @return the locale's id.
+     */
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * Retrieves one of the locale's phrases.
+     *
+     * @param phrase the phrase.
+     * @return the locale's version of the phrase.
+     */
+    public String phrase(Phrase phrase) {
+        return phrases[phrase.ordinal()];
+    }
+
+    /**
+     * Retrieves the templates compiled out of the locale's phrases.
+     *
+     * @return the locale's templates.
+     */
+    public LocaleTemplates getTemplates() {
+        return templates;
+    }
+}
@@ -0,0 +1,181 @@
+package mx.unam.fciencias.myp.chat.models;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>A locale's notification templates, compiled once from its phrases.</p>
+ * <p>Every constant part of the default templates (see {@link AbstractChatUser#update(ChatNotification)}) is
+ * precomputed, so rendering a line only appends the notification's username and message to a presized builder instead
+ * of parsing a format string.</p>
+ *
+ * @author Luis Daniel Aragon Bermudez 416041271
+ */
+public final class LocaleTemplates {
+    /**
+     * Source of template ids.
+     */
+    private static final AtomicInteger IDS = new AtomicInteger();
+    /**
+     * Unique id of this set of templates.
+     */
+    private final int id;
+    /**
+     * The line shown to a user that has just joined, i.e. "You have joined the chat."
+     */
+    private final String joinedSelf;
+    /**
+     * Appended to a username when someone else joins, i.e. " has joined the chat."
+     */
+    private final String joinedOther;
+    /**
+     * Appended to a username when the user leaves, i.e. " you have left the chat."
+     */
+    private final String leftSelf;
+    /**
+     * Appended to a username when someone else leaves, i.e. " has left the chat."
+     */
+    private final String leftOther;
+    /**
+     * Prepended to a message sent by the user, i.e. "You said: "
+     */
+    private final String saidSelf;
+    /**
+     * Appended to a username before a message sent by someone else, i.e. " said: "
+     */
+    private final String saidOther;
+
+    /**
+     * Compiles a locale's templates. The parameters match {@link AbstractChatUser}'s abstract phrase getters.
+     *
+     * @param haveJoinedSecond predicate equivalent to "you have joined."
+     * @param haveJoinedThird  predicate equivalent to "he/she has joined."
+     * @param haveLeftSecond   predicate equivalent to "you have left."
+     * @param haveLeftThird    predicate equivalent to "he/she has left."
+     * @param verbSaySecond    second-person singular simple-past form of the verb to say.
+     * @param verbSayThird     third-person singular simple-past form of the verb to say.
+     * @param pronounYou       the pronoun "you".
+     */
+    public LocaleTemplates(String haveJoinedSecond, String haveJoinedThird, String haveLeftSecond,
+                           String haveLeftThird, String verbSaySecond, String verbSayThird, String pronounYou) {
+        this.id = IDS.getAndIncrement();
+        this.joinedSelf = pronounYou + " " + haveJoinedSecond;
+        this.joinedOther = " " + haveJoinedThird;
+        this.leftSelf = " " + haveLeftSecond;
+        this.leftOther = " " + haveLeftThird;
+        this.saidSelf = pronounYou + " " + verbSaySecond + ": ";
+        this.saidOther = " " + verbSayThird + ": ";
+    }
+
+    /**
+     * Compiles the templates of a user's locale out of its phrase getters.
+     *
+     * @param user a user.
+     * @return the user's templates.
+     */
+    static LocaleTemplates of(AbstractChatUser user) {
+        return new LocaleTemplates(
+                user.getHaveJoinedSecond(),
+                user.getHaveJoinedThird(),
+                user.getHaveLeftSecond(),
+                user.getHaveLeftThird(),
+                user.getVerbSaySecond(),
+                user.getVerbSayThird(),
+                user.getPronounYou()
+        );
+    }
+
+    /**
+     * Retrieves this set of templates' unique id.
+     *
+     * @return the templates' id.
+     */
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * Renders a notification.
+     *
+     * @param notification the notification.
+     * @param self         whether the notification's being rendered for the user that created it.
+     * @return the rendered line.
+     */
+    public String render(ChatNotification notification, boolean self) {
+        String username = notification.getOrigin().getUsername();
+        switch (notification.getType()) {
+            case ChatNotification.NEW_MESSAGE:
+                return renderMessage(username, notification.getMessage(), self);
+            case ChatNotification.NEW_USER:
+                return renderJoined(username, self);
+            case ChatNotification.USER_LEFT:
+                return renderLeft(username, self);
+            default:
+                throw new IllegalArgumentException("Unsupported update.");
+        }
+    }
+
+    /**
+     * Renders a notification into a builder, without allocating anything but the builder's growth.
+     *
+     * @param target   the builder the line is appended to.
+     * @param type     the notification's type, see {@link ChatNotification#getType()}.
+     * @param username the username of the notification's origin.
+     * @param message  the notification's message, only used by {@link ChatNotification#NEW_MESSAGE} notifications.
+     * @param self     whether the notification's being rendered for the user that created it.
+     * @return the builder.
+     */
+    public StringBuilder appendTo(StringBuilder target, int type, CharSequence username, CharSequence message,
+                                  boolean self) {
+        switch (type) {
+            case ChatNotification.NEW_MESSAGE:
+                return self
+                        ? target.append(saidSelf).append(message)
+                        : target.append(username).append(saidOther).append(message);
+            case ChatNotification.NEW_USER:
+                return self ? target.append(joinedSelf) : target.append(username).append(joinedOther);
+            case ChatNotification.USER_LEFT:
+                return target.append(username).append(self ? leftSelf : leftOther);
+            default:
+                throw new IllegalArgumentException("Unsupported update.");
+        }
+    }
+
+    /**
+     * Renders a message.
+     *
+     * @param username the sender's username.
+     * @param message  the message.
+     * @param self     whether the message's being rendered for its sender.
+     * @return the rendered line.
+     */
+    public String renderMessage(String username, String message, boolean self) {
+        if (self) {
+            return new StringBuilder(saidSelf.length() + message.length())
+                    .append(saidSelf).append(message).toString();
+        }
+        return new StringBuilder(username.length() + saidOther.length() + message.length())
+                .append(username).append(saidOther).append(message).toString();
+    }
+
+    /**
+     * Renders a user joining.
+     *
+     * @param username the username of the user that joined.
+     * @param self     whether the line's being rendered for the user that joined.
+     * @return the rendered line.
+     */
+    public String renderJoined(String username, boolean self) {
+        return self ? joinedSelf : username.concat(joinedOther);
+    }
+
+    /**
+     * Renders a user leaving.
+     *
+     * @param username the username of the user that left.
+     * @param self     whether the line's being rendered for the user that left.
+     * @return the rendered line.
+     */
+    public String renderLeft(String username, boolean self) {
+        return username.concat(self ? leftSelf : leftOther);
+    }
+}
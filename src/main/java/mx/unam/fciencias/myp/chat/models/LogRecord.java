@@ -0,0 +1,164 @@
+package mx.unam.fciencias.myp.chat.models;
+
+import java.sql.Timestamp;
+
+/**
+ * The persisted form of an accepted {@link ChatNotification}, as read back from an event log.
+ *
+ * @author Luis Daniel Aragon Bermudez 416041271
+ */
+public class LogRecord {
+    /**
+     * The notification's sequence number in its room.
+     */
+    private final long sequence;
+    /**
+     * The notification's creation time, in milliseconds since the epoch.
+     */
+    private final long timestamp;
+    /**
+     * The notification's type.
+     */
+    private final int type;
+    /**
+     * The id of the user that created the notification.
+     */
+    private final int originId;
+    /**
+     * The id of the user the notification's addressed to, or -1 if it's addressed to the whole room.
+     */
+    private final int recipientId;
+    /**
+     * The username of the user that created the notification.
+     */
+    private final String username;
+    /**
+     * The notification's message.
+     */
+    private final String message;
+    /**
+     * The locale id of the user that created the notification, only known for joins.
+     */
+    private final String localeId;
+
+    /**
+     * Builds a record.
+     *
+     * @param sequence  the notification's sequence number in its room.
+     * @param timestamp the notification's creation time, in milliseconds since the epoch.
+     * @param type      the notification's type.
+     * @param originId  the id of the user that created the notification.
+     * @param username  the username of the user that created the notification.
+     * @param message   the notification's message.
+     */
+    public LogRecord(long sequence, long timestamp, int type, int originId, String username, String message) {
+        this(sequence, timestamp, type, originId, -1, username, message, null);
+    }
+
+    /**
+     * Builds a record of a notification addressed to a single user.
+     *
+     * @param sequence    the notification's sequence number in its room.
+     * @param timestamp   the notification's creation time, in milliseconds since the epoch.
+     * @param type        the notification's type.
+     * @param originId    the id of the user that created the notification.
+     * @param recipientId the id of the user the notification's addressed to, or -1 if it's addressed to the whole
+     *                    room.
+     * @param username    the username of the user that created the notification.
+     * @param message     the notification's message.
+     * @param localeId    the locale id of the user that created the notification, or null if unknown.
+     */
+    public LogRecord(long sequence, long timestamp, int type, int originId, int recipientId, String username,
+                     String message, String localeId) {
+        this.sequence = sequence;
+        this.timestamp = timestamp;
+        this.type = type;
+        this.originId = originId;
+        this.recipientId = recipientId;
+        this.localeId = localeId;
+        this.username = username;
+        this.message = message;
+    }
+
+    /**
+     * Retrieves the notification's sequence number in its room.
+     *
+     * @return the record's sequence number.
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Retrieves the notification's creation time.
+     *
+     * @return the record's timestamp, in milliseconds since the epoch.
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * Retrieves the notification's type.
+     *
+     * @return the record's type.
+     */
+    public int getType() {
+        return type;
+    }
+
+    /**
+     * Retrieves the id of the user that created the notification.
+     *
+     * @return the origin's id.
+     */
+    public int getOriginId() {
+        return originId;
+    }
+
+    /**
+     * Retrieves the id of the user the notification's addressed to.
+     *
+     * @return the recipient's id, or -1 if the notification's addressed to the whole room.
+     */
+    public int getRecipientId() {
+        return recipientId;
+    }
+
+    /**
+     * Retrieves the username of the user that created the notification.
+     *
+     * @return the origin's username.
+     */
+    public String getUsername() {
+        return username;
+    }
+
+    /**
+     * Retrieves the notification's message.
+     *
+     * @return the record's message.
+     */
+    public String getMessage() {
+        return message;
+    }
+
+    /**
+     * Retrieves the locale id of the user that created the notification.
+     *
+     * @return the origin's locale id, or null if unknown. Only joins carry it.
+     */
+    public String getLocaleId() {
+        return localeId;
+    }
+
+    @Override
+    public String toString() {
+        return "#" + sequence
+                + " [@" + new Timestamp(timestamp)
+                + "] Origin: " + username
+                + "  Message: " + message
+                + "  Type: " + type
+                + (recipientId < 0 ? "" : "  Recipient: #" + recipientId);
+    }
+}
@@ -0,0 +1,282 @@
+package mx.unam.fciencias.myp.chat.models;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * <p>Compact, versioned binary encoding of accepted notifications.</p>
+ * <p>An encoded notification is laid out as follows, where varints are unsigned LEB128 and strings are a varint
+ * length followed by that many UTF-8 bytes:</p>
+ * <ol>
+ * <li>The format's version, a single byte.</li>
+ * <li>The notification's type, a varint.</li>
+ * <li>The origin's id, a varint.</li>
+ * <li>The recipient's id plus one, or zero if the notification's addressed to the whole room, a varint. Version 1
+ * notifications don't have it.</li>
+ * <li>The notification's timestamp, a varint.</li>
+ * <li>The notification's sequence number, a varint.</li>
+ * <li>The origin's username, a string.</li>
+ * <li>The notification's message, a string.</li>
+ * <li>For {@link ChatNotification#NEW_USER} notifications only, the origin's locale id, a string that's empty if the
+ * origin has none. Versions 1 and 2 don't have it.</li>
+ * </ol>
+ * <p>Strings are encoded straight into the target buffer, which can be direct, and decoded lazily by a
+ * {@link NotificationView}, so neither direction needs intermediate strings or byte arrays.</p>
+ *
+ * @author Luis Daniel Aragon Bermudez 416041271
+ */
+public final class NotificationCodec {
+    /**
+     * The current format's version.
+     */
+    public static final byte VERSION = 3;
+
+    /**
+     * Utility class.
+     */
+    private NotificationCodec() {
+    }
+
+    /**
+     * Computes the amount of bytes a notification takes once encoded.
+     *
+     * @param sequence     the notification's sequence number.
+     * @param notification the notification.
+     * @return the notification's encoded length.
+     */
+    public static int encodedLength(long sequence, ChatNotification notification) {
+        AbstractChatUser origin = notification.getOrigin();
+        int username = utf8Length(origin.getUsername());
+        int message = utf8Length(notification.getMessage());
+        int locale = utf8Length(localeField(notification));
+        return 1
+                + varintLength(notification.getType())
+                + varintLength(origin.getId())
+                + varintLength(recipientField(notification))
+                + varintLength(notification.getTimestamp())
+                + varintLength(sequence)
+                + varintLength(username) + username
+                + varintLength(message) + message
+                + (notification.getType() == ChatNotification.NEW_USER ? varintLength(locale) + locale : 0);
+    }
+
+    /**
+     * Encodes a notification at the buffer's position, advancing it.
+     *
+     * @param sequence     the notification's sequence number.
+     * @param notification the notification.
+     * @param buffer       the target buffer.
+     * @throws BufferOverflowException if the buffer doesn't have enough room, see
+     *                                 {@link #encodedLength(long, ChatNotification)}.
+     */
+    public static void encode(long sequence, ChatNotification notification, ByteBuffer buffer) {
+        AbstractChatUser origin = notification.getOrigin();
+        buffer.put(VERSION);
+        putVarint(buffer, notification.getType());
+        putVarint(buffer, origin.getId());
+        putVarint(buffer, recipientField(notification));
+        putVarint(buffer, notification.getTimestamp());
+        putVarint(buffer, sequence);
+        putString(buffer, origin.getUsername());
+        putString(buffer, notification.getMessage());
+        if (notification.getType() == ChatNotification.NEW_USER) {
+            putString(buffer, localeField(notification));
+        }
+    }
+
+    /**
+     * Computes the encoded recipient of a notification.
+     *
+     * @param notification the notification.
+     * @return the recipient's id plus one, or zero if the notification's addressed to the whole room.
+     */
+    private static int recipientField(ChatNotification notification) {
+        AbstractChatUser recipient = notification.getRecipient();
+        return recipient == null ? 0 : recipient.getId() + 1;
+    }
+
+    /**
+     * Computes the encoded locale of a notification's origin.
+     *
+     * @param notification the notification.
+     * @return the origin's locale id, or an empty string if it has none.
+     */
+    private static String localeField(ChatNotification notification) {
+        String locale = notification.getOrigin().getLocaleId();
+        return locale == null ? "" : locale;
+    }
+
+    /**
+     * Writes an unsigned LEB128 varint.
+     *
+     * @param buffer the target buffer.
+     * @param value  a non-negative value.
+     */
+    public static void putVarint(ByteBuffer buffer, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    /**
+     * Reads an unsigned LEB128 varint.
+     *
+     * @param buffer the source buffer.
+     * @return the value.
+     * @throws IllegalArgumentException if the varint is malformed.
+     */
+    public static long getVarint(ByteBuffer buffer) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed varint.");
+    }
+
+    /**
+     * Computes the length of a varint.
+     *
+     * @param value a non-negative value.
+     * @return the amount of bytes it takes once encoded.
+     */
+    public static int varintLength(long value) {
+        int length = 1;
+        while ((value & ~0x7FL) != 0) {
+            value >>>= 7;
+            length++;
+        }
+        return length;
+    }
+
+    /**
+     * Computes the length of a string once encoded as UTF-8. Null strings are encoded as empty ones, and unpaired
+     * surrogates as a single '?', just like {@link String#getBytes(java.nio.charset.Charset)} does.
+     *
+     * @param string the string.
+     * @return the amount of UTF-8 bytes.
+     */
+    public static int utf8Length(CharSequence string) {
+        if (string == null) {
+            return 0;
+        }
+        int length = 0;
+        int count = string.length();
+        for (int i = 0; i < count; i++) {
+            char c = string.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (!Character.isSurrogate(c)) {
+                length += 3;
+            } else if (Character.isHighSurrogate(c) && i + 1 < count
+                    && Character.isLowSurrogate(string.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else {
+                // an unpaired surrogate, written as '?'.
+                length++;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Writes a string as a varint length followed by its UTF-8 bytes. Unpaired surrogates are written as '?'.
+     *
+     * @param buffer the target buffer.
+     * @param string the string, null is written as an empty string.
+     */
+    public static void putString(ByteBuffer buffer, CharSequence string) {
+        putVarint(buffer, utf8Length(string));
+        if (string != null) {
+            putUtf8(buffer, string);
+        }
+    }
+
+    /**
+     * Reads a string written by {@link #putString(ByteBuffer, CharSequence)}, advancing the buffer past it.
+     *
+     * @param buffer the source buffer.
+     * @return the string.
+     */
+    public static String getString(ByteBuffer buffer) {
+        int length = (int) getVarint(buffer);
+        StringBuilder string = new StringBuilder(length);
+        appendUtf8(buffer, buffer.position(), length, string);
+        buffer.position(buffer.position() + length);
+        return string.toString();
+    }
+
+    /**
+     * Writes the UTF-8 bytes of a string, without any length. Unpaired surrogates are written as a single '?', the
+     * buffer must have room for at least {@link #utf8Length(CharSequence)} bytes.
+     *
+     * @param buffer the target buffer.
+     * @param string the string.
+     */
+    public static void putUtf8(ByteBuffer buffer, CharSequence string) {
+        int count = string.length();
+        for (int i = 0; i < count; i++) {
+            char c = string.charAt(i);
+            if (c < 0x80) {
+                buffer.put((byte) c);
+            } else if (c < 0x800) {
+                buffer.put((byte) (0xC0 | (c >> 6)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            } else if (Character.isSurrogate(c)) {
+                if (Character.isHighSurrogate(c) && i + 1 < count
+                        && Character.isLowSurrogate(string.charAt(i + 1))) {
+                    int codePoint = Character.toCodePoint(c, string.charAt(++i));
+                    buffer.put((byte) (0xF0 | (codePoint >> 18)));
+                    buffer.put((byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+                    buffer.put((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+                    buffer.put((byte) (0x80 | (codePoint & 0x3F)));
+                } else {
+                    buffer.put((byte) '?');
+                }
+            } else {
+                buffer.put((byte) (0xE0 | (c >> 12)));
+                buffer.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            }
+        }
+    }
+
+    /**
+     * Decodes UTF-8 bytes straight into a builder.
+     *
+     * @param buffer the source buffer.
+     * @param offset absolute index of the first byte.
+     * @param length the amount of bytes.
+     * @param target the builder the characters are appended to.
+     */
+    public static void appendUtf8(ByteBuffer buffer, int offset, int length, StringBuilder target) {
+        int end = offset + length;
+        int i = offset;
+        while (i < end) {
+            int b = buffer.get(i++) & 0xFF;
+            if (b < 0x80) {
+                target.append((char) b);
+            } else if (b < 0xE0 && i < end) {
+                target.append((char) (((b & 0x1F) << 6) | (buffer.get(i++) & 0x3F)));
+            } else if (b < 0xF0 && i + 1 < end) {
+                target.append((char) (((b & 0x0F) << 12) | ((buffer.get(i++) & 0x3F) << 6)
+                        | (buffer.get(i++) & 0x3F)));
+            } else if (i + 2 < end) {
+                int codePoint = ((b & 0x07) << 18) | ((buffer.get(i++) & 0x3F) << 12)
+                        | ((buffer.get(i++) & 0x3F) << 6) | (buffer.get(i++) & 0x3F);
+                target.appendCodePoint(codePoint);
+            } else {
+                target.append('\uFFFD');
+                i = end;
+            }
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package mx.unam.fciencias.myp.chat.models;
+
+/**
+ * What a user does with a kind of notification, see
+ * {@link AbstractChatUser#setHandler(Class, NotificationKind, NotificationHandler)}.
+ *
+ * @author Luis Daniel Aragon Bermudez 416041271
+ */
+@FunctionalInterface
+public interface NotificationHandler {
+    /**
+     * Handles a notification on behalf of a user.
+     *
+     * @param user         the user being updated.
+     * @param notification the notification.
+     * @return the line to show on the user's screen, or null to show nothing.
+     */
+    String handle(AbstractChatUser user, ChatNotification notification);
+}
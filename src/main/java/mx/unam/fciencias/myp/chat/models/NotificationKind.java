@@ -0,0 +1,130 @@
+package mx.unam.fciencias.myp.chat.models;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * <p>A kind of notification. Every kind has a unique id, which is the type carried by its notifications (see
+ * {@link ChatNotification#getType()}), so the original flags keep working: {@link #NEW_MESSAGE}, {@link #NEW_USER}
+ * and {@link #USER_LEFT} are {@link ChatNotification#NEW_MESSAGE}, {@link ChatNotification#NEW_USER} and
+ * {@link ChatNotification#USER_LEFT}.</p>
+ * <p>New kinds, such as typing indicators, edits or reactions, are defined at runtime with
+ * {@link #define(String, NotificationHandler)} and don't require changes to {@link AbstractChatUser}.</p>
+ *
+ * @author Luis Daniel Aragon Bermudez 416041271
+ */
+public final class NotificationKind {
+    /**
+     * Every kind, indexed by id.
+     */
+    private static final List<NotificationKind> KINDS = new CopyOnWriteArrayList<>();
+    /**
+     * A custom message sent by a user.
+     */
+    public static final NotificationKind NEW_MESSAGE = define("message", null);
+    /**
+     * A user joined the chat.
+     */
+    public static final NotificationKind NEW_USER = define("joined", null);
+    /**
+     * A user left the chat.
+     */
+    public static final NotificationKind USER_LEFT = define("left", null);
+    /**
+     * The kind's id.
+     */
+    private final int id;
+    /**
+     * The kind's name.
+     */
+    private final String name;
+    /**
+     * What users do with the kind's notifications unless their class says otherwise.
+     */
+    private final NotificationHandler defaultHandler;
+
+    /**
+     * Private constructor.
+     *
+     * @param id             the kind's id.
+     * @param name           the kind's name.
+     * @param defaultHandler what users do with the kind's notifications by default.
+     */
+    private NotificationKind(int id, String name, NotificationHandler defaultHandler) {
+        this.id = id;
+        this.name = name;
+        this.defaultHandler = defaultHandler;
+    }
+
+    /**
+     * Defines a new kind of notification.
+     *
+     * @param name           the kind's name.
+     * @param defaultHandler what users do with the kind's notifications unless their class has its own handler, can
+     *                       be null for users to ignore them.
+     * @return the new kind.
+     */
+    public static synchronized NotificationKind define(String name, NotificationHandler defaultHandler) {
+        if (name == null)
+            throw new IllegalArgumentException("Name can't be null.");
+        NotificationKind kind = new NotificationKind(KINDS.size(), name, defaultHandler);
+        KINDS.add(kind);
+        AbstractChatUser.handlersChanged();
+        return kind;
+    }
+
+    /**
+     * Retrieves a kind by id.
+     *
+     * @param id the kind's id.
+     * @return the kind.
+     * @throws IllegalArgumentException if there's no kind with that id.
+     */
+    public static NotificationKind of(int id) {
+        if (id < 0 || id >= KINDS.size())
+            throw new IllegalArgumentException(String.format("Invalid flag: %d", id));
+        return KINDS.get(id);
+    }
+
+    /**
+     * Retrieves the amount of kinds defined.
+     *
+     * @return the amount of kinds.
+     */
+    public static int count() {
+        return KINDS.size();
+    }
+
+    /**
+     * Retrieves the kind's id, the type of its notifications.
+     *
+     * @return the kind's id.
+     */
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * Retrieves the kind's name.
+     *
+     * @return the kind's name.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Retrieves what users do with the kind's notifications unless their class says otherwise.
+     *
+     * @return the kind's default handler, or null if users ignore them by default. Always null for the original kinds,
+     * which are rendered from each user's templates.
+     */
+    public NotificationHandler getDefaultHandler() {
+        return defaultHandler;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
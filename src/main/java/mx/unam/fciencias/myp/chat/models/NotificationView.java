@@ -0,0 +1,217 @@
+package mx.unam.fciencias.myp.chat.models;
+
+import java.nio.ByteBuffer;
+
+/**
+ * <p>A reusable, read-only view of a notification encoded by {@link NotificationCodec}.</p>
+ * <p>Wrapping a buffer only parses the fixed fields and remembers where the strings are, they're decoded on demand
+ * straight from the buffer. The view is only valid while the wrapped bytes aren't modified.</p>
+ *
+ * @author Luis Daniel Aragon Bermudez 416041271
+ */
+public final class NotificationView {
+    /**
+     * The wrapped buffer.
+     */
+    private ByteBuffer buffer;
+    /**
+     * The notification's type.
+     */
+    private int type;
+    /**
+     * The origin's id.
+     */
+    private int originId;
+    /**
+     * The recipient's id, or -1 if the notification's addressed to the whole room.
+     */
+    private int recipientId;
+    /**
+     * The notification's timestamp.
+     */
+    private long timestamp;
+    /**
+     * The notification's sequence number.
+     */
+    private long sequence;
+    /**
+     * Absolute index of the username's first byte.
+     */
+    private int usernameOffset;
+    /**
+     * Length of the username in bytes.
+     */
+    private int usernameLength;
+    /**
+     * Absolute index of the message's first byte.
+     */
+    private int messageOffset;
+    /**
+     * Length of the message in bytes.
+     */
+    private int messageLength;
+    /**
+     * Absolute index of the origin locale's first byte.
+     */
+    private int localeOffset;
+    /**
+     * Length of the origin's locale in bytes, zero if it has none.
+     */
+    private int localeLength;
+
+    /**
+     * Wraps the notification at the buffer's position and advances the buffer past it.
+     *
+     * @param source the buffer.
+     * @return this view.
+     * @throws IllegalArgumentException if the notification uses an unsupported version.
+     */
+    public NotificationView wrap(ByteBuffer source) {
+        byte version = source.get();
+        if (version < 1 || version > NotificationCodec.VERSION)
+            throw new IllegalArgumentException(String.format("Unsupported version: %d", version));
+        this.buffer = source;
+        this.type = (int) NotificationCodec.getVarint(source);
+        this.originId = (int) NotificationCodec.getVarint(source);
+        this.recipientId = version == 1 ? -1 : (int) NotificationCodec.getVarint(source) - 1;
+        this.timestamp = NotificationCodec.getVarint(source);
+        this.sequence = NotificationCodec.getVarint(source);
+        this.usernameLength = (int) NotificationCodec.getVarint(source);
+        this.usernameOffset = source.position();
+        source.position(usernameOffset + usernameLength);
+        this.messageLength = (int) NotificationCodec.getVarint(source);
+        this.messageOffset = source.position();
+        source.position(messageOffset + messageLength);
+        this.localeLength = 0;
+        if (version >= 3 && type == ChatNotification.NEW_USER) {
+            this.localeLength = (int) NotificationCodec.getVarint(source);
+            this.localeOffset = source.position();
+            source.position(localeOffset + localeLength);
+        }
+        return this;
+    }
+
+    /**
+     * Retrieves the notification's type.
+     *
+     * @return the notification's type.
+     */
+    public int getType() {
+        return type;
+    }
+
+    /**
+     * Retrieves the id of the user that created the notification.
+     *
+     * @return the origin's id.
+     */
+    public int getOriginId() {
+        return originId;
+    }
+
+    /**
+     * Retrieves the id of the user the notification's addressed to.
+     *
+     * @return the recipient's id, or -1 if the notification's addressed to the whole room.
+     */
+    public int getRecipientId() {
+        return recipientId;
+    }
+
+    /**
+     * Retrieves the locale id of the user that created the notification. Only joins carry it.
+     *
+     * @return the origin's locale id, or null if the notification doesn't carry one.
+     */
+    public String getLocaleId() {
+        if (localeLength == 0) {
+            return null;
+        }
+        StringBuilder locale = new StringBuilder(localeLength);
+        NotificationCodec.appendUtf8(buffer, localeOffset, localeLength, locale);
+        return locale.toString();
+    }
+
+    /**
+     * Retrieves the notification's creation time.
+     *
+     * @return the notification's timestamp, in milliseconds since the epoch.
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * Retrieves the notification's sequence number.
+     *
+     * @return the notification's sequence number.
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Retrieves the length of the origin's username in UTF-8 bytes.
+     *
+     * @return the username's encoded length.
+     */
+    public int getUsernameLength() {
+        return usernameLength;
+    }
+
+    /**
+     * Retrieves the length of the message in UTF-8 bytes.
+     *
+     * @return the message's encoded length.
+     */
+    public int getMessageLength() {
+        return messageLength;
+    }
+
+    /**
+     * Decodes the origin's username into a builder.
+     *
+     * @param target the builder.
+     * @return the builder.
+     */
+    public StringBuilder appendUsername(StringBuilder target) {
+        NotificationCodec.appendUtf8(buffer, usernameOffset, usernameLength, target);
+        return target;
+    }
+
+    /**
+     * Decodes the message into a builder.
+     *
+     * @param target the builder.
+     * @return the builder.
+     */
+    public StringBuilder appendMessage(StringBuilder target) {
+        NotificationCodec.appendUtf8(buffer, messageOffset, messageLength, target);
+        return target;
+    }
+
+    /**
+     * Copies the message's UTF-8 bytes into another buffer.
+     *
+     * @param target the target buffer.
+     */
+    public void copyMessage(ByteBuffer target) {
+        ByteBuffer source = buffer.duplicate();
+        source.limit(messageOffset + messageLength).position(messageOffset);
+        target.put(source);
+    }
+
+    /**
+     * Builds a standalone record out of the wrapped notification.
+     *
+     * @return the record.
+     */
+    public LogRecord toRecord() {
+        return new LogRecord(
+                sequence, timestamp, type, originId, recipientId,
+                appendUsername(new StringBuilder(usernameLength)).toString(),
+                appendMessage(new StringBuilder(messageLength)).toString(),
+                getLocaleId()
+        );
+    }
+}
@@ -0,0 +1,278 @@
+package mx.unam.fciencias.myp.chat.models;
+
+import java.io.PrintStream;
+import java.util.concurrent.Executor;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * <p>A bounded ring buffer of lines waiting to be printed to a user's screen. Lines are printed by a writer task that
+ * runs on the configured {@link Executor}, so whoever offers a line never waits on the screen itself.</p>
+ * <p>When the buffer is full the configured {@link OverflowPolicy} decides what happens. Note that under
+ * {@link OverflowPolicy#BLOCK} the writer task must be able to run on a thread other than the one that's blocked.</p>
+ *
+ * @author Luis Daniel Aragon Bermudez 416041271
+ */
+public class Outbox implements Runnable {
+    /**
+     * The screen lines are eventually printed to.
+     */
+    private final PrintStream screen;
+    /**
+     * Pending lines.
+     */
+    private final String[] ring;
+    /**
+     * What to do when the ring is full.
+     */
+    private final OverflowPolicy policy;
+    /**
+     * Executor that runs the writer task.
+     */
+    private final Executor writer;
+    /**
+     * Action that disconnects the owner when the {@link OverflowPolicy#DISCONNECT} policy is triggered.
+     */
+    private final Runnable onDisconnect;
+    /**
+     * Guards every mutable field.
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+    /**
+     * Signalled whenever the writer frees up space.
+     */
+    private final Condition notFull = lock.newCondition();
+    /**
+     * Index of the oldest pending line.
+     */
+    private int head;
+    /**
+     * Amount of pending lines.
+     */
+    private int size;
+    /**
+     * Whether the writer task is running or about to run.
+     */
+    private boolean draining;
+    /**
+     * Whether the owner has been disconnected.
+     */
+    private boolean disconnected;
+    /**
+     * Amount of lines that were discarded.
+     */
+    private long dropped;
+    /**
+     * Amount of lines that were printed.
+     */
+    private long delivered;
+    /**
+     * The largest amount of pending lines observed.
+     */
+    private int highWaterMark;
+
+    /**
+     * Builds an outbox that can hold up to {@code capacity} pending lines.
+     *
+     * @param screen       the screen lines are printed to.
+     * @param capacity     the maximum amount of pending lines.
+     * @param policy       what to do when the outbox is full.
+     * @param writer       executor that runs the writer task.
+     * @param onDisconnect action that disconnects the owner, only used by the {@link OverflowPolicy#DISCONNECT}
+     *                     policy. It runs on the writer's executor.
+     */
+    public Outbox(PrintStream screen, int capacity, OverflowPolicy policy, Executor writer, Runnable onDisconnect) {
+        if (capacity < 1)
+            throw new IllegalArgumentException(String.format("Invalid capacity: %d", capacity));
+        if (screen == null || policy == null || writer == null)
+            throw new IllegalArgumentException("Screen, policy and writer can't be null.");
+        this.screen = screen;
+        this.ring = new String[capacity];
+        this.policy = policy;
+        this.writer = writer;
+        this.onDisconnect = onDisconnect;
+    }
+
+    /**
+     * Offers a line to the outbox.
+     *
+     * @param line the line.
+     * @return true if the line was accepted, false if it was discarded.
+     */
+    public boolean offer(String line) {
+        boolean schedule = false;
+        boolean disconnect = false;
+        boolean accepted = true;
+        lock.lock();
+        try {
+            if (disconnected) {
+                dropped++;
+                return false;
+            }
+            if (size == ring.length) {
+                switch (policy) {
+                    case BLOCK:
+                        while (size == ring.length && !disconnected) {
+                            notFull.awaitUninterruptibly();
+                        }
+                        if (disconnected) {
+                            dropped++;
+                            return false;
+                        }
+                        break;
+                    case DROP_OLDEST:
+                        ring[head] = null;
+                        head = (head + 1) % ring.length;
+                        size--;
+                        dropped++;
+                        break;
+                    case DROP_NEWEST:
+                        dropped++;
+                        return false;
+                    case DISCONNECT:
+                        disconnected = true;
+                        disconnect = onDisconnect != null;
+                        accepted = false;
+                        dropped++;
+                        notFull.signalAll();
+                        break;
+                    default:
+                        throw new IllegalStateException("Unsupported policy.");
+                }
+            }
+            if (accepted) {
+                ring[(head + size) % ring.length] = line;
+                size++;
+                highWaterMark = Math.max(highWaterMark, size);
+                if (!draining) {
+                    draining = true;
+                    schedule = true;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (schedule) {
+            writer.execute(this);
+        }
+        if (disconnect) {
+            writer.execute(onDisconnect);
+        }
+        return accepted;
+    }
+
+    /**
+     * Writer task. Prints every pending line and flushes the screen once the outbox has been emptied.
+     */
+    @Override
+    public void run() {
+        while (true) {
+            String line;
+            lock.lock();
+            try {
+                if (size == 0) {
+                    draining = false;
+                    break;
+                }
+                line = ring[head];
+                ring[head] = null;
+                head = (head + 1) % ring.length;
+                size--;
+                delivered++;
+                notFull.signal();
+            } finally {
+                lock.unlock();
+            }
+            screen.println(line);
+        }
+        screen.flush();
+    }
+
+    /**
+     * Retrieves the amount of lines waiting to be printed.
+     *
+     * @return the outbox's current depth.
+     */
+    public int getDepth() {
+        lock.lock();
+        try {
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Retrieves the largest amount of lines that have been waiting to be printed at the same time.
+     *
+     * @return the outbox's high-water mark.
+     */
+    public int getHighWaterMark() {
+        lock.lock();
+        try {
+            return highWaterMark;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Retrieves the amount of lines that were discarded.
+     *
+     * @return the amount of dropped lines.
+     */
+    public long getDropped() {
+        lock.lock();
+        try {
+            return dropped;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Retrieves the amount of lines that were printed.
+     *
+     * @return the amount of delivered lines.
+     */
+    public long getDelivered() {
+        lock.lock();
+        try {
+            return delivered;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Retrieves whether the {@link OverflowPolicy#DISCONNECT} policy has been triggered.
+     *
+     * @return true if the owner has been disconnected.
+     */
+    public boolean isDisconnected() {
+        lock.lock();
+        try {
+            return disconnected;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Retrieves the maximum amount of pending lines.
+     *
+     * @return the outbox's capacity.
+     */
+    public int getCapacity() {
+        return ring.length;
+    }
+
+    /**
+     * Retrieves the policy applied when the outbox is full.
+     *
+     * @return the outbox's overflow policy.
+     */
+    public OverflowPolicy getPolicy() {
+        return policy;
+    }
+}
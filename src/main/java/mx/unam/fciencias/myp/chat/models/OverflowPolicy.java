@@ -0,0 +1,25 @@
+package mx.unam.fciencias.myp.chat.models;
+
+/**
+ * Describes what an {@link Outbox} does with a line when it's already full.
+ *
+ * @author Luis Daniel Aragon Bermudez 416041271
+ */
+public enum OverflowPolicy {
+    /**
+     * The caller waits until the outbox has room for the line.
+     */
+    BLOCK,
+    /**
+     * The oldest pending line is discarded to make room for the new one.
+     */
+    DROP_OLDEST,
+    /**
+     * The new line is discarded.
+     */
+    DROP_NEWEST,
+    /**
+     * The new line is discarded and the outbox's owner is disconnected. Every line offered afterwards is discarded.
+     */
+    DISCONNECT
+}
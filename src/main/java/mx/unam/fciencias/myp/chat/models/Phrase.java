@@ -0,0 +1,55 @@
+package mx.unam.fciencias.myp.chat.models;
+
+/**
+ * The phrases a locale has to provide. Each one matches one of {@link AbstractChatUser}'s abstract phrase getters.
+ *
+ * @author Luis Daniel Aragon Bermudez 416041271
+ */
+public enum Phrase {
+    /**
+     * Predicate equivalent to "you have joined."
+     */
+    HAVE_JOINED_SECOND("haveJoinedSecond"),
+    /**
+     * Predicate equivalent to "he/she has joined."
+     */
+    HAVE_JOINED_THIRD("haveJoinedThird"),
+    /**
+     * Predicate equivalent to "you have left."
+     */
+    HAVE_LEFT_SECOND("haveLeftSecond"),
+    /**
+     * Predicate equivalent to "he/she has left."
+     */
+    HAVE_LEFT_THIRD("haveLeftThird"),
+    /**
+     * Second-person singular simple-past form of the verb to say.
+     */
+    VERB_SAY_SECOND("verbSaySecond"),
+    /**
+     * Third-person singular simple-past form of the verb to say.
+     */
+    VERB_SAY_THIRD("verbSayThird"),
+    /**
+     * The pronoun "you".
+     */
+    PRONOUN_YOU("pronounYou");
+
+    /**
+     * The phrase's key in a locale pack file.
+     */
+    private final String key;
+
+    Phrase(String key) {
+        this.key = key;
+    }
+
+    /**
+     * Retrieves the phrase's key in a locale pack file.
+     *
+     * @return the phrase's key.
+     */
+    public String getKey() {
+        return key;
+    }
+}
@@ -0,0 +1,281 @@
+package mx.unam.fciencias.myp.chat.models;
+
+import java.util.ArrayList;
+import java.util.function.Consumer;
+import java.util.function.ObjLongConsumer;
+
+/**
+ * <p>A room's shared, append-only history of accepted notifications.</p>
+ * <p>Every notification is stored once, under a sequence number, in a list of fixed-size segments. When the history
+ * exceeds its capacity, expressed as an amount of entries and as an estimate of their size in bytes (renderings cached
+ * by the notifications included), whole segments are evicted starting with the oldest one. Users only keep the range
+ * of sequence numbers they witnessed and render their own view of it lazily.</p>
+ * <p>Appends are serialized; reads only synchronize to look up a segment and never copy entries.</p>
+ *
+ * @author Luis Daniel Aragon Bermudez 416041271
+ */
+public class RoomHistory {
+    /**
+     * Amount of entries per segment.
+     */
+    private static final int SEGMENT_SIZE = 256;
+    /**
+     * Estimated amount of bytes taken by an entry besides its message and its renderings.
+     */
+    private static final int ENTRY_OVERHEAD = 64;
+    /**
+     * Maximum amount of entries to retain.
+     */
+    private final long maxEntries;
+    /**
+     * Maximum estimated amount of bytes to retain.
+     */
+    private final long maxBytes;
+    /**
+     * Retained segments, oldest first. Guarded by the history's monitor.
+     */
+    private final ArrayList<Segment> segments = new ArrayList<>();
+    /**
+     * Sequence number of the oldest retained entry. Guarded by the history's monitor.
+     */
+    private long first;
+    /**
+     * Sequence number the next entry will get. Guarded by the history's monitor.
+     */
+    private long next;
+    /**
+     * Estimated amount of bytes retained. Guarded by the history's monitor.
+     */
+    private long bytes;
+
+    /**
+     * Builds an empty history. Capacity is enforced in whole segments, so up to one segment's worth of entries may be
+     * kept over or under the specified limits.
+     *
+     * @param maxEntries the maximum amount of entries to retain.
+     * @param maxBytes   the maximum estimated amount of bytes to retain.
+     */
+    public RoomHistory(long maxEntries, long maxBytes) {
+        if (maxEntries < 1 || maxBytes < 1)
+            throw new IllegalArgumentException("History capacity must be positive.");
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Builds an empty history bounded by an amount of entries.
+     *
+     * @param maxEntries the maximum amount of entries to retain.
+     * @return the history.
+     */
+    public static RoomHistory ofEntries(long maxEntries) {
+        return new RoomHistory(maxEntries, Long.MAX_VALUE);
+    }
+
+    /**
+     * Builds an empty history bounded by an estimate of its size in bytes.
+     *
+     * @param maxBytes the maximum estimated amount of bytes to retain.
+     * @return the history.
+     */
+    public static RoomHistory ofBytes(long maxBytes) {
+        return new RoomHistory(Long.MAX_VALUE, maxBytes);
+    }
+
+    /**
+     * Appends a notification, evicting the oldest segments if the history's over capacity.
+     *
+     * @param notification the notification.
+     * @return the notification's sequence number.
+     */
+    public synchronized long append(ChatNotification notification) {
+        Segment tail = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+        if (tail == null || next - tail.base == SEGMENT_SIZE) {
+            tail = new Segment(next);
+            segments.add(tail);
+        }
+        long size = estimateSize(notification);
+        tail.entries[(int) (next - tail.base)] = notification;
+        tail.bytes += size;
+        bytes += size;
+        if (notification.chargeTo(this)) {
+            recharge(notification);
+        }
+        long sequence = next++;
+        while (segments.size() > 1 && (next - first > maxEntries || bytes > maxBytes)) {
+            Segment evicted = segments.remove(0);
+            bytes -= evicted.bytes;
+            for (ChatNotification entry : evicted.entries) {
+                if (entry != null && entry.history == this) {
+                    bytes -= entry.charged;
+                    entry.history = null;
+                }
+            }
+            first = evicted.base + SEGMENT_SIZE;
+        }
+        return sequence;
+    }
+
+    /**
+     * Brings the estimated size of a retained notification's renderings up to date. Renderings are added as the
+     * notification's delivered and as its recipients read their histories, so they're charged to the history as they
+     * appear; going over capacity this way evicts segments on the next append.
+     *
+     * @param notification a notification that added a rendering.
+     */
+    synchronized void recharge(ChatNotification notification) {
+        if (notification.history == this) {
+            long rendered = notification.getRenderedBytes();
+            bytes += rendered - notification.charged;
+            notification.charged = rendered;
+        }
+    }
+
+    /**
+     * Makes an empty history number its entries starting at a sequence number, e.g. to resume a room's numbering
+     * after a restart.
+     *
+     * @param sequence the sequence number of the next entry.
+     * @throws IllegalStateException if the history isn't empty.
+     */
+    public synchronized void startAt(long sequence) {
+        if (!segments.isEmpty())
+            throw new IllegalStateException("Only empty histories can be renumbered.");
+        this.first = sequence;
+        this.next = sequence;
+    }
+
+    /**
+     * Reads a range of entries, oldest first. Entries that have been evicted are skipped.
+     *
+     * @param from   sequence number of the first entry to read.
+     * @param to     sequence number after the last entry to read.
+     * @param limit  the maximum amount of entries to read.
+     * @param action action performed on every entry read.
+     * @return the sequence number after the last entry read, which can be used to resume reading.
+     */
+    public long read(long from, long to, int limit, Consumer<ChatNotification> action) {
+        return readSequenced(from, to, limit, (notification, sequence) -> action.accept(notification));
+    }
+
+    /**
+     * Reads a range of entries along with their sequence numbers, oldest first. Entries that have been evicted are
+     * skipped.
+     *
+     * @param from   sequence number of the first entry to read.
+     * @param to     sequence number after the last entry to read.
+     * @param limit  the maximum amount of entries to read.
+     * @param action action performed on every entry read and its sequence number.
+     * @return the sequence number after the last entry read, which can be used to resume reading.
+     */
+    public long readSequenced(long from, long to, int limit, ObjLongConsumer<ChatNotification> action) {
+        long sequence = from;
+        int read = 0;
+        while (sequence < to && read < limit) {
+            Segment segment;
+            long end;
+            synchronized (this) {
+                sequence = Math.max(sequence, first);
+                if (sequence >= next || sequence >= to) {
+                    break;
+                }
+                segment = segments.get((int) ((sequence - segments.get(0).base) / SEGMENT_SIZE));
+                end = Math.min(Math.min(next, to), segment.base + SEGMENT_SIZE);
+            }
+            for (; sequence < end && read < limit; sequence++, read++) {
+                action.accept(segment.entries[(int) (sequence - segment.base)], sequence);
+            }
+        }
+        return sequence;
+    }
+
+    /**
+     * Opens a cursor that reads the history from a sequence number on, e.g. one saved by an earlier cursor.
+     *
+     * @param from sequence number of the first entry to read.
+     * @return the cursor.
+     */
+    public HistoryCursor cursor(long from) {
+        return new HistoryCursor(this, from);
+    }
+
+    /**
+     * Counts the retained entries within a range.
+     *
+     * @param from sequence number of the first entry.
+     * @param to   sequence number after the last entry.
+     * @return the amount of retained entries in the range.
+     */
+    public synchronized long count(long from, long to) {
+        return Math.max(0, Math.min(to, next) - Math.max(from, first));
+    }
+
+    /**
+     * Retrieves the sequence number of the oldest retained entry.
+     *
+     * @return the oldest retained sequence number.
+     */
+    public synchronized long getFirstSequence() {
+        return first;
+    }
+
+    /**
+     * Retrieves the sequence number the next entry will get.
+     *
+     * @return the next sequence number.
+     */
+    public synchronized long getNextSequence() {
+        return next;
+    }
+
+    /**
+     * Retrieves the amount of retained entries.
+     *
+     * @return the amount of retained entries.
+     */
+    public synchronized long size() {
+        return next - first;
+    }
+
+    /**
+     * Retrieves the estimated amount of bytes retained.
+     *
+     * @return the estimated size of the retained entries.
+     */
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * Estimates the amount of bytes taken by an entry.
+     *
+     * @param notification the entry.
+     * @return the entry's estimated size.
+     */
+    private static long estimateSize(ChatNotification notification) {
+        String message = notification.getMessage();
+        return ENTRY_OVERHEAD + (message == null ? 0 : 2L * message.length());
+    }
+
+    /**
+     * A fixed-size block of consecutive entries.
+     */
+    private static final class Segment {
+        /**
+         * Sequence number of the segment's first entry.
+         */
+        final long base;
+        /**
+         * The segment's entries.
+         */
+        final ChatNotification[] entries = new ChatNotification[SEGMENT_SIZE];
+        /**
+         * Estimated amount of bytes taken by the segment's entries, besides their renderings.
+         */
+        long bytes;
+
+        Segment(long base) {
+            this.base = base;
+        }
+    }
+}
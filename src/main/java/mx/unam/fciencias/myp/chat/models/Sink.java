@@ -0,0 +1,72 @@
+package mx.unam.fciencias.myp.chat.models;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * <p>Where a user's lines end up, as UTF-8 bytes. Lines are encoded once per notification and point of view, see
+ * {@link ChatNotification#encode(LocaleTemplates, boolean)}, and the same bytes are written to every recipient's sink,
+ * so showing a line to a user costs a single write.</p>
+ * <p>The buffers a sink is given are shared by every recipient of the line: they must be treated as immutable, and read
+ * from {@code position()} to {@code limit()} without moving either, e.g. through their backing array or a
+ * {@code duplicate()}.</p>
+ *
+ * @author Luis Daniel Aragon Bermudez 416041271
+ */
+@FunctionalInterface
+public interface Sink {
+
+    /**
+     * Writes a line, line separator included.
+     *
+     * @param line the line's bytes, which must be left as they are.
+     */
+    void write(ByteBuffer line);
+
+    /**
+     * Builds a sink that writes lines to a stream, e.g. a socket's stream. Each line is a single write of UTF-8 bytes,
+     * so wrapping a {@link java.io.PrintStream} whose charset isn't UTF-8 mixes encodings: users with such a screen
+     * should be built with the screen itself. Streams that aren't flushed automatically are left for their owner to
+     * flush.
+     *
+     * @param out the stream.
+     * @return the sink.
+     */
+    static Sink of(OutputStream out) {
+        if (out == null)
+            throw new IllegalArgumentException("Stream can't be null.");
+        return line -> {
+            try {
+                out.write(line.array(), line.arrayOffset() + line.position(), line.remaining());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        };
+    }
+
+    /**
+     * Builds a sink that writes lines to a channel. Each line is written in full before the next one, so blocking
+     * channels should be used.
+     *
+     * @param channel the channel.
+     * @return the sink.
+     */
+    static Sink of(WritableByteChannel channel) {
+        if (channel == null)
+            throw new IllegalArgumentException("Channel can't be null.");
+        return line -> {
+            // channels move the position, the line's shared.
+            ByteBuffer bytes = line.duplicate();
+            try {
+                while (bytes.hasRemaining()) {
+                    channel.write(bytes);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        };
+    }
+}
@@ -0,0 +1,27 @@
+package mx.unam.fciencias.myp.chat.services;
+
+/**
+ * Describes what a {@link RateLimiter} does with a message whose sender, or room, has run out of tokens: how long its
+ * sender may wait for the tokens before the message is rejected.
+ *
+ * @author Luis Daniel Aragon Bermudez 416041271
+ */
+public interface AdmissionPolicy {
+    /**
+     * The message is rejected and logged, as if its sender were offline.
+     */
+    AdmissionPolicy REJECT = maxDelay -> 0;
+    /**
+     * The sender waits until there's a token for the message, unless that takes longer than the limiter allows, in
+     * which case the message is rejected.
+     */
+    AdmissionPolicy DELAY = maxDelay -> maxDelay;
+
+    /**
+     * Computes how long a sender may wait for the tokens of a message over the limits.
+     *
+     * @param maxDelay longest time the limiter allows senders to wait, in nanoseconds.
+     * @return how long the sender may wait, in nanoseconds, zero if the message is rejected right away.
+     */
+    long maxWait(long maxDelay);
+}
@@ -0,0 +1,204 @@
+package mx.unam.fciencias.myp.chat.services;
+
+import mx.unam.fciencias.myp.chat.models.AbstractChatUser;
+import mx.unam.fciencias.myp.chat.models.ChatNotification;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+
+/**
+ * <p>Non-blocking dispatcher. Dispatching a notification only enqueues it in each recipient's mailbox; mailboxes are
+ * then drained in parallel by tasks submitted to the configured {@link Executor}.</p>
+ * <p>Every recipient has at most one drain task running at any given time, so notifications are always delivered to
+ * a single user in the order they were dispatched, while a slow user never delays anyone else.</p>
+ *
+ * @author Luis Daniel Aragon Bermudez 416041271
+ */
+public class AsyncDispatcher implements Dispatcher {
+    /**
+     * Executor that runs the mailbox drain tasks.
+     */
+    private final Executor executor;
+    /**
+     * Mailboxes of the users that have been dispatched to.
+     */
+    private final ConcurrentHashMap<AbstractChatUser, Mailbox> mailboxes = new ConcurrentHashMap<>();
+
+    /**
+     * Builds a dispatcher that drains mailboxes using the specified executor. Any executor can be used, including a
+     * virtual-thread-per-task executor on runtimes that support them.
+     *
+     * @param executor executor that will run the drain tasks.
+     */
+    public AsyncDispatcher(Executor executor) {
+        if (executor == null)
+            throw new IllegalArgumentException("Executor can't be null.");
+        this.executor = executor;
+    }
+
+    /**
+     * Builds a dispatcher that starts a dedicated daemon thread every time a subscriber's mailbox needs draining, so
+     * that no subscriber ever waits for a pool thread.
+     *
+     * @return a thread-per-subscriber dispatcher.
+     */
+    public static AsyncDispatcher threadPerSubscriber() {
+        return new AsyncDispatcher(task -> {
+            Thread thread = new Thread(task, "chat-delivery");
+            thread.setDaemon(true);
+            thread.start();
+        });
+    }
+
+    @Override
+    public void dispatch(ChatNotification notification, Collection<AbstractChatUser> recipients) {
+        for (AbstractChatUser user : recipients) {
+            post(user, notification);
+        }
+    }
+
+    @Override
+    public void release(AbstractChatUser user) {
+        Mailbox mailbox = mailboxes.get(user);
+        if (mailbox != null) {
+            mailbox.retire();
+        }
+    }
+
+    /**
+     * Retrieves the amount of notifications that are still waiting to be delivered to a user.
+     *
+     * @param user a user.
+     * @return the amount of pending notifications.
+     */
+    public int getPending(AbstractChatUser user) {
+        Mailbox mailbox = mailboxes.get(user);
+        return mailbox == null ? 0 : mailbox.size();
+    }
+
+    /**
+     * Enqueues a notification in the user's mailbox, scheduling a drain task if none is running.
+     *
+     * @param user         the recipient.
+     * @param notification the notification.
+     */
+    private void post(AbstractChatUser user, ChatNotification notification) {
+        while (true) {
+            Mailbox mailbox = mailboxes.computeIfAbsent(user, Mailbox::new);
+            int outcome = mailbox.offer(notification);
+            if (outcome == Mailbox.SCHEDULE) {
+                executor.execute(mailbox);
+            }
+            if (outcome != Mailbox.CLOSED) {
+                return;
+            }
+            // The mailbox was closed after we looked it up, a fresh one will be created.
+        }
+    }
+
+    /**
+     * A user's pending notifications. All state is guarded by the mailbox's monitor.
+     */
+    private final class Mailbox implements Runnable {
+        /**
+         * The notification was enqueued and a drain task is already running.
+         */
+        static final int QUEUED = 0;
+        /**
+         * The notification was enqueued and the caller must schedule a drain task.
+         */
+        static final int SCHEDULE = 1;
+        /**
+         * The mailbox no longer accepts notifications.
+         */
+        static final int CLOSED = 2;
+        /**
+         * The mailbox's owner.
+         */
+        private final AbstractChatUser user;
+        /**
+         * Pending notifications.
+         */
+        private final ArrayDeque<ChatNotification> queue = new ArrayDeque<>();
+        /**
+         * Whether a drain task is running or about to run.
+         */
+        private boolean scheduled;
+        /**
+         * Whether the mailbox should be closed once it's been drained.
+         */
+        private boolean retiring;
+        /**
+         * Whether the mailbox has been removed from the dispatcher.
+         */
+        private boolean closed;
+
+        Mailbox(AbstractChatUser user) {
+            this.user = user;
+        }
+
+        synchronized int offer(ChatNotification notification) {
+            if (closed) {
+                return CLOSED;
+            }
+            queue.add(notification);
+            retiring = false;
+            if (scheduled) {
+                return QUEUED;
+            }
+            scheduled = true;
+            return SCHEDULE;
+        }
+
+        synchronized int size() {
+            return queue.size();
+        }
+
+        synchronized void retire() {
+            retiring = true;
+            if (!scheduled) {
+                close();
+            }
+        }
+
+        /**
+         * Closes the mailbox and removes it from the dispatcher. Must be called while holding the monitor.
+         */
+        private void close() {
+            closed = true;
+            mailboxes.remove(user, this);
+        }
+
+        /**
+         * Polls the next notification, or marks the mailbox as idle if there's none left.
+         *
+         * @return the next notification or null if the mailbox is empty.
+         */
+        private synchronized ChatNotification next() {
+            ChatNotification notification = queue.poll();
+            if (notification == null) {
+                scheduled = false;
+                if (retiring) {
+                    close();
+                }
+            }
+            return notification;
+        }
+
+        @Override
+        public void run() {
+            ChatNotification notification;
+            while ((notification = next()) != null) {
+                try {
+                    user.update(notification);
+                } catch (RuntimeException e) {
+                    // A faulty user shouldn't stop its own mailbox from draining.
+                    Thread thread = Thread.currentThread();
+                    thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+                }
+            }
+        }
+    }
+}
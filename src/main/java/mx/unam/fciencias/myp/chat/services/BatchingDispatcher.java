@@ -0,0 +1,135 @@
+package mx.unam.fciencias.myp.chat.services;
+
+import mx.unam.fciencias.myp.chat.models.AbstractChatUser;
+import mx.unam.fciencias.myp.chat.models.ChatNotification;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Dispatcher that coalesces bursts of notifications. Dispatched notifications are collected until either the batch
+ * window elapses or the batch reaches its maximum size, and then every recipient gets all of its notifications in a
+ * single {@link AbstractChatUser#update(List)} call, which means a single write to its screen.</p>
+ * <p>Batches are delivered on the scheduler's threads, one batch at a time, so per-recipient ordering is preserved. A
+ * notification waits at most one window before its batch starts being delivered.</p>
+ *
+ * @author Luis Daniel Aragon Bermudez 416041271
+ */
+public class BatchingDispatcher implements Dispatcher {
+    /**
+     * Executor that runs the flushes.
+     */
+    private final ScheduledExecutorService scheduler;
+    /**
+     * Maximum time a notification waits for its batch to be flushed, in nanoseconds.
+     */
+    private final long window;
+    /**
+     * Amount of notifications that triggers a flush before the window elapses.
+     */
+    private final int maxBatchSize;
+    /**
+     * Serializes flushes so that batches are delivered in order.
+     */
+    private final Object flushLock = new Object();
+    /**
+     * Notifications waiting to be flushed. Guarded by the dispatcher's monitor.
+     */
+    private List<Pending> pending = new ArrayList<>();
+    /**
+     * Whether a flush has been scheduled for the pending notifications. Guarded by the dispatcher's monitor.
+     */
+    private boolean scheduled;
+
+    /**
+     * Builds a batching dispatcher.
+     *
+     * @param scheduler    executor that runs the flushes.
+     * @param window       maximum time a notification waits for its batch to be flushed.
+     * @param unit         the window's unit.
+     * @param maxBatchSize amount of notifications that triggers a flush before the window elapses.
+     */
+    public BatchingDispatcher(ScheduledExecutorService scheduler, long window, TimeUnit unit, int maxBatchSize) {
+        if (window < 0 || maxBatchSize < 1)
+            throw new IllegalArgumentException("Invalid batch window or size.");
+        this.scheduler = scheduler;
+        this.window = unit.toNanos(window);
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    @Override
+    public void dispatch(ChatNotification notification, Collection<AbstractChatUser> recipients) {
+        boolean flushNow = false;
+        boolean flushLater = false;
+        synchronized (this) {
+            pending.add(new Pending(notification, recipients));
+            if (pending.size() >= maxBatchSize) {
+                flushNow = true;
+            } else if (!scheduled) {
+                scheduled = true;
+                flushLater = true;
+            }
+        }
+        if (flushNow) {
+            scheduler.execute(this::flush);
+        } else if (flushLater) {
+            scheduler.schedule(this::flush, window, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Delivers the pending notifications, grouped by recipient.
+     */
+    private void flush() {
+        synchronized (flushLock) {
+            List<Pending> batch;
+            synchronized (this) {
+                if (pending.isEmpty()) {
+                    return;
+                }
+                batch = pending;
+                pending = new ArrayList<>(Math.min(batch.size(), maxBatchSize));
+                scheduled = false;
+            }
+            Map<AbstractChatUser, List<ChatNotification>> byRecipient = new IdentityHashMap<>();
+            for (Pending entry : batch) {
+                for (AbstractChatUser user : entry.recipients) {
+                    byRecipient.computeIfAbsent(user, key -> new ArrayList<>()).add(entry.notification);
+                }
+            }
+            for (Map.Entry<AbstractChatUser, List<ChatNotification>> entry : byRecipient.entrySet()) {
+                try {
+                    entry.getKey().update(entry.getValue());
+                } catch (RuntimeException e) {
+                    // A faulty user shouldn't keep everyone else from getting the batch.
+                    Thread thread = Thread.currentThread();
+                    thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * A notification waiting to be flushed along with its recipients.
+     */
+    private static final class Pending {
+        /**
+         * The notification.
+         */
+        final ChatNotification notification;
+        /**
+         * The notification's recipients.
+         */
+        final Collection<AbstractChatUser> recipients;
+
+        Pending(ChatNotification notification, Collection<AbstractChatUser> recipients) {
+            this.notification = notification;
+            this.recipients = recipients;
+        }
+    }
+}
@@ -0,0 +1,1070 @@
+package mx.unam.fciencias.myp.chat.services;
+
+import mx.unam.fciencias.myp.chat.models.AbstractChatUser;
+import mx.unam.fciencias.myp.chat.models.Chat;
+import mx.unam.fciencias.myp.chat.models.ChatNotification;
+import mx.unam.fciencias.myp.chat.models.LineBuffer;
+import mx.unam.fciencias.myp.chat.models.RoomHistory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+/**
+ * <p>A chat room. Rooms are independent from each other: each one has its own users, logs and dispatcher.</p>
+ * <p>The room is thread-safe. Every operation that concerns a user (joining, leaving and broadcasting on its behalf)
+ * holds one of several lock stripes chosen by that user, so a user's operations take effect in a single total order
+ * while operations on behalf of different users run in parallel. Only picking a notification's recipients and giving it
+ * a sequence number, along with any membership change it announces, is done one notification at a time.</p>
+ * <p>Notifications from different users have no defined relative order unless the room's sequenced, see
+ * {@link #enableSequencing(int, WaitStrategy)}.</p>
+ *
+ * @author Luis Daniel Aragon Bermudez 416041271
+ */
+public class ChatRoom implements Chat, AutoCloseable {
+    /**
+     * Amount of notifications a room retains unless told otherwise.
+     */
+    public static final long DEFAULT_HISTORY_ENTRIES = 10_000;
+    /**
+     * Scratch space used by {@link #broadcast(AbstractChatUser, CharSequence)}, one per broadcasting thread.
+     */
+    private static final ThreadLocal<LineBuffer> LINE_BUFFERS = ThreadLocal.withInitial(LineBuffer::new);
+    /**
+     * The room's name.
+     */
+    private final String name;
+    /**
+     * Room users.
+     */
+    private final Membership users = new Membership(50);
+    /**
+     * Users subscribed to each type of notification, indexed by type. Users are subscribed to every type when they
+     * join, see {@link #mute(AbstractChatUser, int)}.
+     */
+    private final Membership[] subscribers = {new Membership(50), new Membership(50), new Membership(50)};
+    /**
+     * Online users by username, used to route mentions.
+     */
+    private final ConcurrentHashMap<String, AbstractChatUser> usernames = new ConcurrentHashMap<>();
+    /**
+     * Amount of incidents the room keeps, a power of two.
+     */
+    private static final int INCIDENTS = 1024;
+    /**
+     * The room's latest incidents, such as rejected messages, in a ring indexed by their number.
+     */
+    private final AtomicReferenceArray<String> incidents = new AtomicReferenceArray<>(INCIDENTS);
+    /**
+     * Amount of incidents ever reported.
+     */
+    private final AtomicLong incidentCount = new AtomicLong();
+    /**
+     * Every notification accepted by the room, shared by its users' chat histories.
+     */
+    private final RoomHistory history;
+    /**
+     * Durable log of the notifications accepted by the room, if any.
+     */
+    private volatile EventLog eventLog;
+    /**
+     * Strategy used to deliver accepted notifications to the room's users.
+     */
+    private volatile Dispatcher dispatcher;
+    /**
+     * Total order of the notifications accepted by the room, if it's sequenced.
+     */
+    private volatile Sequencer sequencer;
+    /**
+     * The node's replica of the room, if it spans a cluster.
+     */
+    private volatile RoomReplica replica;
+    /**
+     * Index over the messages in the room's history, if search is enabled.
+     */
+    private volatile SearchIndex search;
+    /**
+     * Subscriptions following the room's history as it grows.
+     */
+    private final CopyOnWriteArrayList<HistoryTail> tails = new CopyOnWriteArrayList<>();
+    /**
+     * Tracker that evicts idle users, if the room has one.
+     */
+    private volatile PresenceTracker presence;
+    /**
+     * Admission control of the room's messages, if the room limits their rate.
+     */
+    private volatile RateLimiter limiter;
+    /**
+     * The room's measurements.
+     */
+    private final RoomMetrics metrics = new RoomMetrics(this);
+    /**
+     * Lock stripes that serialize the operations concerning any single user. Its length is a power of two.
+     */
+    private final Object[] stripes = new Object[64];
+    /**
+     * Held while the room's membership changes and while a notification's recipients are picked and it's given a
+     * sequence number, so that a user's chat history spans exactly the notifications it's handed.
+     */
+    private final Object sequencing = new Object();
+    /**
+     * Whether the room has been closed.
+     */
+    private volatile boolean closed;
+
+    /**
+     * Builds an empty room whose notifications are delivered synchronously.
+     *
+     * @param name the room's name.
+     */
+    public ChatRoom(String name) {
+        this(name, new SynchronousDispatcher());
+    }
+
+    /**
+     * Builds an empty room that retains up to {@link #DEFAULT_HISTORY_ENTRIES} notifications.
+     *
+     * @param name       the room's name.
+     * @param dispatcher strategy used to deliver notifications to the room's users.
+     */
+    public ChatRoom(String name, Dispatcher dispatcher) {
+        this(name, dispatcher, RoomHistory.ofEntries(DEFAULT_HISTORY_ENTRIES));
+    }
+
+    /**
+     * Builds an empty room.
+     *
+     * @param name       the room's name.
+     * @param dispatcher strategy used to deliver notifications to the room's users.
+     * @param history    store for the notifications accepted by the room.
+     */
+    public ChatRoom(String name, Dispatcher dispatcher, RoomHistory history) {
+        if (name == null || dispatcher == null || history == null)
+            throw new IllegalArgumentException("Name, dispatcher and history can't be null.");
+        this.name = name;
+        this.dispatcher = dispatcher;
+        this.history = history;
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new Object();
+        }
+    }
+
+    /**
+     * Retrieves the room's name.
+     *
+     * @return the room's name.
+     */
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public void register(AbstractChatUser user) {
+        awaitCapacity();
+        synchronized (stripeOf(user)) {
+            if (!isOnline(user)) {
+                long sequence = accept(new ChatNotification(
+                        user, String.format("%s joined", user.getUsername()),
+                        ChatNotification.NEW_USER
+                ), () -> {
+                    users.add(user);
+                    for (Membership subscribed : subscribers) {
+                        subscribed.add(user);
+                    }
+                    usernames.putIfAbsent(user.getUsername(), user);
+                });
+                PresenceTracker tracker = presence;
+                if (tracker != null) {
+                    tracker.track(user);
+                }
+                if (replica == null) {
+                    // replicated rooms open it once the join's been ordered.
+                    user.openHistory(history, sequence);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void unregister(AbstractChatUser user) {
+        awaitCapacity();
+        leave(user);
+    }
+
+    /**
+     * Takes a user out of the room and lets everyone know, including the user.
+     *
+     * @param user the user.
+     * @return true if the user was online, false otherwise.
+     */
+    private boolean leave(AbstractChatUser user) {
+        synchronized (stripeOf(user)) {
+            if (isOnline(user)) {
+                PresenceTracker tracker = presence;
+                if (tracker != null) {
+                    tracker.untrack(user);
+                }
+                RateLimiter limits = limiter;
+                if (limits != null) {
+                    limits.forget(user);
+                }
+                ChatNotification notification = new ChatNotification(
+                        user, String.format("%s left", user.getUsername()),
+                        ChatNotification.USER_LEFT);
+                // we update everyone else as usual.
+                long sequence = accept(notification, () -> {
+                    users.remove(user);
+                    for (Membership subscribed : subscribers) {
+                        subscribed.remove(user);
+                    }
+                    usernames.remove(user.getUsername(), user);
+                });
+                if (replica != null) {
+                    // the replica closes its history, updates and releases user once the departure's been ordered.
+                    return true;
+                }
+                user.closeHistory(history, sequence + 1);
+                if (sequencer != null) {
+                    // the fan-out stage has already been told to update and release user.
+                    return true;
+                }
+                // since user is no longer in the observer list, we have to update it manually.
+                Dispatcher current = dispatcher;
+                current.dispatch(notification, Collections.singletonList(user));
+                current.release(user);
+                return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Unregisters a user evicted for being idle, unless a check made under the user's lock stripe says otherwise, e.g.
+     * because the user left and joined again since it was found idle.
+     *
+     * @param user      the user.
+     * @param stillIdle whether the user should still be evicted, checked while nobody else can register or unregister
+     *                  it.
+     * @return true if the user was unregistered, false otherwise.
+     * @see PresenceTracker
+     */
+    boolean evict(AbstractChatUser user, BooleanSupplier stillIdle) {
+        awaitCapacity();
+        synchronized (stripeOf(user)) {
+            return stillIdle.getAsBoolean() && leave(user);
+        }
+    }
+
+    @Override
+    public void updateUsers(ChatNotification notification) {
+        AbstractChatUser origin = notification.getOrigin();
+        if (notification.getType() == ChatNotification.NEW_MESSAGE && isOnline(origin) && !admit(origin)) {
+            return;
+        }
+        awaitCapacity();
+        accept(notification, null);
+    }
+
+    /**
+     * <p>Delivers a message to every online user without building a notification, the room's allocation-free delivery
+     * mode. Each distinct line is rendered once into a reusable per-thread buffer and written as is to every recipient
+     * that shares its templates and point of view, so once warmed up a broadcast to users with a sink allocates
+     * nothing. Users that print to a screen instead still get a string per line, see
+     * {@link AbstractChatUser#deliver(int, AbstractChatUser, CharSequence, LineBuffer)}.</p>
+     * <p>Such messages are ephemeral: they bypass the room's dispatcher and are delivered on the calling thread, and
+     * they're neither logged, kept in the history nor persisted. Rejected broadcasts are still reported.</p>
+     *
+     * @param origin  the sender.
+     * @param message the message, which may be a reused builder since it isn't retained.
+     * @return true if the message was delivered, false if the sender isn't online.
+     * @throws IllegalStateException if the room's sequenced or replicated, since ephemeral messages would bypass its
+     *                               total order, or if it's been closed.
+     */
+    public boolean broadcast(AbstractChatUser origin, CharSequence message) {
+        if (closed)
+            throw new IllegalStateException("The room is closed.");
+        if (sequencer != null || replica != null)
+            throw new IllegalStateException("Sequenced and replicated rooms can't broadcast ephemeral messages.");
+        if (isOnline(origin) && !admit(origin)) {
+            return false;
+        }
+        synchronized (stripeOf(origin)) {
+            if (!isOnline(origin)) {
+                report("Unregistered user " + origin.getUsername() + " tried to broadcast a message.");
+                metrics.rejected();
+                return false;
+            }
+            LineBuffer buffer = LINE_BUFFERS.get();
+            buffer.clear();
+            List<AbstractChatUser> recipients = subscribers[ChatNotification.NEW_MESSAGE].snapshot();
+            long start = System.nanoTime();
+            for (int i = 0; i < recipients.size(); i++) {
+                recipients.get(i).deliver(ChatNotification.NEW_MESSAGE, origin, message, buffer);
+            }
+            metrics.accepted(start, System.nanoTime(), recipients.size());
+            return true;
+        }
+    }
+
+    /**
+     * Lets a message from an online user through the room's rate limits, if it has any. Delayed senders wait here,
+     * before taking any lock, so they only hold themselves up.
+     *
+     * @param origin the message's sender.
+     * @return true if the message may be accepted, false if it was rejected and logged.
+     */
+    private boolean admit(AbstractChatUser origin) {
+        RateLimiter limits = limiter;
+        if (limits == null) {
+            return true;
+        }
+        long wait = limits.admit(origin);
+        if (wait < 0) {
+            report("User " + origin.getUsername() + " exceeded the rate limit.");
+            metrics.rejected();
+            return false;
+        }
+        long deadline = System.nanoTime() + wait;
+        while (wait > 0 && !Thread.currentThread().isInterrupted()) {
+            LockSupport.parkNanos(wait);
+            wait = deadline - System.nanoTime();
+        }
+        return true;
+    }
+
+    /**
+     * Waits for room in the sequencer's ring, if the room's sequenced, so that callers only take a lock stripe once
+     * publishing won't wait for the sequencer's stages.
+     *
+     * @throws IllegalStateException if the room's been closed.
+     */
+    private void awaitCapacity() {
+        if (closed)
+            throw new IllegalStateException("The room is closed.");
+        Sequencer ordering = sequencer;
+        if (ordering != null) {
+            ordering.awaitCapacity();
+        }
+    }
+
+    /**
+     * Logs a notification, appends it to the room's history and passes it to its recipients.
+     *
+     * @param notification the notification.
+     * @param membership   change to the room's membership the notification announces, made along with giving it a
+     *                     sequence number, or null if it announces none.
+     * @return the notification's sequence number in the room's history, or -1 if it was rejected.
+     */
+    private long accept(ChatNotification notification, Runnable membership) {
+        AbstractChatUser origin = notification.getOrigin();
+        synchronized (stripeOf(origin)) {
+            if (notification.getType() == ChatNotification.NEW_MESSAGE && !isOnline(origin)) {
+                report("Unregistered user "
+                        + origin.getUsername()
+                        + " tried to broadcast a message.");
+                metrics.rejected();
+                return -1;
+            }
+            long start = System.nanoTime();
+            PresenceTracker tracker = presence;
+            if (tracker != null && notification.getType() == ChatNotification.NEW_MESSAGE) {
+                tracker.heartbeat(origin);
+            }
+            RoomReplica replicated = replica;
+            if (replicated != null) {
+                if (membership != null) {
+                    membership.run();
+                }
+                // the replica applies it once it's been ordered, see applyReplicated.
+                replicated.submit(notification);
+                return -1;
+            }
+            List<AbstractChatUser> recipients;
+            long sequence;
+            Sequencer ordering = sequencer;
+            synchronized (sequencing) {
+                AbstractChatUser recipient = notification.getRecipient();
+                if (recipient != null && !isOnline(recipient)) {
+                    report("User " + origin.getUsername()
+                            + " tried to message offline user " + recipient.getUsername() + ".");
+                    metrics.rejected();
+                    return -1;
+                }
+                if (membership != null) {
+                    membership.run();
+                }
+                recipients = recipientsOf(notification);
+                if (ordering != null) {
+                    if (notification.getType() == ChatNotification.USER_LEFT) {
+                        // the leaving user is no longer in the observer list but still has to be updated.
+                        List<AbstractChatUser> withLeaving = new ArrayList<>(recipients.size() + 1);
+                        withLeaving.addAll(recipients);
+                        withLeaving.add(origin);
+                        recipients = withLeaving;
+                    }
+                    sequence = ordering.publish(notification, recipients);
+                } else {
+                    metrics.logged();
+                    sequence = history.append(notification);
+                    persist(sequence, notification);
+                    appended(sequence, notification);
+                }
+            }
+            if (ordering == null) {
+                dispatcher.dispatch(notification, recipients);
+            }
+            metrics.accepted(start, System.nanoTime(), recipients.size());
+            return sequence;
+        }
+    }
+
+    /**
+     * Hands a notification to the room's event log, if it has one. The notification's already been accepted, so a log
+     * that can't take it is only reported as an incident: delivering it, and releasing a leaving user, still
+     * happen.
+     *
+     * @param sequence     the notification's sequence number in the room's history.
+     * @param notification the notification.
+     */
+    private void persist(long sequence, ChatNotification notification) {
+        EventLog log = eventLog;
+        if (log != null && !log.offer(sequence, notification)) {
+            report("Notification " + sequence + " couldn't be persisted.");
+        }
+    }
+
+    /**
+     * Routes a notification. Direct messages only reach their recipient and their origin, any other notification
+     * reaches the users subscribed to its type plus, for messages, the online users mentioned in it as
+     * {@code @username}.
+     *
+     * @param notification the notification.
+     * @return the notification's recipients.
+     */
+    private List<AbstractChatUser> recipientsOf(ChatNotification notification) {
+        AbstractChatUser origin = notification.getOrigin();
+        AbstractChatUser recipient = notification.getRecipient();
+        if (recipient != null) {
+            return recipient == origin
+                    ? Collections.singletonList(origin)
+                    : Arrays.asList(recipient, origin);
+        }
+        // only the original kinds can be muted, any other kind reaches everyone.
+        Membership subscribed = notification.getType() < subscribers.length
+                ? subscribers[notification.getType()]
+                : users;
+        List<AbstractChatUser> recipients = subscribed.snapshot();
+        String message = notification.getMessage();
+        if (notification.getType() != ChatNotification.NEW_MESSAGE || message == null) {
+            return recipients;
+        }
+        List<AbstractChatUser> mentioned = null;
+        for (int at = message.indexOf('@'); at >= 0; at = message.indexOf('@', at + 1)) {
+            int end = at + 1;
+            while (end < message.length() && !Character.isWhitespace(message.charAt(end))) {
+                end++;
+            }
+            // trailing punctuation isn't part of the username.
+            while (end > at + 1 && ".,:;!?".indexOf(message.charAt(end - 1)) >= 0) {
+                end--;
+            }
+            AbstractChatUser user = usernames.get(message.substring(at + 1, end));
+            if (user != null && !subscribed.contains(user) && isOnline(user)
+                    && (mentioned == null || !mentioned.subList(recipients.size(), mentioned.size()).contains(user))) {
+                if (mentioned == null) {
+                    mentioned = new ArrayList<>(recipients);
+                }
+                mentioned.add(user);
+            }
+        }
+        return mentioned == null ? recipients : mentioned;
+    }
+
+    /**
+     * Makes the room span a cluster through a node's replica. From now on the notifications the room accepts are only
+     * forwarded to the replica, which gives them back through {@link #applyReplicated(ChatNotification, boolean)} once
+     * they've been ordered.
+     *
+     * @param replica the node's replica of the room.
+     * @throws IllegalStateException if the room isn't empty, is sequenced or is already replicated.
+     * @see ClusterNode#replicate(ChatRoom)
+     */
+    synchronized void replicate(RoomReplica replica) {
+        if (this.replica != null || sequencer != null || history.getNextSequence() != 0)
+            throw new IllegalStateException("Only empty, unsequenced rooms can be replicated.");
+        this.replica = replica;
+    }
+
+    /**
+     * Applies a notification put in order by the room's owner: logs it, appends it to the room's history, persists it
+     * and delivers it to the users connected to this node. Users connected to other nodes join and leave the room
+     * here, without a subscription, so that they can be messaged and mentioned.
+     *
+     * @param notification the notification.
+     * @param evicted      whether the notification's a departure made up by the room's owner because the origin's
+     *                     node left the cluster.
+     */
+    void applyReplicated(ChatNotification notification, boolean evicted) {
+        long start = System.nanoTime();
+        AbstractChatUser origin = notification.getOrigin();
+        boolean remote = origin instanceof RoomReplica.RemoteUser;
+        if (remote && notification.getType() == ChatNotification.NEW_USER) {
+            users.add(origin);
+            usernames.putIfAbsent(origin.getUsername(), origin);
+        } else if ((remote || evicted) && notification.getType() == ChatNotification.USER_LEFT
+                && users.remove(origin)) {
+            for (Membership subscribed : subscribers) {
+                subscribed.remove(origin);
+            }
+            usernames.remove(origin.getUsername(), origin);
+            PresenceTracker tracker = presence;
+            if (tracker != null) {
+                tracker.untrack(origin);
+            }
+        }
+        List<AbstractChatUser> recipients = new ArrayList<>();
+        for (AbstractChatUser recipient : recipientsOf(notification)) {
+            if (!(recipient instanceof RoomReplica.RemoteUser)) {
+                recipients.add(recipient);
+            }
+        }
+        metrics.logged();
+        long sequence = history.append(notification);
+        persist(sequence, notification);
+        appended(sequence, notification);
+        Dispatcher current = dispatcher;
+        current.dispatch(notification, recipients);
+        if (!remote && notification.getType() == ChatNotification.NEW_USER) {
+            origin.openHistory(history, sequence);
+        } else if (!remote && notification.getType() == ChatNotification.USER_LEFT) {
+            origin.closeHistory(history, sequence + 1);
+            current.dispatch(notification, Collections.singletonList(origin));
+            current.release(origin);
+        }
+        metrics.accepted(start, System.nanoTime(), recipients.size());
+    }
+
+    /**
+     * Puts a user back in the room without notifying anyone, while the room's being restored.
+     *
+     * @param user        the user.
+     * @param historyFrom sequence number of the first notification the user witnessed since it joined.
+     * @param mutedTypes  bitmask of the original types of notification the user muted, see
+     *                    {@link #mutedTypes(AbstractChatUser)}.
+     * @see SnapshotStore
+     */
+    void restoreMember(AbstractChatUser user, long historyFrom, int mutedTypes) {
+        synchronized (stripeOf(user)) {
+            if (users.add(user)) {
+                for (int type = 0; type < subscribers.length; type++) {
+                    if ((mutedTypes & 1 << type) == 0) {
+                        subscribers[type].add(user);
+                    }
+                }
+                usernames.putIfAbsent(user.getUsername(), user);
+                PresenceTracker tracker = presence;
+                if (tracker != null) {
+                    tracker.track(user);
+                }
+                user.openHistory(history, historyFrom);
+            }
+        }
+    }
+
+    /**
+     * Takes a user out of the room without notifying anyone, while the room's being restored.
+     *
+     * @param user     the user.
+     * @param sequence sequence number of the notification that announced the user's departure.
+     * @see SnapshotStore
+     */
+    void restoreDeparture(AbstractChatUser user, long sequence) {
+        synchronized (stripeOf(user)) {
+            if (users.remove(user)) {
+                for (Membership subscribed : subscribers) {
+                    subscribed.remove(user);
+                }
+                usernames.remove(user.getUsername(), user);
+                PresenceTracker tracker = presence;
+                if (tracker != null) {
+                    tracker.untrack(user);
+                }
+                RateLimiter limits = limiter;
+                if (limits != null) {
+                    limits.forget(user);
+                }
+                user.closeHistory(history, sequence + 1);
+                dispatcher.release(user);
+            }
+        }
+    }
+
+    /**
+     * Logs a notification that was accepted before the room was restored and appends it to the room's history,
+     * without delivering nor persisting it again.
+     *
+     * @param notification the notification.
+     * @return the notification's sequence number in the room's history.
+     * @see SnapshotStore
+     */
+    long restore(ChatNotification notification) {
+        metrics.logged();
+        return history.append(notification);
+    }
+
+    /**
+     * Retrieves the room's users.
+     *
+     * @return a snapshot of the online users.
+     */
+    List<AbstractChatUser> members() {
+        return users.snapshot();
+    }
+
+    /**
+     * Retrieves the original types of notification a user muted.
+     *
+     * @param user the user.
+     * @return a bitmask with the bit {@code 1 << type} set for every muted type.
+     */
+    int mutedTypes(AbstractChatUser user) {
+        int muted = 0;
+        for (int type = 0; type < subscribers.length; type++) {
+            if (!subscribers[type].contains(user)) {
+                muted |= 1 << type;
+            }
+        }
+        return muted;
+    }
+
+    /**
+     * Stops delivering one of the original types of notification to a user, e.g. to hide join and leave noise.
+     * Mentions and direct messages still reach users that muted messages. Subscriptions are reset whenever the user
+     * joins.
+     *
+     * @param user the user.
+     * @param type the notification type to mute.
+     * @return true if the user was subscribed to that type, false if it wasn't or it's offline.
+     */
+    public boolean mute(AbstractChatUser user, int type) {
+        if (type < ChatNotification.NEW_MESSAGE || type > ChatNotification.USER_LEFT)
+            throw new IllegalArgumentException(String.format("Invalid flag: %d", type));
+        synchronized (stripeOf(user)) {
+            return subscribers[type].remove(user);
+        }
+    }
+
+    /**
+     * Delivers a type of notification to a user again.
+     *
+     * @param user the user.
+     * @param type the notification type to unmute.
+     * @return true if the user wasn't subscribed to that type, false if it was or it's offline.
+     */
+    public boolean unmute(AbstractChatUser user, int type) {
+        if (type < ChatNotification.NEW_MESSAGE || type > ChatNotification.USER_LEFT)
+            throw new IllegalArgumentException(String.format("Invalid flag: %d", type));
+        synchronized (stripeOf(user)) {
+            return isOnline(user) && subscribers[type].add(user);
+        }
+    }
+
+    /**
+     * <p>Makes the room put every notification it accepts in a single total order, through a {@link Sequencer}.</p>
+     * <p>Broadcasting then only publishes the notification; logging and persisting it, appending it to the history and
+     * delivering it through the room's dispatcher happen in that order on three stages, each one waiting for the one
+     * before, so the logs, the history and the users' screens may briefly lag behind but a delivered notification is
+     * always in the history and handed to the event log. Must be called before the room accepts any notification.</p>
+     *
+     * @param ringSize     amount of notifications that may be accepted but not yet processed, a power of two.
+     * @param waitStrategy how the stages wait for new notifications.
+     */
+    public synchronized void enableSequencing(int ringSize, WaitStrategy waitStrategy) {
+        if (closed)
+            throw new IllegalStateException("The room is closed.");
+        if (sequencer != null || replica != null || history.getNextSequence() != 0)
+            throw new IllegalStateException("Sequencing must be enabled before the room accepts notifications.");
+        Sequencer ordering = new Sequencer(ringSize);
+        Sequencer.Stage logged = ordering.addStage(name + "-log", (slot, sequence, endOfBatch) -> {
+            metrics.logged();
+            persist(sequence, slot.getNotification());
+        }, waitStrategy);
+        // the history stage is the only one appending, so history sequence numbers match the sequencer's.
+        Sequencer.Stage appended = ordering.addStage(name + "-history", (slot, sequence, endOfBatch) ->
+                appended(history.append(slot.getNotification()), slot.getNotification()), waitStrategy, logged);
+        ordering.addStage(name + "-fan-out", (slot, sequence, endOfBatch) -> {
+            ChatNotification notification = slot.getNotification();
+            Dispatcher current = dispatcher;
+            current.dispatch(notification, slot.getRecipients());
+            if (notification.getType() == ChatNotification.USER_LEFT) {
+                current.release(notification.getOrigin());
+            }
+        }, waitStrategy, appended);
+        ordering.start();
+        this.sequencer = ordering;
+    }
+
+    /**
+     * Retrieves the sequencer that orders the notifications accepted by the room.
+     *
+     * @return the room's sequencer, or null if the room isn't sequenced.
+     */
+    public Sequencer getSequencer() {
+        return sequencer;
+    }
+
+    /**
+     * <p>Makes the room evict users that stay idle for too long, as if they had left. Users are seen whenever they
+     * join, broadcast a message or send a {@link #heartbeat(AbstractChatUser)}.</p>
+     * <p>Presence queries such as who's online can then be served by the returned tracker.</p>
+     *
+     * @param timeout      time a user may stay idle before being evicted.
+     * @param tickDuration time between checks for idle users, which bounds how late an eviction may happen.
+     * @param unit         the times' unit.
+     * @param scheduler    the scheduler that checks for idle users.
+     * @return the room's presence tracker.
+     */
+    public synchronized PresenceTracker trackPresence(long timeout, long tickDuration, TimeUnit unit,
+                                                      ScheduledExecutorService scheduler) {
+        if (presence != null)
+            throw new IllegalStateException("Presence is already tracked.");
+        PresenceTracker tracker = new PresenceTracker(this, timeout, tickDuration, unit);
+        presence = tracker;
+        // users that registered before the tracker was visible are tracked here, tracking is idempotent.
+        for (AbstractChatUser user : users.snapshot()) {
+            tracker.track(user);
+        }
+        tracker.start(scheduler);
+        return tracker;
+    }
+
+    /**
+     * Limits the rate of the room's messages, with a rejecting policy.
+     *
+     * @param userRate  messages every user may send per second.
+     * @param userBurst messages every user may send at once.
+     * @param roomRate  messages the room accepts per second.
+     * @param roomBurst messages the room accepts at once.
+     * @return the room's rate limiter.
+     * @see #limitRate(double, int, double, int, AdmissionPolicy, long, TimeUnit)
+     */
+    public RateLimiter limitRate(double userRate, int userBurst, double roomRate, int roomBurst) {
+        return limitRate(userRate, userBurst, roomRate, roomBurst, AdmissionPolicy.REJECT, 0, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * <p>Limits the rate of the room's messages, both per user and for the whole room, so that a flooding user can't
+     * saturate the room for everyone else. Users and the room may send a burst of messages at once and then as many
+     * per second as their rates allow; direct messages and ephemeral broadcasts count too, joins and departures
+     * don't.</p>
+     * <p>Messages over the limits are rejected and logged like those of offline users or, with
+     * {@link AdmissionPolicy#DELAY}, held on their sender's thread until they're within the limits, unless that takes
+     * longer than {@code maxDelay}.</p>
+     *
+     * @param userRate  messages every user may send per second.
+     * @param userBurst messages every user may send at once.
+     * @param roomRate  messages the room accepts per second.
+     * @param roomBurst messages the room accepts at once.
+     * @param policy    what happens to messages over the limits.
+     * @param maxDelay  longest time a sender may be held, if the policy holds senders at all.
+     * @param unit      the delay's unit.
+     * @return the room's rate limiter, which counts rejected and delayed messages.
+     */
+    public synchronized RateLimiter limitRate(double userRate, int userBurst, double roomRate, int roomBurst,
+                                              AdmissionPolicy policy, long maxDelay, TimeUnit unit) {
+        if (limiter != null)
+            throw new IllegalStateException("The room's rate is already limited.");
+        RateLimiter limits = new RateLimiter(userRate, userBurst, roomRate, roomBurst, policy, maxDelay, unit);
+        limiter = limits;
+        return limits;
+    }
+
+    /**
+     * Retrieves the admission control of the room's messages.
+     *
+     * @return the room's rate limiter, or null if the room doesn't limit its messages' rate.
+     */
+    public RateLimiter getRateLimiter() {
+        return limiter;
+    }
+
+    /**
+     * Retrieves the tracker that evicts idle users.
+     *
+     * @return the room's presence tracker, or null if the room doesn't track presence.
+     */
+    public PresenceTracker getPresence() {
+        return presence;
+    }
+
+    /**
+     * Records that a user is still there, so it isn't evicted for being idle.
+     *
+     * @param user the user.
+     * @return true if the user's online and its presence is tracked, false otherwise.
+     */
+    public boolean heartbeat(AbstractChatUser user) {
+        PresenceTracker tracker = presence;
+        return tracker != null && tracker.heartbeat(user);
+    }
+
+    @Override
+    public boolean isOnline(AbstractChatUser user) {
+        return users.contains(user);
+    }
+
+    /**
+     * <p>Stops the threads the room started: its sequencer's stages, once they've processed every notification the
+     * room accepted, and its search index's indexer. Users are left as they are, so call
+     * {@link #unregisterAll()} first to let them know the room's gone.</p>
+     * <p>The room accepts nothing once it's closed. Its event log, dispatcher and presence tracker's scheduler belong to
+     * the caller, who closes them afterwards.</p>
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        Sequencer ordering = sequencer;
+        if (ordering != null) {
+            try {
+                ordering.halt();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        SearchIndex index = search;
+        if (index != null) {
+            index.close();
+        }
+    }
+
+    /**
+     * Unregisters every user, as if each one of them had left the room.
+     */
+    public void unregisterAll() {
+        for (AbstractChatUser user : users.snapshot()) {
+            unregister(user);
+        }
+    }
+
+    /**
+     * Retrieves the amount of online users.
+     *
+     * @return the amount of online users.
+     */
+    public int getOnlineCount() {
+        return users.size();
+    }
+
+    /**
+     * Retrieves the lock stripe that guards the operations concerning a user.
+     *
+     * @param user a user.
+     * @return the user's lock stripe.
+     */
+    private Object stripeOf(AbstractChatUser user) {
+        int hash = System.identityHashCode(user);
+        return stripes[(hash ^ (hash >>> 16)) & (stripes.length - 1)];
+    }
+
+    /**
+     * Retrieves the room's history.
+     *
+     * @return the room's history.
+     */
+    public RoomHistory getHistory() {
+        return history;
+    }
+
+    /**
+     * Retrieves the durable log of the notifications accepted by the room.
+     *
+     * @return the room's event log, or null if it has none.
+     */
+    public EventLog getEventLog() {
+        return eventLog;
+    }
+
+    /**
+     * Makes the room persist every notification it accepts from now on. Persisting happens off the broadcasting
+     * thread, see {@link EventLog}.
+     *
+     * @param eventLog the room's event log, or null to stop persisting notifications.
+     */
+    public void setEventLog(EventLog eventLog) {
+        this.eventLog = eventLog;
+    }
+
+    /**
+     * Makes the room's messages searchable. Messages already in the history are indexed too, in the background.
+     *
+     * @return the room's search index.
+     */
+    public synchronized SearchIndex enableSearch() {
+        if (closed)
+            throw new IllegalStateException("The room is closed.");
+        if (search == null) {
+            search = new SearchIndex(name, history);
+        }
+        return search;
+    }
+
+    /**
+     * Retrieves the room's search index.
+     *
+     * @return the room's search index, or null if search isn't enabled.
+     */
+    public SearchIndex getSearchIndex() {
+        return search;
+    }
+
+    /**
+     * <p>Follows the room's history from a sequence number on, e.g. to replay it from where an earlier subscription
+     * stopped and then keep up with it live. Pass {@code getHistory().getNextSequence()} to only follow new
+     * notifications.</p>
+     * <p>Notifications are read from the history and sent on an executor, only as many as the subscriber requests, so
+     * following the room costs the room nothing but a wake-up per notification while the subscriber's waiting.</p>
+     *
+     * @param from       sequence number of the first notification to send.
+     * @param subscriber the subscriber.
+     * @param executor   executor that sends the notifications.
+     * @return the subscription, which the subscriber also receives.
+     */
+    public HistorySubscriber.Subscription tail(long from, HistorySubscriber subscriber, Executor executor) {
+        if (subscriber == null || executor == null)
+            throw new IllegalArgumentException("Subscriber and executor can't be null.");
+        HistoryTail tail = new HistoryTail(this, history, from, subscriber, executor);
+        tails.add(tail);
+        subscriber.onSubscribe(tail);
+        return tail;
+    }
+
+    /**
+     * Stops waking a cancelled subscription up.
+     *
+     * @param tail the subscription.
+     */
+    void untail(HistoryTail tail) {
+        tails.remove(tail);
+    }
+
+    /**
+     * Hands a notification just appended to the room's history to the search index, if there's one, and wakes the
+     * subscriptions following the history up.
+     *
+     * @param sequence     the notification's sequence number in the history.
+     * @param notification the notification.
+     */
+    private void appended(long sequence, ChatNotification notification) {
+        SearchIndex index = search;
+        if (index != null) {
+            index.add(sequence, notification);
+        }
+        if (!tails.isEmpty()) {
+            for (HistoryTail tail : tails) {
+                tail.wakeUp();
+            }
+        }
+    }
+
+    /**
+     * Retrieves the room's measurements.
+     *
+     * @return the room's metrics.
+     */
+    public RoomMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Retrieves the room's logs: a line per notification still in the room's history, oldest first. Older
+     * notifications are only kept by the room's event log, if it has one.
+     *
+     * @return a copy of the room's logs.
+     * @see #readLogs(long, int, Consumer)
+     */
+    public ArrayList<String> getLogs() {
+        ArrayList<String> lines = new ArrayList<>();
+        readLogs(0, Integer.MAX_VALUE, lines::add);
+        return lines;
+    }
+
+    /**
+     * Reads a range of the room's logs, oldest first, without copying them. Reading resumes from a sequence number, so
+     * paging through the logs costs as much as reading them once.
+     *
+     * @param from   sequence number of the first notification to read; evicted ones are skipped.
+     * @param limit  the maximum amount of log entries to read.
+     * @param action action performed on every log entry read.
+     * @return the sequence number after the last entry read, which can be passed as {@code from} to read the next
+     * page.
+     */
+    public long readLogs(long from, int limit, Consumer<String> action) {
+        return history.read(from, Long.MAX_VALUE, limit, notification -> action.accept(notification.toString()));
+    }
+
+    /**
+     * Records an incident, such as a rejected message. Only the latest {@link #INCIDENTS} are kept.
+     *
+     * @param incident the incident's description.
+     */
+    private void report(String incident) {
+        incidents.set((int) (incidentCount.getAndIncrement() & (INCIDENTS - 1)), incident);
+        metrics.logged();
+    }
+
+    /**
+     * Retrieves the room's latest incidents, such as messages rejected because their sender was offline or over the
+     * rate limits, or notifications the event log couldn't take. Incidents reported while they're read may be missed.
+     *
+     * @return a copy of up to the latest 1024 incidents, oldest first.
+     */
+    public List<String> getIncidents() {
+        long end = incidentCount.get();
+        List<String> copy = new ArrayList<>();
+        for (long i = Math.max(0, end - INCIDENTS); i < end; i++) {
+            String incident = incidents.get((int) (i & (INCIDENTS - 1)));
+            if (incident != null) {
+                copy.add(incident);
+            }
+        }
+        return copy;
+    }
+
+    /**
+     * Retrieves the strategy used to deliver notifications to the room's users.
+     *
+     * @return the room's dispatcher.
+     */
+    public Dispatcher getDispatcher() {
+        return dispatcher;
+    }
+
+    /**
+     * Changes the strategy used to deliver notifications to the room's users. Use an {@link AsyncDispatcher} so that
+     * broadcasting returns as soon as the notification's been accepted.
+     *
+     * @param dispatcher the new dispatcher.
+     */
+    public void setDispatcher(Dispatcher dispatcher) {
+        if (dispatcher == null)
+            throw new IllegalArgumentException("Dispatcher can't be null.");
+        this.dispatcher = dispatcher;
+    }
+}
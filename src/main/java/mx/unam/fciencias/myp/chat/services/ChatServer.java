@@ -0,0 +1,142 @@
+package mx.unam.fciencias.myp.chat.services;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Hosts many independent {@link ChatRoom}s.</p>
+ * <p>Rooms are sharded across a fixed set of single-threaded workers: every room is bound to one shard, picked by its
+ * name, and all of its deliveries run on that shard's thread. Rooms on different shards never contend with each other,
+ * so the server scales with the amount of shards, which defaults to the amount of available cores.</p>
+ *
+ * @author Luis Daniel Aragon Bermudez 416041271
+ */
+public class ChatServer {
+    /**
+     * Hosted rooms, indexed by name.
+     */
+    private final ConcurrentHashMap<String, ChatRoom> rooms = new ConcurrentHashMap<>();
+    /**
+     * Shard workers.
+     */
+    private final ExecutorService[] shards;
+
+    /**
+     * Builds a server with one shard per available core.
+     */
+    public ChatServer() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Builds a server with the specified amount of shards.
+     *
+     * @param shardCount the amount of shards.
+     */
+    public ChatServer(int shardCount) {
+        if (shardCount < 1)
+            throw new IllegalArgumentException(String.format("Invalid shard count: %d", shardCount));
+        this.shards = new ExecutorService[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            String threadName = String.format("chat-shard-%d", i);
+            shards[i] = Executors.newSingleThreadExecutor(task -> {
+                Thread thread = new Thread(task, threadName);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /**
+     * Retrieves a room, creating it if it doesn't exist.
+     *
+     * @param name the room's name.
+     * @return the room.
+     */
+    public ChatRoom openRoom(String name) {
+        return rooms.computeIfAbsent(name, key -> new ChatRoom(key, new AsyncDispatcher(shardOf(key))));
+    }
+
+    /**
+     * Retrieves an existing room.
+     *
+     * @param name the room's name.
+     * @return the room, or null if there's no room with that name.
+     */
+    public ChatRoom getRoom(String name) {
+        return rooms.get(name);
+    }
+
+    /**
+     * Closes a room. Its users are unregistered, and thus notified, before it's closed and discarded, which stops any
+     * thread it started.
+     *
+     * @param name the room's name.
+     * @return true if the room existed.
+     */
+    public boolean closeRoom(String name) {
+        ChatRoom room = rooms.remove(name);
+        if (room == null) {
+            return false;
+        }
+        room.unregisterAll();
+        room.close();
+        return true;
+    }
+
+    /**
+     * Retrieves the hosted rooms.
+     *
+     * @return an unmodifiable view of the hosted rooms.
+     */
+    public Collection<ChatRoom> getRooms() {
+        return Collections.unmodifiableCollection(rooms.values());
+    }
+
+    /**
+     * Retrieves the amount of shards.
+     *
+     * @return the amount of shards.
+     */
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    /**
+     * Closes every room and stops the shard workers once they've delivered every pending notification.
+     *
+     * @param timeout the maximum time to wait for each shard.
+     * @param unit    the timeout's unit.
+     * @return true if every shard finished in time.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public boolean shutdown(long timeout, TimeUnit unit) throws InterruptedException {
+        List<String> names = new ArrayList<>(rooms.keySet());
+        names.forEach(this::closeRoom);
+        for (ExecutorService shard : shards) {
+            shard.shutdown();
+        }
+        boolean terminated = true;
+        for (ExecutorService shard : shards) {
+            terminated &= shard.awaitTermination(timeout, unit);
+        }
+        return terminated;
+    }
+
+    /**
+     * Picks the shard a room is bound to.
+     *
+     * @param name the room's name.
+     * @return the room's shard.
+     */
+    private ExecutorService shardOf(String name) {
+        int hash = name.hashCode();
+        return shards[Math.floorMod(hash ^ (hash >>> 16), shards.length)];
+    }
+}
@@ -0,0 +1,219 @@
+package mx.unam.fciencias.myp.chat.services;
+
+import mx.unam.fciencias.myp.chat.models.NotificationCodec;
+
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * <p>One of the nodes of a cluster that hosts rooms spanning several processes or machines. Every node hosts its own
+ * replica of each replicated room, with the room's users that are connected to that node, and nodes talk to each other
+ * through a pluggable {@link Transport}.</p>
+ * <p>Each room is owned by one of the cluster's nodes, picked by rendezvous hashing over the room's name so that rooms
+ * spread evenly and only the rooms of a node that leaves change hands. Every node forwards the notifications its users
+ * create to the room's owner, which puts them in a single order and sends them back to every node; every node then
+ * applies them in that order, delivering them to its own users only. Notifications are numbered per origin node, so the
+ * owner drops those it receives twice, e.g. when a node rejoins and sends again whatever hadn't been applied yet.</p>
+ * <p>When a node leaves, the rooms it owned change hands and the new owners carry on from the notifications they've
+ * applied, announcing the departure of every user connected to the node that left. When a node joins, or rejoins, it
+ * catches up on the notifications its rooms' owners still retain.</p>
+ * <p>Rooms must be replicated, and the node started, before any user joins them.</p>
+ *
+ * @author Luis Daniel Aragon Bermudez 416041271
+ */
+public class ClusterNode implements Transport.Receiver {
+    /**
+     * Frame that forwards a notification to a room's owner.
+     */
+    static final byte SUBMIT = 1;
+    /**
+     * Frame that carries a notification and its place in a room's order.
+     */
+    static final byte SEQUENCED = 2;
+    /**
+     * Frame that asks a room's owner for the notifications from a sequence number on.
+     */
+    static final byte SYNC = 3;
+    /**
+     * Frame that precedes the notifications sent in reply to a {@link #SYNC}, with the first one the owner retains.
+     */
+    static final byte SYNC_FROM = 4;
+    /**
+     * The node's id, unique within its cluster.
+     */
+    private final String id;
+    /**
+     * Carries frames to the other nodes.
+     */
+    private final Transport transport;
+    /**
+     * Registry that holds the locale packs of users connected to other nodes.
+     */
+    private final LocaleRegistry registry;
+    /**
+     * Amount of notifications every replica retains to help other nodes catch up.
+     */
+    private final int retained;
+    /**
+     * The node's replicas, indexed by room name.
+     */
+    private final ConcurrentHashMap<String, RoomReplica> replicas = new ConcurrentHashMap<>();
+    /**
+     * The cluster's nodes as last reported by the transport, empty until the node starts.
+     */
+    private volatile Set<String> nodes = Collections.emptySet();
+
+    /**
+     * Builds a node whose replicas retain up to {@link ChatRoom#DEFAULT_HISTORY_ENTRIES} notifications.
+     *
+     * @param id        the node's id, unique within its cluster.
+     * @param transport carries frames to the other nodes.
+     */
+    public ClusterNode(String id, Transport transport) {
+        this(id, transport, LocaleRegistry.getDefault(), (int) ChatRoom.DEFAULT_HISTORY_ENTRIES);
+    }
+
+    /**
+     * Builds a node.
+     *
+     * @param id        the node's id, unique within its cluster.
+     * @param transport carries frames to the other nodes.
+     * @param registry  registry that holds the locale packs of users connected to other nodes.
+     * @param retained  amount of notifications every replica retains to help other nodes catch up.
+     */
+    public ClusterNode(String id, Transport transport, LocaleRegistry registry, int retained) {
+        if (id == null || id.isEmpty() || transport == null || registry == null)
+            throw new IllegalArgumentException("Id, transport and registry can't be null nor empty.");
+        if (retained < 1)
+            throw new IllegalArgumentException(String.format("Invalid retained amount: %d", retained));
+        this.id = id;
+        this.transport = transport;
+        this.registry = registry;
+        this.retained = retained;
+    }
+
+    /**
+     * Makes a room span the cluster. Every node must replicate a room with the same name.
+     *
+     * @param room the room, which must be empty and not sequenced.
+     * @throws IllegalStateException if the room isn't empty, is sequenced or is already replicated.
+     */
+    public void replicate(ChatRoom room) {
+        RoomReplica replica = new RoomReplica(this, room, registry, retained);
+        if (replicas.putIfAbsent(room.getName(), replica) != null)
+            throw new IllegalStateException(String.format("Room %s is already replicated.", room.getName()));
+        room.replicate(replica);
+    }
+
+    /**
+     * Joins the node to the cluster.
+     */
+    public void start() {
+        transport.join(id, this);
+    }
+
+    /**
+     * Removes the node from the cluster. Its users stay in its replicas, but the other nodes announce their departure;
+     * once restarted, the node catches up and learns about it too.
+     */
+    public void stop() {
+        transport.leave(id);
+    }
+
+    /**
+     * Retrieves the node's id.
+     *
+     * @return the node's id.
+     */
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * Retrieves the cluster's nodes.
+     *
+     * @return the ids of the cluster's nodes as last reported to this node, empty until it starts. Once the node
+     * reports every node, all of its replicas know their rooms' owners.
+     */
+    public Set<String> getNodes() {
+        return nodes;
+    }
+
+    /**
+     * Picks the node that owns a room among the cluster's nodes.
+     *
+     * @param room the room's name.
+     * @return the owner's id, this node's until it starts.
+     */
+    public String ownerOf(String room) {
+        return ownerOf(room, nodes);
+    }
+
+    /**
+     * Picks the node that owns a room: the one whose id hashes highest together with the room's name.
+     *
+     * @param room  the room's name.
+     * @param among the ids of the cluster's nodes.
+     * @return the owner's id, this node's if there are no nodes.
+     */
+    String ownerOf(String room, Set<String> among) {
+        String owner = null;
+        int best = 0;
+        for (String node : among) {
+            int score = score(node, room);
+            if (owner == null || score > best || score == best && node.compareTo(owner) > 0) {
+                owner = node;
+                best = score;
+            }
+        }
+        return owner == null ? id : owner;
+    }
+
+    @Override
+    public void receive(String from, ByteBuffer frame) {
+        byte kind = frame.get();
+        RoomReplica replica = replicas.get(NotificationCodec.getString(frame));
+        if (replica != null) {
+            replica.receive(kind, from, frame);
+        }
+    }
+
+    @Override
+    public void nodesChanged(Set<String> nodes) {
+        for (RoomReplica replica : replicas.values()) {
+            replica.nodesChanged(nodes);
+        }
+        // published last, so that once it's seen every replica knows its owner.
+        this.nodes = nodes;
+    }
+
+    /**
+     * Sends a frame to another node.
+     *
+     * @param to    the recipient's id.
+     * @param frame the frame.
+     */
+    void send(String to, ByteBuffer frame) {
+        transport.send(id, to, frame);
+    }
+
+    /**
+     * Scores a node for rendezvous hashing.
+     *
+     * @param node the node's id.
+     * @param room the room's name.
+     * @return the node's score for the room.
+     */
+    private static int score(String node, String room) {
+        int hash = node.hashCode() * 31 + room.hashCode();
+        // murmur3's finalizer, so that similar ids score unrelated.
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        hash *= 0xc2b2ae35;
+        hash ^= hash >>> 16;
+        return hash;
+    }
+}
@@ -0,0 +1,31 @@
+package mx.unam.fciencias.myp.chat.services;
+
+import mx.unam.fciencias.myp.chat.models.AbstractChatUser;
+import mx.unam.fciencias.myp.chat.models.ChatNotification;
+
+import java.util.Collection;
+
+/**
+ * Strategy used by a chat to hand an accepted notification over to its recipients.
+ *
+ * @author Luis Daniel Aragon Bermudez 416041271
+ */
+public interface Dispatcher {
+    /**
+     * Delivers a notification to every recipient. Implementations must deliver notifications to any single recipient
+     * in the same order they were dispatched.
+     *
+     * @param notification the notification.
+     * @param recipients   the users that should receive the notification.
+     */
+    void dispatch(ChatNotification notification, Collection<AbstractChatUser> recipients);
+
+    /**
+     * Lets the dispatcher know that a user won't receive further notifications, so that any resources held on its
+     * behalf can be freed once its pending notifications have been delivered.
+     *
+     * @param user a user that's no longer online.
+     */
+    default void release(AbstractChatUser user) {
+    }
+}
@@ -0,0 +1,423 @@
+package mx.unam.fciencias.myp.chat.services;
+
+import mx.unam.fciencias.myp.chat.models.ChatNotification;
+import mx.unam.fciencias.myp.chat.models.NotificationCodec;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+/**
+ * <p>Durable, append-only log of the notifications accepted by a room.</p>
+ * <p>Appending only enqueues the notification; a dedicated writer thread encodes queued notifications into binary
+ * records and writes them to the current segment file. Writes are group-committed: the segment is forced to disk at
+ * most once per commit interval, so a crash loses at most the notifications accepted during the last interval.
+ * Segments roll over once they reach their maximum size and are named after the sequence number of their first
+ * record.</p>
+ * <p>Every record is laid out as its payload's length, the payload's CRC-32 and the payload itself, which is the
+ * notification as encoded by {@link NotificationCodec}. Torn records left by a crash fail their checksum and are
+ * truncated away when the log is reopened.</p>
+ *
+ * @author Luis Daniel Aragon Bermudez 416041271
+ */
+public class EventLog implements Closeable {
+    /**
+     * Extension of segment files.
+     */
+    static final String EXTENSION = ".log";
+    /**
+     * Size of a record's header: the payload's length followed by its CRC-32.
+     */
+    static final int HEADER_SIZE = 8;
+    /**
+     * Maximum amount of queued notifications written between checks for a commit.
+     */
+    private static final int BATCH_SIZE = 4096;
+    /**
+     * Placeholder enqueued to wake the writer thread up when the log's closed.
+     */
+    private static final Pending WAKE_UP = new Pending(-1, null);
+    /**
+     * Directory that holds the segment files.
+     */
+    private final Path directory;
+    /**
+     * Size at which segments roll over, in bytes.
+     */
+    private final long segmentSize;
+    /**
+     * Maximum time between commits, in nanoseconds.
+     */
+    private final long commitInterval;
+    /**
+     * Notifications waiting to be written.
+     */
+    private final LinkedBlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+    /**
+     * The writer thread.
+     */
+    private final Thread writer;
+    /**
+     * Buffer records are encoded into before being written. Only used by the writer thread.
+     */
+    private ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024);
+    /**
+     * Checksum of the record being encoded. Only used by the writer thread.
+     */
+    private final CRC32 crc = new CRC32();
+    /**
+     * The current segment. Only used by the writer thread once the log's open.
+     */
+    private FileChannel segment;
+    /**
+     * Amount of bytes in the current segment, including buffered ones. Only used by the writer thread once the log's
+     * open.
+     */
+    private long segmentBytes;
+    /**
+     * Sequence number of the last record written, committed or not. Only used by the writer thread once the log's
+     * open.
+     */
+    private long lastWritten;
+    /**
+     * Sequence number of the last record known to be on disk, or -1 if there's none.
+     */
+    private volatile long lastCommitted;
+    /**
+     * The error that stopped the writer thread, if any. Errors other than I/O ones are wrapped.
+     */
+    private volatile IOException failure;
+    /**
+     * Whether the log has been closed.
+     */
+    private volatile boolean closed;
+    /**
+     * Held by appenders while they enqueue and by {@link #close()} while it marks the log closed, so every notification
+     * enqueued is enqueued before the writer thread is told to finish.
+     */
+    private final ReentrantReadWriteLock closing = new ReentrantReadWriteLock();
+
+    /**
+     * Opens a log, recovering the records already in the directory and truncating any torn record at its end.
+     *
+     * @param directory      directory that holds the segment files.
+     * @param segmentSize    size at which segments roll over, in bytes.
+     * @param commitInterval maximum time between commits, which bounds how much a crash can lose.
+     * @param unit           the commit interval's unit.
+     * @throws IOException if the directory can't be read or written.
+     */
+    public EventLog(Path directory, long segmentSize, long commitInterval, TimeUnit unit) throws IOException {
+        if (segmentSize < HEADER_SIZE || commitInterval < 0)
+            throw new IllegalArgumentException("Invalid segment size or commit interval.");
+        this.directory = Files.createDirectories(directory);
+        this.segmentSize = segmentSize;
+        this.commitInterval = unit.toNanos(commitInterval);
+        this.lastWritten = recover();
+        this.lastCommitted = lastWritten;
+        this.writer = new Thread(this::write, "chat-event-log");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Enqueues a notification to be written. Never blocks nor touches the disk.
+     *
+     * @param sequence     the notification's sequence number in its room.
+     * @param notification the notification.
+     * @throws IllegalStateException if the log has been closed.
+     * @throws UncheckedIOException  if the writer thread stopped because of an error.
+     */
+    public void append(long sequence, ChatNotification notification) {
+        closing.readLock().lock();
+        try {
+            if (failure != null)
+                throw new UncheckedIOException(failure);
+            if (closed)
+                throw new IllegalStateException("The event log is closed.");
+            queue.add(new Pending(sequence, notification));
+        } finally {
+            closing.readLock().unlock();
+        }
+    }
+
+    /**
+     * Enqueues a notification to be written, unless the log can't take it. Never blocks, touches the disk nor throws,
+     * so it's safe to call once the notification's already been accepted.
+     *
+     * @param sequence     the notification's sequence number in its room.
+     * @param notification the notification.
+     * @return true if the notification was enqueued, false if the log has been closed or its writer thread stopped.
+     */
+    public boolean offer(long sequence, ChatNotification notification) {
+        closing.readLock().lock();
+        try {
+            if (failure != null || closed) {
+                return false;
+            }
+            queue.add(new Pending(sequence, notification));
+            return true;
+        } finally {
+            closing.readLock().unlock();
+        }
+    }
+
+    /**
+     * Retrieves the error that stopped the writer thread.
+     *
+     * @return the writer thread's error, or null if it's still running or was closed cleanly.
+     */
+    public IOException getFailure() {
+        return failure;
+    }
+
+    /**
+     * Retrieves the sequence number of the last record known to be on disk.
+     *
+     * @return the last committed sequence number, or -1 if the log is empty.
+     */
+    public long getLastCommitted() {
+        return lastCommitted;
+    }
+
+    /**
+     * Retrieves the amount of notifications waiting to be written.
+     *
+     * @return the log's backlog.
+     */
+    public int getBacklog() {
+        return queue.size();
+    }
+
+    /**
+     * Opens a reader that replays the log's committed records, starting at a sequence number.
+     *
+     * @param fromSequence sequence number of the first record to read.
+     * @return the reader.
+     * @throws IOException if the segments can't be read.
+     */
+    public EventLogReader read(long fromSequence) throws IOException {
+        return new EventLogReader(segments(directory), fromSequence);
+    }
+
+    /**
+     * Writes and commits every queued notification, then stops the writer thread. Appends racing with it are either
+     * written or rejected, never dropped.
+     *
+     * @throws IOException if the writer thread stopped because of an error.
+     */
+    @Override
+    public void close() throws IOException {
+        closing.writeLock().lock();
+        try {
+            closed = true;
+        } finally {
+            closing.writeLock().unlock();
+        }
+        queue.add(WAKE_UP);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Writer thread's main loop.
+     */
+    private void write() {
+        List<Pending> batch = new ArrayList<>(BATCH_SIZE);
+        long lastCommit = System.nanoTime() - commitInterval;
+        boolean dirty = false;
+        try {
+            while (true) {
+                Pending first;
+                try {
+                    if (dirty) {
+                        // wait for more records until the commit's due.
+                        first = queue.poll(commitInterval - (System.nanoTime() - lastCommit), TimeUnit.NANOSECONDS);
+                    } else {
+                        first = queue.take();
+                    }
+                } catch (InterruptedException e) {
+                    first = null;
+                }
+                if (first != null) {
+                    batch.add(first);
+                }
+                queue.drainTo(batch, BATCH_SIZE - batch.size());
+                for (Pending pending : batch) {
+                    if (pending != WAKE_UP) {
+                        encode(pending);
+                        dirty = true;
+                    }
+                }
+                batch.clear();
+                if (dirty && System.nanoTime() - lastCommit >= commitInterval) {
+                    commit();
+                    dirty = false;
+                    lastCommit = System.nanoTime();
+                }
+                if (closed && queue.isEmpty()) {
+                    commit();
+                    segment.close();
+                    return;
+                }
+            }
+        } catch (IOException e) {
+            failure = e;
+        } catch (Throwable e) {
+            // anything else would kill the thread silently, while append kept queueing.
+            failure = new IOException("The event log's writer thread failed.", e);
+        }
+    }
+
+    /**
+     * Encodes a record into the buffer, rolling the segment over if it's full.
+     *
+     * @param pending the notification.
+     * @throws IOException if a write fails.
+     */
+    private void encode(Pending pending) throws IOException {
+        int payload = NotificationCodec.encodedLength(pending.sequence, pending.notification);
+        int size = HEADER_SIZE + payload;
+        if (segmentBytes > 0 && segmentBytes + size > segmentSize) {
+            commit();
+            segment.close();
+            segment = openSegment(pending.sequence);
+            segmentBytes = 0;
+        }
+        if (buffer.remaining() < size) {
+            drain();
+            if (buffer.capacity() < size) {
+                buffer = ByteBuffer.allocateDirect(size);
+            }
+        }
+        int start = buffer.position();
+        buffer.position(start + HEADER_SIZE);
+        NotificationCodec.encode(pending.sequence, pending.notification, buffer);
+        ByteBuffer body = buffer.duplicate();
+        body.position(start + HEADER_SIZE).limit(start + size);
+        crc.reset();
+        crc.update(body);
+        buffer.putInt(start, payload).putInt(start + 4, (int) crc.getValue());
+        segmentBytes += size;
+        lastWritten = pending.sequence;
+    }
+
+    /**
+     * Writes the buffer's contents to the current segment.
+     *
+     * @throws IOException if the write fails.
+     */
+    private void drain() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            segment.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Writes the buffer's contents and forces the current segment to disk.
+     *
+     * @throws IOException if the write fails.
+     */
+    private void commit() throws IOException {
+        drain();
+        segment.force(false);
+        lastCommitted = lastWritten;
+    }
+
+    /**
+     * Finds the end of the existing log, truncating a torn record if there's one, and opens the segment to append to.
+     *
+     * @return the sequence number of the last record in the log, or -1 if it's empty.
+     * @throws IOException if the segments can't be read or written.
+     */
+    private long recover() throws IOException {
+        List<Path> existing = segments(directory);
+        long last = -1;
+        for (int i = existing.size() - 1; i >= 0 && last < 0; i--) {
+            try (EventLogReader reader = new EventLogReader(Collections.singletonList(existing.get(i)), 0)) {
+                while (reader.hasNext()) {
+                    last = reader.next().getSequence();
+                }
+                if (i == existing.size() - 1) {
+                    segment = FileChannel.open(existing.get(i), StandardOpenOption.WRITE);
+                    segment.truncate(reader.getValidBytes());
+                    segment.position(reader.getValidBytes());
+                    segmentBytes = reader.getValidBytes();
+                }
+            }
+        }
+        if (segment == null) {
+            segment = openSegment(0);
+        }
+        return last;
+    }
+
+    /**
+     * Creates a segment file. An existing segment is never appended to, since its records would end up out of order:
+     * that only happens if the log is fed sequence numbers it already has, e.g. by a room that doesn't resume from it.
+     *
+     * @param firstSequence sequence number of the segment's first record.
+     * @return the segment's channel.
+     * @throws java.nio.file.FileAlreadyExistsException if the segment already exists.
+     * @throws IOException if the file can't be created.
+     */
+    private FileChannel openSegment(long firstSequence) throws IOException {
+        Path file = directory.resolve(String.format("%020d%s", firstSequence, EXTENSION));
+        return FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+    }
+
+    /**
+     * Lists a log's segment files, oldest first.
+     *
+     * @param directory the log's directory.
+     * @return the segment files.
+     * @throws IOException if the directory can't be read.
+     */
+    static List<Path> segments(Path directory) throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + EXTENSION)) {
+            stream.forEach(files::add);
+        }
+        Collections.sort(files);
+        return files;
+    }
+
+    /**
+     * A notification waiting to be written.
+     */
+    private static final class Pending {
+        /**
+         * The notification's sequence number.
+         */
+        final long sequence;
+        /**
+         * The notification.
+         */
+        final ChatNotification notification;
+
+        Pending(long sequence, ChatNotification notification) {
+            this.sequence = sequence;
+            this.notification = notification;
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package mx.unam.fciencias.myp.chat.services;
+
+import mx.unam.fciencias.myp.chat.models.LogRecord;
+import mx.unam.fciencias.myp.chat.models.NotificationView;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.zip.CRC32;
+
+/**
+ * Sequential reader over an {@link EventLog}'s segments. Segments are memory-mapped one at a time and records are read
+ * in order, starting at a given sequence number. A segment is considered to end at its first incomplete or corrupt
+ * record.
+ *
+ * @author Luis Daniel Aragon Bermudez 416041271
+ */
+public class EventLogReader implements Iterator<LogRecord>, Closeable {
+    /**
+     * Segments left to read, oldest first.
+     */
+    private final List<Path> segments;
+    /**
+     * Sequence number of the first record to return.
+     */
+    private final long fromSequence;
+    /**
+     * Checksum of the record being read.
+     */
+    private final CRC32 crc = new CRC32();
+    /**
+     * Reusable view used to decode records.
+     */
+    private final NotificationView view = new NotificationView();
+    /**
+     * Index of the next segment to map.
+     */
+    private int index;
+    /**
+     * The segment being read, or null if the next one has to be mapped.
+     */
+    private ByteBuffer current;
+    /**
+     * Amount of bytes of the current segment that hold valid records.
+     */
+    private long validBytes;
+    /**
+     * The record {@link #next()} will return, or null if it has to be read.
+     */
+    private LogRecord next;
+
+    /**
+     * Builds a reader.
+     *
+     * @param segments     the log's segments, oldest first.
+     * @param fromSequence sequence number of the first record to return.
+     */
+    EventLogReader(List<Path> segments, long fromSequence) {
+        this.segments = segments;
+        this.fromSequence = fromSequence;
+        // segments are named after their first record, so skip those that end before the requested one.
+        for (int i = 1; i < segments.size() && firstSequence(segments.get(i)) <= fromSequence; i++) {
+            index = i;
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next == null) {
+            try {
+                next = advance();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return next != null;
+    }
+
+    @Override
+    public LogRecord next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        LogRecord record = next;
+        next = null;
+        return record;
+    }
+
+    /**
+     * Retrieves the amount of bytes of the segment being read that hold valid records, as far as it's been read.
+     *
+     * @return the valid prefix's length.
+     */
+    public long getValidBytes() {
+        return validBytes;
+    }
+
+    @Override
+    public void close() {
+        current = null;
+        index = segments.size();
+    }
+
+    /**
+     * Reads the next record whose sequence number isn't lower than the requested one.
+     *
+     * @return the record, or null if there are none left.
+     * @throws IOException if a segment can't be mapped.
+     */
+    private LogRecord advance() throws IOException {
+        while (true) {
+            if (current == null) {
+                if (index >= segments.size()) {
+                    return null;
+                }
+                current = map(segments.get(index++));
+                validBytes = 0;
+            }
+            LogRecord record = read(current);
+            if (record == null) {
+                current = null;
+            } else if (record.getSequence() >= fromSequence) {
+                return record;
+            }
+        }
+    }
+
+    /**
+     * Reads a record at the buffer's position.
+     *
+     * @param buffer the segment.
+     * @return the record, or null if the segment ends there.
+     */
+    private LogRecord read(ByteBuffer buffer) {
+        if (buffer.remaining() < EventLog.HEADER_SIZE) {
+            return null;
+        }
+        int start = buffer.position();
+        int length = buffer.getInt(start);
+        int checksum = buffer.getInt(start + 4);
+        if (length <= 0 || length > buffer.remaining() - EventLog.HEADER_SIZE) {
+            return null;
+        }
+        ByteBuffer payload = buffer.duplicate();
+        payload.position(start + EventLog.HEADER_SIZE).limit(start + EventLog.HEADER_SIZE + length);
+        crc.reset();
+        crc.update(payload);
+        if ((int) crc.getValue() != checksum) {
+            return null;
+        }
+        payload.position(start + EventLog.HEADER_SIZE);
+        LogRecord record = view.wrap(payload).toRecord();
+        buffer.position(start + EventLog.HEADER_SIZE + length);
+        validBytes = buffer.position();
+        return record;
+    }
+
+    /**
+     * Maps a segment file.
+     *
+     * @param segment the file.
+     * @return the segment's contents.
+     * @throws IOException if the file can't be mapped.
+     */
+    private static ByteBuffer map(Path segment) throws IOException {
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    /**
+     * Parses the sequence number of a segment's first record out of its file name.
+     *
+     * @param segment the file.
+     * @return the segment's first sequence number.
+     */
+    private static long firstSequence(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(0, name.length() - EventLog.EXTENSION.length()));
+    }
+}
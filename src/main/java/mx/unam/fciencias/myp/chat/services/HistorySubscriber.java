@@ -0,0 +1,58 @@
+package mx.unam.fciencias.myp.chat.services;
+
+import mx.unam.fciencias.myp.chat.models.ChatNotification;
+
+/**
+ * <p>Follows a room's history as it grows, see {@link ChatRoom#tail(long, HistorySubscriber, java.util.concurrent.Executor)}.
+ * Shaped after the reactive streams' subscriber: it's sent at most as many notifications as it has requested through
+ * its {@link Subscription}, so a slow subscriber never makes the room buffer on its behalf; it just falls behind and
+ * catches up from the history later.</p>
+ * <p>Signals to the same subscriber never overlap and arrive in sequence order.</p>
+ *
+ * @author Luis Daniel Aragon Bermudez 416041271
+ */
+public interface HistorySubscriber {
+
+    /**
+     * Receives the subscription before anything else. Nothing's sent until something's requested through it.
+     *
+     * @param subscription the subscription.
+     */
+    void onSubscribe(Subscription subscription);
+
+    /**
+     * Receives the next notification in the room's history.
+     *
+     * @param sequence     the notification's sequence number, which can be used to resume following the room.
+     * @param notification the notification.
+     */
+    void onNext(long sequence, ChatNotification notification);
+
+    /**
+     * Learns that some notifications were evicted from the history before they could be sent, because the subscriber
+     * fell too far behind. Does nothing by default.
+     *
+     * @param from sequence number of the first evicted notification.
+     * @param to   sequence number after the last evicted notification.
+     */
+    default void onSkipped(long from, long to) {
+    }
+
+    /**
+     * A subscriber's link with the room it follows.
+     */
+    interface Subscription {
+
+        /**
+         * Asks for more notifications. Requests add up.
+         *
+         * @param amount the amount of notifications, positive.
+         */
+        void request(long amount);
+
+        /**
+         * Stops following the room. Notifications already being sent may still arrive.
+         */
+        void cancel();
+    }
+}
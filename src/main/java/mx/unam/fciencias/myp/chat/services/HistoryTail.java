@@ -0,0 +1,130 @@
+package mx.unam.fciencias.myp.chat.services;
+
+import mx.unam.fciencias.myp.chat.models.HistoryCursor;
+import mx.unam.fciencias.myp.chat.models.RoomHistory;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link HistorySubscriber}'s subscription to a room's history. Notifications are read from the history through a
+ * cursor and sent on an executor, in batches bounded by the subscriber's outstanding demand; the room only wakes the
+ * subscription up when it appends a notification.
+ *
+ * @author Luis Daniel Aragon Bermudez 416041271
+ */
+final class HistoryTail implements HistorySubscriber.Subscription {
+    /**
+     * Maximum amount of notifications sent per run on the executor, so that a subscriber doesn't hog it.
+     */
+    private static final int BATCH_SIZE = 256;
+    /**
+     * The room followed.
+     */
+    private final ChatRoom room;
+    /**
+     * Reads the room's history.
+     */
+    private final HistoryCursor cursor;
+    /**
+     * The subscriber.
+     */
+    private final HistorySubscriber subscriber;
+    /**
+     * Executor that sends the notifications.
+     */
+    private final Executor executor;
+    /**
+     * Amount of notifications requested but not yet sent.
+     */
+    private final AtomicLong demand = new AtomicLong();
+    /**
+     * Amount of wake-ups not yet handled; the run that takes it from zero sends until it's back to zero, so runs never
+     * overlap.
+     */
+    private final AtomicInteger wakeUps = new AtomicInteger();
+    /**
+     * Sequence number of the next notification the subscriber expects. Only used by the sending run.
+     */
+    private long expected;
+    /**
+     * Whether the subscription has been cancelled.
+     */
+    private volatile boolean cancelled;
+
+    /**
+     * Builds a subscription.
+     *
+     * @param room       the room followed.
+     * @param history    the room's history.
+     * @param from       sequence number of the first notification to send.
+     * @param subscriber the subscriber.
+     * @param executor   executor that sends the notifications.
+     */
+    HistoryTail(ChatRoom room, RoomHistory history, long from, HistorySubscriber subscriber, Executor executor) {
+        this.room = room;
+        this.cursor = history.cursor(from);
+        this.expected = from;
+        this.subscriber = subscriber;
+        this.executor = executor;
+    }
+
+    @Override
+    public void request(long amount) {
+        if (amount < 1)
+            throw new IllegalArgumentException(String.format("Invalid amount: %d", amount));
+        demand.accumulateAndGet(amount, (current, added) -> current + added < 0 ? Long.MAX_VALUE : current + added);
+        wakeUp();
+    }
+
+    @Override
+    public void cancel() {
+        cancelled = true;
+        room.untail(this);
+    }
+
+    /**
+     * Lets the subscription know the history has grown. Cheap unless the subscriber's waiting for notifications.
+     */
+    void wakeUp() {
+        if (!cancelled && demand.get() > 0 && wakeUps.getAndIncrement() == 0) {
+            executor.execute(this::send);
+        }
+    }
+
+    /**
+     * Sends notifications while there's demand and the history has them.
+     */
+    private void send() {
+        int missed = 1;
+        while (true) {
+            int sent = 0;
+            while (!cancelled && sent < BATCH_SIZE && demand.get() > 0 && cursor.hasNext()) {
+                int read = cursor.next((int) Math.min(demand.get(), BATCH_SIZE - sent), (notification, sequence) -> {
+                    if (sequence > expected) {
+                        subscriber.onSkipped(expected, sequence);
+                    }
+                    expected = sequence + 1;
+                    subscriber.onNext(sequence, notification);
+                });
+                if (read == 0 && cursor.getPosition() > expected) {
+                    // everything left was evicted.
+                    subscriber.onSkipped(expected, cursor.getPosition());
+                    expected = cursor.getPosition();
+                }
+                demand.addAndGet(-read);
+                sent += read;
+            }
+            if (sent == BATCH_SIZE) {
+                // lets other tasks run, then carries on.
+                executor.execute(this::send);
+                return;
+            }
+            missed = wakeUps.addAndGet(-missed);
+            if (missed == 0) {
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,270 @@
+package mx.unam.fciencias.myp.chat.services;
+
+import mx.unam.fciencias.myp.chat.models.LocalePack;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>Holds the available {@link LocalePack}s. Locales are plain data: a UTF-8 properties file per locale, named after
+ * the locale's id and keyed by {@link mx.unam.fciencias.myp.chat.models.Phrase#getKey()}.</p>
+ * <p>Every locale id is given a slot the first time it's loaded. Packs are looked up by slot, which is a single array
+ * index, and reloading a locale only replaces the pack in its slot so users pick the new phrases up right away.</p>
+ *
+ * @author Luis Daniel Aragon Bermudez 416041271
+ */
+public class LocaleRegistry {
+    /**
+     * Classpath directory that holds the bundled locale packs.
+     */
+    private static final String BUNDLED_LOCALES = "/locales/";
+    /**
+     * Extension of locale pack files.
+     */
+    private static final String EXTENSION = ".properties";
+    /**
+     * Registry with the bundled locale packs.
+     */
+    private static volatile LocaleRegistry defaultRegistry = null;
+    /**
+     * Slot of every known locale id.
+     */
+    private final ConcurrentHashMap<String, Integer> slots = new ConcurrentHashMap<>();
+    /**
+     * Locale packs indexed by slot. The array is replaced, never modified, whenever a pack is registered.
+     */
+    private volatile LocalePack[] packs = new LocalePack[0];
+    /**
+     * Amount of locale pack files that couldn't be reloaded.
+     */
+    private final AtomicLong reloadFailures = new AtomicLong();
+
+    /**
+     * Retrieves a shared registry that holds the locale packs bundled with the application.
+     *
+     * @return the default registry.
+     */
+    public static LocaleRegistry getDefault() {
+        LocaleRegistry registry = defaultRegistry;
+        if (registry == null) {
+            synchronized (LocaleRegistry.class) {
+                registry = defaultRegistry;
+                if (registry == null) {
+                    registry = new LocaleRegistry();
+                    try {
+                        registry.loadBundled();
+                    } catch (IOException e) {
+                        throw new IllegalStateException("Couldn't load the bundled locales.", e);
+                    }
+                    defaultRegistry = registry;
+                }
+            }
+        }
+        return registry;
+    }
+
+    /**
+     * Registers a locale pack, replacing the pack previously registered under the same id.
+     *
+     * @param pack the locale pack.
+     * @return the pack's slot.
+     */
+    public synchronized int register(LocalePack pack) {
+        Integer slot = slots.get(pack.getId());
+        LocalePack[] current = packs;
+        LocalePack[] updated;
+        if (slot == null) {
+            slot = current.length;
+            updated = Arrays.copyOf(current, current.length + 1);
+        } else {
+            updated = current.clone();
+        }
+        updated[slot] = pack;
+        packs = updated;
+        slots.putIfAbsent(pack.getId(), slot);
+        return slot;
+    }
+
+    /**
+     * Parses and registers a locale pack.
+     *
+     * @param id     the locale's id.
+     * @param reader the locale's phrases, in properties format.
+     * @return the pack's slot.
+     * @throws IOException if the phrases couldn't be read.
+     */
+    public int load(String id, Reader reader) throws IOException {
+        Properties properties = new Properties();
+        properties.load(reader);
+        return register(LocalePack.fromProperties(id, properties));
+    }
+
+    /**
+     * Loads the locale packs bundled with the application, which are listed in the {@code /locales/index} classpath
+     * resource.
+     *
+     * @throws IOException if a bundled pack couldn't be read.
+     */
+    public void loadBundled() throws IOException {
+        try (BufferedReader index = open(BUNDLED_LOCALES + "index")) {
+            String line;
+            while ((line = index.readLine()) != null) {
+                String id = line.trim();
+                if (id.isEmpty() || id.startsWith("#")) {
+                    continue;
+                }
+                try (Reader reader = open(BUNDLED_LOCALES + id + EXTENSION)) {
+                    load(id, reader);
+                }
+            }
+        }
+    }
+
+    /**
+     * Loads every locale pack file in a directory.
+     *
+     * @param directory the directory.
+     * @return the amount of packs loaded.
+     * @throws IOException if a pack couldn't be read.
+     */
+    public int loadDirectory(Path directory) throws IOException {
+        int loaded = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + EXTENSION)) {
+            for (Path file : files) {
+                loadFile(file);
+                loaded++;
+            }
+        }
+        return loaded;
+    }
+
+    /**
+     * Periodically reloads the locale pack files in a directory that have been added or modified, so that locales can
+     * be changed without stopping the chat. Files that can't be parsed are skipped and the previous pack is kept.
+     *
+     * @param directory the directory.
+     * @param period    the time between checks.
+     * @param unit      the period's unit.
+     * @param scheduler executor that runs the checks.
+     * @return a future that can be used to stop watching the directory.
+     */
+    public ScheduledFuture<?> watch(Path directory, long period, TimeUnit unit, ScheduledExecutorService scheduler) {
+        Map<Path, Long> modified = new HashMap<>();
+        return scheduler.scheduleWithFixedDelay(() -> {
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + EXTENSION)) {
+                for (Path file : files) {
+                    long lastModified = Files.getLastModifiedTime(file).toMillis();
+                    Long previous = modified.put(file, lastModified);
+                    if (previous == null || previous != lastModified) {
+                        try {
+                            loadFile(file);
+                        } catch (IOException | IllegalArgumentException e) {
+                            reloadFailures.incrementAndGet();
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                reloadFailures.incrementAndGet();
+            }
+        }, 0, period, unit);
+    }
+
+    /**
+     * Retrieves a locale's slot.
+     *
+     * @param id the locale's id.
+     * @return the locale's slot.
+     * @throws IllegalArgumentException if the locale is unknown.
+     */
+    public int slotOf(String id) {
+        Integer slot = slots.get(id);
+        if (slot == null)
+            throw new IllegalArgumentException(String.format("Unknown locale: %s", id));
+        return slot;
+    }
+
+    /**
+     * Retrieves the pack currently in a slot.
+     *
+     * @param slot the slot.
+     * @return the locale pack.
+     */
+    public LocalePack get(int slot) {
+        return packs[slot];
+    }
+
+    /**
+     * Retrieves a locale pack by id.
+     *
+     * @param id the locale's id.
+     * @return the locale pack.
+     * @throws IllegalArgumentException if the locale is unknown.
+     */
+    public LocalePack get(String id) {
+        return get(slotOf(id));
+    }
+
+    /**
+     * Retrieves the ids of every known locale.
+     *
+     * @return an unmodifiable view of the known locale ids.
+     */
+    public Set<String> getLocaleIds() {
+        return Collections.unmodifiableSet(slots.keySet());
+    }
+
+    /**
+     * Retrieves the amount of locale pack files that couldn't be reloaded while watching a directory.
+     *
+     * @return the amount of failed reloads.
+     */
+    public long getReloadFailures() {
+        return reloadFailures.get();
+    }
+
+    /**
+     * Loads a locale pack file, using its name without extension as the locale's id.
+     *
+     * @param file the file.
+     * @throws IOException if the file couldn't be read.
+     */
+    private void loadFile(Path file) throws IOException {
+        String name = file.getFileName().toString();
+        String id = name.substring(0, name.length() - EXTENSION.length());
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            load(id, reader);
+        }
+    }
+
+    /**
+     * Opens a classpath resource as UTF-8 text.
+     *
+     * @param resource the resource's absolute path.
+     * @return a reader.
+     * @throws IOException if the resource doesn't exist.
+     */
+    private static BufferedReader open(String resource) throws IOException {
+        InputStream stream = LocaleRegistry.class.getResourceAsStream(resource);
+        if (stream == null)
+            throw new IOException(String.format("Missing resource: %s", resource));
+        return new BufferedReader(new InputStreamReader(stream, StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,134 @@
+package mx.unam.fciencias.myp.chat.services;
+
+import mx.unam.fciencias.myp.chat.models.AbstractChatUser;
+import mx.unam.fciencias.myp.chat.models.LocalePack;
+import mx.unam.fciencias.myp.chat.models.LocaleTemplates;
+import mx.unam.fciencias.myp.chat.models.Phrase;
+import mx.unam.fciencias.myp.chat.models.Sink;
+
+import java.io.PrintStream;
+
+/**
+ * Chat user whose notifications are displayed in the locale it carries. Phrases come from a {@link LocaleRegistry},
+ * so reloading the user's locale pack takes effect on its next notification.
+ *
+ * @author Luis Daniel Aragon Bermudez 416041271
+ */
+public class LocalizedChatUser extends AbstractChatUser {
+    /**
+     * Registry that holds the user's locale pack.
+     */
+    private final LocaleRegistry registry;
+    /**
+     * Slot of the user's locale in the registry.
+     */
+    private final int locale;
+
+    /**
+     * Builds a user that uses one of the bundled locales.
+     *
+     * @param username the user's username.
+     * @param screen   the user's display as a PrintStream.
+     * @param localeId the id of the user's locale, i.e. "en-GB".
+     */
+    public LocalizedChatUser(String username, PrintStream screen, String localeId) {
+        this(username, screen, LocaleRegistry.getDefault(), localeId);
+    }
+
+    /**
+     * Builds a user.
+     *
+     * @param username the user's username.
+     * @param screen   the user's display as a PrintStream.
+     * @param registry registry that holds the user's locale pack.
+     * @param localeId the id of the user's locale.
+     */
+    public LocalizedChatUser(String username, PrintStream screen, LocaleRegistry registry, String localeId) {
+        super(username, screen);
+        this.registry = registry;
+        this.locale = registry.slotOf(localeId);
+    }
+
+    /**
+     * Rebuilds a user that existed before a restart, with the id it had then, see {@link SnapshotStore}.
+     *
+     * @param id       the user's id before the restart.
+     * @param username the user's username.
+     * @param screen   the user's display as a PrintStream.
+     * @param registry registry that holds the user's locale pack.
+     * @param localeId the id of the user's locale.
+     */
+    LocalizedChatUser(int id, String username, PrintStream screen, LocaleRegistry registry, String localeId) {
+        super(id, username, screen);
+        this.registry = registry;
+        this.locale = registry.slotOf(localeId);
+    }
+
+    /**
+     * Builds a user whose lines are written to a sink, see {@link AbstractChatUser#AbstractChatUser(String, Sink)}.
+     *
+     * @param username the user's username.
+     * @param sink     the user's display as a sink.
+     * @param registry registry that holds the user's locale pack.
+     * @param localeId the id of the user's locale.
+     */
+    public LocalizedChatUser(String username, Sink sink, LocaleRegistry registry, String localeId) {
+        super(username, sink);
+        this.registry = registry;
+        this.locale = registry.slotOf(localeId);
+    }
+
+    /**
+     * Retrieves the user's current locale pack.
+     *
+     * @return the user's locale pack.
+     */
+    public LocalePack getLocalePack() {
+        return registry.get(locale);
+    }
+
+    @Override
+    public String getLocaleId() {
+        return registry.get(locale).getId();
+    }
+
+    @Override
+    protected LocaleTemplates getTemplates() {
+        return registry.get(locale).getTemplates();
+    }
+
+    @Override
+    protected String getHaveJoinedSecond() {
+        return registry.get(locale).phrase(Phrase.HAVE_JOINED_SECOND);
+    }
+
+    @Override
+    protected String getHaveJoinedThird() {
+        return registry.get(locale).phrase(Phrase.HAVE_JOINED_THIRD);
+    }
+
+    @Override
+    protected String getHaveLeftSecond() {
+        return registry.get(locale).phrase(Phrase.HAVE_LEFT_SECOND);
+    }
+
+    @Override
+    protected String getHaveLeftThird() {
+        return registry.get(locale).phrase(Phrase.HAVE_LEFT_THIRD);
+    }
+
+    @Override
+    protected String getVerbSaySecond() {
+        return registry.get(locale).phrase(Phrase.VERB_SAY_SECOND);
+    }
+
+    @Override
+    protected String getVerbSayThird() {
+        return registry.get(locale).phrase(Phrase.VERB_SAY_THIRD);
+    }
+
+    @Override
+    protected String getPronounYou() {
+        return registry.get(locale).phrase(Phrase.PRONOUN_YOU);
+    }
+}
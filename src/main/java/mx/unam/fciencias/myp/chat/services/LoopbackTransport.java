@@ -0,0 +1,119 @@
+package mx.unam.fciencias.myp.chat.services;
+
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>A {@link Transport} whose nodes all live in the same process, so that multi-node clusters, their scaling and
+ * their failover can be tried out on a single machine.</p>
+ * <p>Every node gets a dedicated thread that handles what's addressed to it. Frames are copied when they're sent, as if
+ * they went through a wire, and removing a node drops whatever it hadn't handled yet, as if it crashed.</p>
+ *
+ * @author Luis Daniel Aragon Bermudez 416041271
+ */
+public class LoopbackTransport implements Transport {
+    /**
+     * The nodes' threads, indexed by node id.
+     */
+    private final ConcurrentHashMap<String, Endpoint> endpoints = new ConcurrentHashMap<>();
+    /**
+     * Amount of frames sent to nodes that weren't part of the cluster.
+     */
+    private final AtomicLong dropped = new AtomicLong();
+
+    @Override
+    public synchronized void join(String node, Receiver receiver) {
+        if (endpoints.containsKey(node))
+            throw new IllegalArgumentException(String.format("Node %s already joined.", node));
+        endpoints.put(node, new Endpoint(node, receiver));
+        membershipChanged();
+    }
+
+    @Override
+    public synchronized void leave(String node) {
+        Endpoint endpoint = endpoints.remove(node);
+        if (endpoint != null) {
+            endpoint.executor.shutdownNow();
+            membershipChanged();
+        }
+    }
+
+    @Override
+    public void send(String from, String to, ByteBuffer frame) {
+        Endpoint endpoint = endpoints.get(to);
+        // nodes that left can't send either, as if they crashed.
+        if (endpoint == null || !endpoints.containsKey(from)) {
+            dropped.incrementAndGet();
+            return;
+        }
+        byte[] copy = new byte[frame.remaining()];
+        frame.duplicate().get(copy);
+        try {
+            endpoint.executor.execute(() -> endpoint.receiver.receive(from, ByteBuffer.wrap(copy)));
+        } catch (RejectedExecutionException e) {
+            // the node left while the frame was being sent.
+            dropped.incrementAndGet();
+        }
+    }
+
+    @Override
+    public Set<String> getNodes() {
+        return Collections.unmodifiableSet(new TreeSet<>(endpoints.keySet()));
+    }
+
+    /**
+     * Retrieves the amount of frames sent to nodes that weren't part of the cluster.
+     *
+     * @return the amount of dropped frames.
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * Tells every node about the cluster's current membership, after whatever has already been sent to it.
+     */
+    private void membershipChanged() {
+        Set<String> nodes = getNodes();
+        for (Endpoint endpoint : endpoints.values()) {
+            endpoint.executor.execute(() -> endpoint.receiver.nodesChanged(nodes));
+        }
+    }
+
+    /**
+     * A node's thread and receiver.
+     */
+    private static final class Endpoint {
+        /**
+         * Handles what's addressed to the node.
+         */
+        private final Receiver receiver;
+        /**
+         * The node's thread.
+         */
+        private final ExecutorService executor;
+
+        /**
+         * Builds an endpoint and starts its thread.
+         *
+         * @param node     the node's id.
+         * @param receiver handles what's addressed to the node.
+         */
+        private Endpoint(String node, Receiver receiver) {
+            this.receiver = receiver;
+            String threadName = String.format("chat-loopback-%s", node);
+            this.executor = Executors.newSingleThreadExecutor(task -> {
+                Thread thread = new Thread(task, threadName);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+}
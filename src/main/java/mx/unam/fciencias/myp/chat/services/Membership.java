@@ -0,0 +1,144 @@
+package mx.unam.fciencias.myp.chat.services;
+
+import mx.unam.fciencias.myp.chat.models.AbstractChatUser;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * <p>A chat's set of online users.</p>
+ * <p>Lookups go through a concurrent index and never block. Joining and leaving take constant time: users are kept in
+ * a dense array and a leaving user's slot is filled by the last user. Broadcasts iterate over an immutable snapshot of
+ * that array which is only rebuilt the first time it's requested after the membership changed.</p>
+ *
+ * @author Luis Daniel Aragon Bermudez 416041271
+ */
+public class Membership {
+    /**
+     * Maps every member to its slot in {@link #members}. Users aren't expected to override {@code equals}, so this is
+     * effectively an identity map.
+     */
+    private final ConcurrentHashMap<AbstractChatUser, Slot> index = new ConcurrentHashMap<>();
+    /**
+     * Dense array of members, guarded by the membership's monitor.
+     */
+    private AbstractChatUser[] members;
+    /**
+     * Amount of members, guarded by the membership's monitor.
+     */
+    private int size;
+    /**
+     * Immutable view of the members, or null if the membership changed since it was built.
+     */
+    private volatile List<AbstractChatUser> snapshot = Collections.emptyList();
+
+    /**
+     * Builds an empty membership.
+     *
+     * @param initialCapacity the amount of members the membership can hold before growing.
+     */
+    public Membership(int initialCapacity) {
+        this.members = new AbstractChatUser[Math.max(1, initialCapacity)];
+    }
+
+    /**
+     * Adds a user.
+     *
+     * @param user the user.
+     * @return true if the user was added, false if it already was a member.
+     */
+    public synchronized boolean add(AbstractChatUser user) {
+        if (index.containsKey(user)) {
+            return false;
+        }
+        if (size == members.length) {
+            members = Arrays.copyOf(members, size * 2);
+        }
+        members[size] = user;
+        index.put(user, new Slot(size));
+        size++;
+        snapshot = null;
+        return true;
+    }
+
+    /**
+     * Removes a user.
+     *
+     * @param user the user.
+     * @return true if the user was removed, false if it wasn't a member.
+     */
+    public synchronized boolean remove(AbstractChatUser user) {
+        Slot slot = index.remove(user);
+        if (slot == null) {
+            return false;
+        }
+        size--;
+        AbstractChatUser last = members[size];
+        members[size] = null;
+        if (last != user) {
+            members[slot.position] = last;
+            index.get(last).position = slot.position;
+        }
+        snapshot = null;
+        return true;
+    }
+
+    /**
+     * Checks whether a user is a member.
+     *
+     * @param user the user.
+     * @return true if the user is a member.
+     */
+    public boolean contains(AbstractChatUser user) {
+        return index.containsKey(user);
+    }
+
+    /**
+     * Retrieves the amount of members.
+     *
+     * @return the amount of members.
+     */
+    public int size() {
+        return index.size();
+    }
+
+    /**
+     * Retrieves an immutable snapshot of the members, suitable for iterating while the membership keeps changing.
+     *
+     * @return the current members.
+     */
+    public List<AbstractChatUser> snapshot() {
+        List<AbstractChatUser> current = snapshot;
+        return current != null ? current : rebuildSnapshot();
+    }
+
+    /**
+     * Rebuilds the snapshot after the membership changed.
+     *
+     * @return the current members.
+     */
+    private synchronized List<AbstractChatUser> rebuildSnapshot() {
+        List<AbstractChatUser> current = snapshot;
+        if (current == null) {
+            current = Collections.unmodifiableList(Arrays.asList(Arrays.copyOf(members, size)));
+            snapshot = current;
+        }
+        return current;
+    }
+
+    /**
+     * A member's position in the dense array.
+     */
+    private static final class Slot {
+        /**
+         * Index in {@link #members}.
+         */
+        int position;
+
+        Slot(int position) {
+            this.position = position;
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package mx.unam.fciencias.myp.chat.services;
+
+import mx.unam.fciencias.myp.chat.models.AbstractChatUser;
+
+import java.io.PrintStream;
+import java.util.Collection;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Periodically dumps the metrics of a set of rooms, plus the process-wide delivery metrics, as plain text.
+ *
+ * @author Luis Daniel Aragon Bermudez 416041271
+ */
+public class MetricsReporter implements Runnable {
+    /**
+     * Where the dumps are written.
+     */
+    private final PrintStream out;
+    /**
+     * The rooms to report, looked up on every dump so rooms can come and go.
+     */
+    private final Supplier<? extends Collection<ChatRoom>> rooms;
+
+    /**
+     * Builds a reporter.
+     *
+     * @param out   where the dumps are written.
+     * @param rooms the rooms to report, e.g. {@code server::getRooms}.
+     */
+    public MetricsReporter(PrintStream out, Supplier<? extends Collection<ChatRoom>> rooms) {
+        if (out == null || rooms == null)
+            throw new IllegalArgumentException("Output and rooms can't be null.");
+        this.out = out;
+        this.rooms = rooms;
+    }
+
+    /**
+     * Dumps the metrics every period.
+     *
+     * @param scheduler the scheduler that runs the dumps.
+     * @param period    time between dumps.
+     * @param unit      the period's unit.
+     * @return the scheduled dumps, cancel it to stop them.
+     */
+    public ScheduledFuture<?> schedule(ScheduledExecutorService scheduler, long period, TimeUnit unit) {
+        return scheduler.scheduleAtFixedRate(this, period, period, unit);
+    }
+
+    /**
+     * Dumps the metrics once.
+     */
+    @Override
+    public void run() {
+        StringBuilder dump = new StringBuilder("--- chat metrics @").append(System.currentTimeMillis()).append(" ---");
+        String separator = System.lineSeparator();
+        for (ChatRoom room : rooms.get()) {
+            dump.append(separator).append(room.getMetrics());
+        }
+        dump.append(separator).append("deliveries: ").append(AbstractChatUser.getDeliveryMetrics());
+        out.println(dump);
+    }
+}
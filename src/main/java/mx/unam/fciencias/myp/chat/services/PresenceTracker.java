@@ -0,0 +1,314 @@
+package mx.unam.fciencias.myp.chat.services;
+
+import mx.unam.fciencias.myp.chat.models.AbstractChatUser;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Tracks when a room's users were last seen and evicts the ones that stay idle for too long, see
+ * {@link ChatRoom#trackPresence(long, long, TimeUnit, ScheduledExecutorService)}.</p>
+ * <p>Idle users are found with a hashed timing wheel: every tracked user sits in the bucket of the tick its deadline
+ * falls in. A heartbeat only records the time, so it takes constant time and no lock; a tick only visits its own
+ * bucket, evicting the users whose deadline has really passed and moving the rest to the bucket of their new deadline.
+ * Evicted users leave the room through {@link ChatRoom#unregister(AbstractChatUser)}, so everyone's notified as
+ * usual. A user seen after it was found idle but before it was evicted is kept, and its heartbeat only reports it as
+ * tracked if it was.</p>
+ *
+ * @author Luis Daniel Aragon Bermudez 416041271
+ */
+public class PresenceTracker implements Runnable {
+    /**
+     * The tracked room.
+     */
+    private final ChatRoom room;
+    /**
+     * Time a user may stay idle before being evicted, in nanoseconds.
+     */
+    private final long timeout;
+    /**
+     * Duration of every tick, in nanoseconds.
+     */
+    private final long tickDuration;
+    /**
+     * When the wheel started turning, as given by {@link System#nanoTime()}.
+     */
+    private final long start;
+    /**
+     * The wheel's buckets, guarded by the tracker's monitor. Its length is a power of two.
+     */
+    private final List<ArrayDeque<Presence>> wheel;
+    /**
+     * Presence of every tracked user.
+     */
+    private final ConcurrentHashMap<AbstractChatUser, Presence> present = new ConcurrentHashMap<>();
+    /**
+     * Next tick to process, guarded by the tracker's monitor.
+     */
+    private long tick;
+    /**
+     * Amount of users evicted.
+     */
+    private volatile long evicted;
+
+    /**
+     * Builds a tracker.
+     *
+     * @param room         the tracked room.
+     * @param timeout      time a user may stay idle before being evicted.
+     * @param tickDuration time between checks for idle users, which bounds how late an eviction may happen.
+     * @param unit         the times' unit.
+     */
+    PresenceTracker(ChatRoom room, long timeout, long tickDuration, TimeUnit unit) {
+        if (timeout <= 0 || tickDuration <= 0 || tickDuration > timeout)
+            throw new IllegalArgumentException(
+                    String.format("Invalid timeout or tick duration: %d, %d", timeout, tickDuration));
+        this.room = room;
+        this.timeout = unit.toNanos(timeout);
+        this.tickDuration = unit.toNanos(tickDuration);
+        // enough buckets for a deadline to never be more than one turn away.
+        int buckets = Integer.highestOneBit((int) Math.min(1 << 20, this.timeout / this.tickDuration + 1)) << 1;
+        this.wheel = new ArrayList<>(buckets);
+        for (int i = 0; i < buckets; i++) {
+            wheel.add(new ArrayDeque<>());
+        }
+        this.start = System.nanoTime();
+    }
+
+    /**
+     * Starts ticking.
+     *
+     * @param scheduler the scheduler that runs the ticks.
+     * @return the scheduled ticks, cancel it to stop evicting users.
+     */
+    ScheduledFuture<?> start(ScheduledExecutorService scheduler) {
+        return scheduler.scheduleAtFixedRate(this, tickDuration, tickDuration, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Starts tracking a user, as if it had just been seen.
+     *
+     * @param user the user.
+     */
+    void track(AbstractChatUser user) {
+        Presence presence = new Presence(user, System.nanoTime());
+        if (present.putIfAbsent(user, presence) == null) {
+            synchronized (this) {
+                schedule(presence, tickOf(presence.lastSeen + timeout));
+            }
+        }
+    }
+
+    /**
+     * Stops tracking a user. Its entry is dropped from the wheel the next time its bucket comes up.
+     *
+     * @param user the user.
+     */
+    void untrack(AbstractChatUser user) {
+        Presence presence = present.remove(user);
+        if (presence != null) {
+            presence.removed = true;
+        }
+    }
+
+    /**
+     * Records that a user has just been seen.
+     *
+     * @param user the user.
+     * @return true if the user's tracked, false otherwise.
+     */
+    public boolean heartbeat(AbstractChatUser user) {
+        Presence presence = present.get(user);
+        if (presence == null) {
+            return false;
+        }
+        presence.lastSeen = System.nanoTime();
+        // an eviction under way either sees this heartbeat and keeps the user, or is seen here.
+        int state;
+        while ((state = presence.state) == Presence.EVICTING) {
+            Thread.yield();
+        }
+        return state == Presence.TRACKED;
+    }
+
+    /**
+     * Retrieves when a user was last seen.
+     *
+     * @param user the user.
+     * @return the time the user was last seen, in milliseconds since the epoch, or -1 if the user isn't tracked.
+     */
+    public long getLastSeen(AbstractChatUser user) {
+        Presence presence = present.get(user);
+        if (presence == null) {
+            return -1;
+        }
+        return System.currentTimeMillis() - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - presence.lastSeen);
+    }
+
+    /**
+     * Retrieves the tracked users, i.e. those online.
+     *
+     * @return a live, unmodifiable view of the online users.
+     */
+    public Set<AbstractChatUser> getOnlineUsers() {
+        return Collections.unmodifiableSet(present.keySet());
+    }
+
+    /**
+     * Retrieves the amount of tracked users.
+     *
+     * @return the amount of online users.
+     */
+    public int getOnlineCount() {
+        return present.size();
+    }
+
+    /**
+     * Retrieves the amount of users evicted for being idle.
+     *
+     * @return the amount of evicted users.
+     */
+    public long getEvicted() {
+        return evicted;
+    }
+
+    /**
+     * Processes every tick that's due, then evicts the idle users found.
+     */
+    @Override
+    public void run() {
+        List<Presence> idle = new ArrayList<>();
+        synchronized (this) {
+            long due = (System.nanoTime() - start) / tickDuration;
+            for (; tick <= due; tick++) {
+                expire(wheel.get((int) tick & (wheel.size() - 1)), idle);
+            }
+        }
+        // unregistering notifies everyone, so it's done without holding the wheel.
+        long count = 0;
+        for (Presence presence : idle) {
+            // the user may have left on its own, and even joined again, in the meantime: only the session found idle
+            // is evicted.
+            if (room.evict(presence.user, () -> stillIdle(presence))) {
+                count++;
+            }
+        }
+        evicted += count;
+    }
+
+    /**
+     * Checks whether a user found idle is still idle, right before it's evicted. Runs under the user's lock stripe, so
+     * the user can't leave nor join meanwhile.
+     *
+     * @param presence the presence found idle.
+     * @return true if the presence's no longer tracked and the user should be evicted, false if the user left on its own
+     * or was seen since it was found idle, in which case it's tracked again.
+     */
+    private boolean stillIdle(Presence presence) {
+        if (!present.remove(presence.user, presence)) {
+            return false;
+        }
+        presence.state = Presence.EVICTING;
+        long deadline = tickOf(presence.lastSeen + timeout);
+        if (deadline <= tickOf(System.nanoTime())) {
+            presence.state = Presence.EVICTED;
+            return true;
+        }
+        present.put(presence.user, presence);
+        synchronized (this) {
+            presence.removed = false;
+            schedule(presence, deadline);
+        }
+        presence.state = Presence.TRACKED;
+        return false;
+    }
+
+    /**
+     * Visits the current tick's bucket. Must hold the tracker's monitor.
+     *
+     * @param bucket the bucket.
+     * @param idle   where the presences whose deadline has passed are added.
+     */
+    private void expire(ArrayDeque<Presence> bucket, List<Presence> idle) {
+        for (int remaining = bucket.size(); remaining > 0; remaining--) {
+            Presence presence = bucket.poll();
+            if (presence.removed) {
+                continue;
+            }
+            long deadline = tickOf(presence.lastSeen + timeout);
+            if (deadline <= tick) {
+                presence.removed = true;
+                idle.add(presence);
+            } else {
+                schedule(presence, deadline);
+            }
+        }
+    }
+
+    /**
+     * Puts a user's presence in the bucket of its deadline. Must hold the tracker's monitor.
+     *
+     * @param presence the user's presence.
+     * @param deadline the tick the user's deadline falls in.
+     */
+    private void schedule(Presence presence, long deadline) {
+        // deadlines further than one turn away come up early and are simply rescheduled.
+        wheel.get((int) Math.max(deadline, tick) & (wheel.size() - 1)).add(presence);
+    }
+
+    /**
+     * Computes the tick a time falls in.
+     *
+     * @param time a time, as given by {@link System#nanoTime()}.
+     * @return the time's tick.
+     */
+    private long tickOf(long time) {
+        return (time - start) / tickDuration;
+    }
+
+    /**
+     * A tracked user's presence.
+     */
+    private static final class Presence {
+        /**
+         * The user.
+         */
+        final AbstractChatUser user;
+        /**
+         * When the user was last seen, as given by {@link System#nanoTime()}.
+         */
+        volatile long lastSeen;
+        /**
+         * State of a presence that's tracked, or was found idle and is still tracked.
+         */
+        static final int TRACKED = 0;
+        /**
+         * State of a presence found idle whose last heartbeat is being checked before it's evicted.
+         */
+        static final int EVICTING = 1;
+        /**
+         * State of a presence whose user has been evicted.
+         */
+        static final int EVICTED = 2;
+        /**
+         * Whether the user's no longer in the wheel, guarded by the tracker's monitor once the user's in the wheel.
+         */
+        volatile boolean removed;
+        /**
+         * Whether the user's being or has been evicted, see {@link #TRACKED}, {@link #EVICTING} and {@link #EVICTED}.
+         */
+        volatile int state;
+
+        Presence(AbstractChatUser user, long lastSeen) {
+            this.user = user;
+            this.lastSeen = lastSeen;
+        }
+    }
+}
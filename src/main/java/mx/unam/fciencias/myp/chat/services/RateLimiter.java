@@ -0,0 +1,149 @@
+package mx.unam.fciencias.myp.chat.services;
+
+import mx.unam.fciencias.myp.chat.models.AbstractChatUser;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>Admission control of a room's messages, see
+ * {@link ChatRoom#limitRate(double, int, double, int, AdmissionPolicy, long, TimeUnit)}. Every user has a token bucket
+ * and so does the room, so a single flooding user runs out of tokens long before it can multiply its load by the
+ * room's size, and many users together can't exceed the room's rate either.</p>
+ * <p>A message is admitted if both its sender's bucket and the room's have a token; otherwise it's rejected or, with
+ * {@link AdmissionPolicy#DELAY}, its sender waits for the tokens. Admission takes no lock.</p>
+ *
+ * @author Luis Daniel Aragon Bermudez 416041271
+ */
+public class RateLimiter {
+    /**
+     * Messages every user may send per second.
+     */
+    private final double userRate;
+    /**
+     * Messages every user may send at once.
+     */
+    private final int userBurst;
+    /**
+     * The room's bucket.
+     */
+    private final TokenBucket room;
+    /**
+     * What happens to messages over the limits.
+     */
+    private final AdmissionPolicy policy;
+    /**
+     * Longest time a sender may wait for tokens, in nanoseconds, or zero when messages are rejected right away.
+     */
+    private final long maxDelay;
+    /**
+     * Every user's bucket.
+     */
+    private final ConcurrentHashMap<AbstractChatUser, TokenBucket> users = new ConcurrentHashMap<>();
+    /**
+     * Amount of messages rejected.
+     */
+    private final LongAdder rejected = new LongAdder();
+    /**
+     * Amount of messages admitted after waiting for tokens.
+     */
+    private final LongAdder delayed = new LongAdder();
+
+    /**
+     * Builds a limiter.
+     *
+     * @param userRate  messages every user may send per second.
+     * @param userBurst messages every user may send at once.
+     * @param roomRate  messages the room accepts per second.
+     * @param roomBurst messages the room accepts at once.
+     * @param policy    what happens to messages over the limits.
+     * @param maxDelay  longest time a sender may wait for tokens, if the policy lets it wait at all.
+     * @param unit      the delay's unit.
+     */
+    RateLimiter(double userRate, int userBurst, double roomRate, int roomBurst, AdmissionPolicy policy, long maxDelay,
+                TimeUnit unit) {
+        if (policy == null || unit == null)
+            throw new IllegalArgumentException("Policy and unit can't be null.");
+        if (maxDelay < 0)
+            throw new IllegalArgumentException(String.format("Invalid delay: %d", maxDelay));
+        if (!(userRate > 0) || userBurst < 1)
+            throw new IllegalArgumentException(String.format("Invalid user rate or burst: %f, %d", userRate, userBurst));
+        this.room = new TokenBucket(roomRate, roomBurst);
+        this.userRate = userRate;
+        this.userBurst = userBurst;
+        this.policy = policy;
+        long wait = policy.maxWait(unit.toNanos(maxDelay));
+        if (wait < 0)
+            throw new IllegalArgumentException(String.format("Invalid wait: %d", wait));
+        this.maxDelay = wait;
+    }
+
+    /**
+     * Takes a token from a user's bucket and one from the room's.
+     *
+     * @param user the message's sender.
+     * @return how long the sender must wait before its message is accepted, zero if it can be accepted right away, or
+     * -1 if the message is rejected.
+     */
+    long admit(AbstractChatUser user) {
+        long now = System.nanoTime();
+        TokenBucket bucket = users.get(user);
+        if (bucket == null) {
+            bucket = users.computeIfAbsent(user, u -> new TokenBucket(userRate, userBurst));
+        }
+        long userWait = bucket.reserve(now, maxDelay);
+        if (userWait < 0) {
+            rejected.increment();
+            return -1;
+        }
+        long roomWait = room.reserve(now, maxDelay);
+        if (roomWait < 0) {
+            // the message isn't sent, so it shouldn't count against its sender.
+            bucket.refund();
+            rejected.increment();
+            return -1;
+        }
+        long wait = Math.max(userWait, roomWait);
+        if (wait > 0) {
+            delayed.increment();
+        }
+        return wait;
+    }
+
+    /**
+     * Forgets a user's bucket once it leaves the room.
+     *
+     * @param user the user.
+     */
+    void forget(AbstractChatUser user) {
+        users.remove(user);
+    }
+
+    /**
+     * Retrieves what happens to messages over the limits.
+     *
+     * @return the limiter's policy.
+     */
+    public AdmissionPolicy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * Retrieves the amount of messages rejected for being over the limits.
+     *
+     * @return the amount of rejected messages.
+     */
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    /**
+     * Retrieves the amount of messages whose senders had to wait for tokens.
+     *
+     * @return the amount of delayed messages.
+     */
+    public long getDelayed() {
+        return delayed.sum();
+    }
+}
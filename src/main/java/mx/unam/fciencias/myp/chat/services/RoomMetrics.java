@@ -0,0 +1,214 @@
+package mx.unam.fciencias.myp.chat.services;
+
+import mx.unam.fciencias.myp.chat.models.LatencyHistogram;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>Measurements of a single room: how many notifications it accepts and rejects, how long accepting them takes and
+ * how many users each one reaches, plus gauges of its users, logs, history and queues.</p>
+ * <p>Every room keeps its metrics; recording only takes lock-free counters, so they're always on. Use
+ * {@link #register()} to expose them through JMX.</p>
+ *
+ * @author Luis Daniel Aragon Bermudez 416041271
+ */
+public class RoomMetrics implements RoomMetricsMXBean {
+    /**
+     * Domain of the rooms' JMX names.
+     */
+    public static final String DOMAIN = "mx.unam.fciencias.myp.chat";
+    /**
+     * The measured room.
+     */
+    private final ChatRoom room;
+    /**
+     * Amount of notifications accepted.
+     */
+    private final LongAdder accepted = new LongAdder();
+    /**
+     * Amount of messages rejected.
+     */
+    private final LongAdder rejected = new LongAdder();
+    /**
+     * Amount of recipients of every notification.
+     */
+    private final LongAdder recipients = new LongAdder();
+    /**
+     * Amount of entries in the room's logs.
+     */
+    private final LongAdder logEntries = new LongAdder();
+    /**
+     * Time spent accepting each notification.
+     */
+    private final LatencyHistogram acceptTimes = new LatencyHistogram();
+    /**
+     * Amount of recipients of each notification.
+     */
+    private final LatencyHistogram fanOut = new LatencyHistogram();
+
+    /**
+     * Builds a room's metrics.
+     *
+     * @param room the measured room.
+     */
+    RoomMetrics(ChatRoom room) {
+        this.room = room;
+    }
+
+    /**
+     * Records an accepted notification.
+     *
+     * @param start      when the room started accepting it, as given by {@link System#nanoTime()}.
+     * @param end        when the room was done.
+     * @param recipients the amount of users it was handed to.
+     */
+    void accepted(long start, long end, int recipients) {
+        accepted.increment();
+        this.recipients.add(recipients);
+        acceptTimes.record(end - start);
+        fanOut.record(recipients);
+    }
+
+    /**
+     * Records a rejected message.
+     */
+    void rejected() {
+        rejected.increment();
+    }
+
+    /**
+     * Records a new entry in the room's logs.
+     */
+    void logged() {
+        logEntries.increment();
+    }
+
+    /**
+     * Retrieves the histogram of the time the room spent accepting each notification, dispatching included. With an
+     * asynchronous dispatcher that's the time to enqueue it for every recipient.
+     *
+     * @return the accept time histogram, in nanoseconds.
+     */
+    public LatencyHistogram getAcceptTimes() {
+        return acceptTimes;
+    }
+
+    /**
+     * Retrieves the histogram of the amount of recipients of each notification.
+     *
+     * @return the fan-out histogram.
+     */
+    public LatencyHistogram getFanOut() {
+        return fanOut;
+    }
+
+    /**
+     * Registers these metrics with the platform's MBean server.
+     *
+     * @return the name they were registered under.
+     * @throws JMException if they couldn't be registered, e.g. because another room with the same name was.
+     */
+    public ObjectName register() throws JMException {
+        ObjectName name = getObjectName();
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+        return name;
+    }
+
+    /**
+     * Unregisters these metrics from the platform's MBean server.
+     *
+     * @throws JMException if they weren't registered.
+     */
+    public void unregister() throws JMException {
+        ManagementFactory.getPlatformMBeanServer().unregisterMBean(getObjectName());
+    }
+
+    /**
+     * Builds the name these metrics are registered under.
+     *
+     * @return the room's JMX name.
+     * @throws JMException if the room's name can't be part of a JMX name.
+     */
+    public ObjectName getObjectName() throws JMException {
+        return new ObjectName(DOMAIN + ":type=ChatRoom,name=" + ObjectName.quote(room.getName()));
+    }
+
+    @Override
+    public long getAccepted() {
+        return accepted.sum();
+    }
+
+    @Override
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    @Override
+    public long getRecipients() {
+        return recipients.sum();
+    }
+
+    @Override
+    public long getAcceptNanosP50() {
+        return acceptTimes.getPercentile(50);
+    }
+
+    @Override
+    public long getAcceptNanosP99() {
+        return acceptTimes.getPercentile(99);
+    }
+
+    @Override
+    public long getAcceptNanosMax() {
+        return acceptTimes.getMax();
+    }
+
+    @Override
+    public int getOnlineUsers() {
+        return room.getOnlineCount();
+    }
+
+    @Override
+    public long getLogEntries() {
+        return logEntries.sum();
+    }
+
+    @Override
+    public long getHistoryEntries() {
+        return room.getHistory().size();
+    }
+
+    @Override
+    public long getHistoryBytes() {
+        return room.getHistory().getBytes();
+    }
+
+    @Override
+    public int getEventLogBacklog() {
+        EventLog log = room.getEventLog();
+        return log == null ? 0 : log.getBacklog();
+    }
+
+    @Override
+    public long getSequencerLag() {
+        Sequencer sequencer = room.getSequencer();
+        return sequencer == null ? 0 : sequencer.getLag();
+    }
+
+    @Override
+    public String toString() {
+        String separator = System.lineSeparator();
+        return room.getName() + ": online=" + getOnlineUsers()
+                + " accepted=" + getAccepted()
+                + " rejected=" + getRejected()
+                + " logs=" + getLogEntries()
+                + " history=" + getHistoryEntries() + " (" + getHistoryBytes() + " bytes)"
+                + " event-log-backlog=" + getEventLogBacklog()
+                + " sequencer-lag=" + getSequencerLag()
+                + separator + "  accept (ns): " + acceptTimes
+                + separator + "  recipients: " + fanOut;
+    }
+}
@@ -0,0 +1,70 @@
+package mx.unam.fciencias.myp.chat.services;
+
+/**
+ * Management interface of {@link RoomMetrics}. Times are in nanoseconds.
+ *
+ * @author Luis Daniel Aragon Bermudez 416041271
+ */
+public interface RoomMetricsMXBean {
+    /**
+     * @return the amount of notifications the room accepted.
+     */
+    long getAccepted();
+
+    /**
+     * @return the amount of messages the room rejected because their senders or recipients were offline, or because
+     * they exceeded the room's rate limits.
+     */
+    long getRejected();
+
+    /**
+     * @return the amount of recipients the room's notifications were handed to.
+     */
+    long getRecipients();
+
+    /**
+     * @return the median time the room spent accepting a notification, dispatching included.
+     */
+    long getAcceptNanosP50();
+
+    /**
+     * @return the 99th percentile of the time the room spent accepting a notification, dispatching included.
+     */
+    long getAcceptNanosP99();
+
+    /**
+     * @return the longest time the room spent accepting a notification, dispatching included.
+     */
+    long getAcceptNanosMax();
+
+    /**
+     * @return the amount of online users.
+     */
+    int getOnlineUsers();
+
+    /**
+     * @return the amount of entries in the room's logs.
+     */
+    long getLogEntries();
+
+    /**
+     * @return the amount of notifications retained by the room's history.
+     */
+    long getHistoryEntries();
+
+    /**
+     * @return the estimated size of the room's history, in bytes.
+     */
+    long getHistoryBytes();
+
+    /**
+     * @return the amount of notifications waiting to be persisted, zero if the room has no event log.
+     */
+    int getEventLogBacklog();
+
+    /**
+     * @return the amount of notifications the slowest sequencer stage still has to process, zero if the room isn't
+     * sequenced.
+     */
+    long getSequencerLag();
+}
@@ -0,0 +1,437 @@
+package mx.unam.fciencias.myp.chat.services;
+
+import mx.unam.fciencias.myp.chat.models.AbstractChatUser;
+import mx.unam.fciencias.myp.chat.models.ChatNotification;
+import mx.unam.fciencias.myp.chat.models.NotificationCodec;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * <p>A node's replica of a room that spans a cluster, see {@link ClusterNode}.</p>
+ * <p>Notifications travel as payloads laid out as the origin node's id, the notification's number within that node
+ * (zero for notifications made up by a room's owner), its type, the origin's id, username and locale id, the
+ * recipient's node id (empty if there's none), id and username, the notification's creation time and its message.
+ * Numbers are varints and strings are written by {@link NotificationCodec#putString(ByteBuffer, CharSequence)}.</p>
+ *
+ * @author Luis Daniel Aragon Bermudez 416041271
+ */
+final class RoomReplica {
+    /**
+     * Screen of the users connected to other nodes, which are never delivered to.
+     */
+    private static final PrintStream NOWHERE = new PrintStream(new OutputStream() {
+        @Override
+        public void write(int b) {
+        }
+    });
+    /**
+     * The node hosting the replica.
+     */
+    private final ClusterNode node;
+    /**
+     * The replicated room.
+     */
+    private final ChatRoom room;
+    /**
+     * Registry that holds the locale packs of users connected to other nodes.
+     */
+    private final LocaleRegistry registry;
+    /**
+     * Maximum amount of retained payloads.
+     */
+    private final int capacity;
+    /**
+     * Payloads applied lately, kept to help other nodes catch up. Oldest first.
+     */
+    private final ArrayDeque<byte[]> retained = new ArrayDeque<>();
+    /**
+     * Sequence number of the oldest retained payload.
+     */
+    private long firstRetained;
+    /**
+     * Sequence number of the next notification to apply.
+     */
+    private long expected;
+    /**
+     * Payloads received ahead of their turn, indexed by sequence number.
+     */
+    private final TreeMap<Long, byte[]> early = new TreeMap<>();
+    /**
+     * Amount of notifications created by this node's users.
+     */
+    private long submitted;
+    /**
+     * Payloads created by this node's users that haven't been applied yet, indexed by their number within the node.
+     */
+    private final LinkedHashMap<Long, byte[]> pending = new LinkedHashMap<>();
+    /**
+     * Number of the last applied notification of every node, indexed by node id.
+     */
+    private final HashMap<String, Long> lastApplied = new HashMap<>();
+    /**
+     * This node's users that joined the room, indexed by id.
+     */
+    private final ConcurrentHashMap<Integer, AbstractChatUser> locals = new ConcurrentHashMap<>();
+    /**
+     * Stand-ins for the users connected to other nodes, indexed by node and user id.
+     */
+    private final HashMap<String, RemoteUser> remotes = new HashMap<>();
+    /**
+     * The cluster's nodes when the replica last heard about them.
+     */
+    private Set<String> nodes = Collections.emptySet();
+    /**
+     * The room owner's id.
+     */
+    private volatile String owner;
+
+    /**
+     * Builds a replica.
+     *
+     * @param node     the node hosting the replica.
+     * @param room     the replicated room.
+     * @param registry registry that holds the locale packs of users connected to other nodes.
+     * @param capacity maximum amount of retained payloads.
+     */
+    RoomReplica(ClusterNode node, ChatRoom room, LocaleRegistry registry, int capacity) {
+        this.node = node;
+        this.room = room;
+        this.registry = registry;
+        this.capacity = capacity;
+        this.owner = node.ownerOf(room.getName());
+    }
+
+    /**
+     * Forwards a notification created by one of this node's users to the room's owner, or orders it right away if
+     * this node's the owner.
+     *
+     * @param notification the notification.
+     */
+    synchronized void submit(ChatNotification notification) {
+        if (notification.getType() == ChatNotification.NEW_USER) {
+            locals.put(notification.getOrigin().getId(), notification.getOrigin());
+        }
+        long number = ++submitted;
+        byte[] payload = encode(number, notification);
+        if (owner.equals(node.getId())) {
+            sequence(payload);
+        } else {
+            pending.put(number, payload);
+            node.send(owner, frame(ClusterNode.SUBMIT, payload, -1));
+        }
+    }
+
+    /**
+     * Handles a frame addressed to the replica.
+     *
+     * @param kind  the frame's kind.
+     * @param from  the sender's id.
+     * @param frame the rest of the frame.
+     */
+    synchronized void receive(byte kind, String from, ByteBuffer frame) {
+        switch (kind) {
+            case ClusterNode.SUBMIT:
+                if (owner.equals(node.getId())) {
+                    sequence(remaining(frame));
+                } else {
+                    // ownership changed meanwhile, the sender will hear about it too.
+                    node.send(owner, frame(ClusterNode.SUBMIT, remaining(frame), -1));
+                }
+                break;
+            case ClusterNode.SEQUENCED:
+                long sequence = NotificationCodec.getVarint(frame);
+                if (sequence > expected) {
+                    early.put(sequence, remaining(frame));
+                } else if (sequence == expected) {
+                    apply(sequence, remaining(frame));
+                    applyEarly();
+                }
+                // older ones are duplicates.
+                break;
+            case ClusterNode.SYNC:
+                long since = NotificationCodec.getVarint(frame);
+                node.send(from, frame(ClusterNode.SYNC_FROM, new byte[0], firstRetained));
+                long next = firstRetained;
+                for (byte[] payload : retained) {
+                    if (next >= since) {
+                        node.send(from, frame(ClusterNode.SEQUENCED, payload, next));
+                    }
+                    next++;
+                }
+                break;
+            case ClusterNode.SYNC_FROM:
+                long firstAvailable = NotificationCodec.getVarint(frame);
+                if (expected < firstAvailable) {
+                    // the notifications in between are lost to this node.
+                    early.headMap(firstAvailable).clear();
+                    expected = firstAvailable;
+                    applyEarly();
+                }
+                break;
+            default:
+                throw new IllegalArgumentException(String.format("Invalid frame kind: %d", kind));
+        }
+    }
+
+    /**
+     * Reacts to a change in the cluster's membership: the room may change hands, and the users connected to nodes
+     * that left have to leave the room too.
+     *
+     * @param current the cluster's nodes.
+     */
+    synchronized void nodesChanged(Set<String> current) {
+        Set<String> previous = nodes;
+        nodes = current;
+        owner = node.ownerOf(room.getName(), current);
+        if (owner.equals(node.getId())) {
+            List<RemoteUser> departed = new ArrayList<>();
+            for (RemoteUser user : remotes.values()) {
+                if (previous.contains(user.node) && !current.contains(user.node) && room.isOnline(user)) {
+                    departed.add(user);
+                }
+            }
+            for (RemoteUser user : departed) {
+                sequence(encode(0, new ChatNotification(user, String.format("%s left", user.getUsername()),
+                        ChatNotification.USER_LEFT)));
+            }
+            for (byte[] payload : new ArrayList<>(pending.values())) {
+                sequence(payload);
+            }
+        } else {
+            node.send(owner, frame(ClusterNode.SYNC, new byte[0], expected));
+            for (byte[] payload : pending.values()) {
+                node.send(owner, frame(ClusterNode.SUBMIT, payload, -1));
+            }
+        }
+    }
+
+    /**
+     * Puts a notification in the room's order, applies it and sends it to every other node. Only called on the owner.
+     *
+     * @param payload the notification's payload.
+     */
+    private void sequence(byte[] payload) {
+        ByteBuffer buffer = ByteBuffer.wrap(payload);
+        String origin = NotificationCodec.getString(buffer);
+        long number = NotificationCodec.getVarint(buffer);
+        if (number > 0 && number <= lastApplied.getOrDefault(origin, 0L)) {
+            return;
+        }
+        long sequence = expected;
+        apply(sequence, payload);
+        for (String peer : nodes) {
+            if (!peer.equals(node.getId())) {
+                node.send(peer, frame(ClusterNode.SEQUENCED, payload, sequence));
+            }
+        }
+    }
+
+    /**
+     * Applies the next notification in the room's order.
+     *
+     * @param sequence the notification's sequence number.
+     * @param payload  the notification's payload.
+     */
+    private void apply(long sequence, byte[] payload) {
+        ByteBuffer buffer = ByteBuffer.wrap(payload);
+        String originNode = NotificationCodec.getString(buffer);
+        long number = NotificationCodec.getVarint(buffer);
+        int type = (int) NotificationCodec.getVarint(buffer);
+        int originId = (int) NotificationCodec.getVarint(buffer);
+        String username = NotificationCodec.getString(buffer);
+        String locale = NotificationCodec.getString(buffer);
+        String recipientNode = NotificationCodec.getString(buffer);
+        int recipientId = (int) NotificationCodec.getVarint(buffer);
+        String recipientName = NotificationCodec.getString(buffer);
+        long timestamp = NotificationCodec.getVarint(buffer);
+        String message = NotificationCodec.getString(buffer);
+        if (number > 0) {
+            lastApplied.merge(originNode, number, Math::max);
+            if (originNode.equals(node.getId())) {
+                pending.remove(number);
+            }
+        }
+        AbstractChatUser origin = userOf(originNode, originId, username, locale);
+        AbstractChatUser recipient = recipientNode.isEmpty()
+                ? null
+                : userOf(recipientNode, recipientId, recipientName, "");
+        if (retained.isEmpty()) {
+            firstRetained = sequence;
+        }
+        retained.addLast(payload);
+        if (retained.size() > capacity) {
+            retained.removeFirst();
+            firstRetained++;
+        }
+        expected = sequence + 1;
+        room.applyReplicated(new ChatNotification(origin, message, type, recipient, timestamp), number == 0);
+        if (type == ChatNotification.USER_LEFT) {
+            if (origin instanceof RemoteUser) {
+                remotes.remove(originNode + '#' + originId);
+            } else {
+                locals.remove(originId);
+            }
+        }
+    }
+
+    /**
+     * Applies the payloads received ahead of their turn whose turn has come.
+     */
+    private void applyEarly() {
+        for (byte[] next = early.remove(expected); next != null; next = early.remove(expected)) {
+            apply(expected, next);
+        }
+    }
+
+    /**
+     * Finds the user a payload refers to, building a stand-in for users connected to other nodes.
+     *
+     * @param nodeId   the id of the node the user's connected to.
+     * @param id       the user's id within its node.
+     * @param username the user's username.
+     * @param locale   the user's locale id, empty if unknown.
+     * @return the user.
+     */
+    private AbstractChatUser userOf(String nodeId, int id, String username, String locale) {
+        if (nodeId.equals(node.getId())) {
+            AbstractChatUser local = locals.get(id);
+            if (local != null) {
+                return local;
+            }
+        }
+        return remotes.computeIfAbsent(nodeId + '#' + id, key -> new RemoteUser(username, registry,
+                locale.isEmpty() || !registry.getLocaleIds().contains(locale) ? SnapshotStore.DEFAULT_LOCALE : locale,
+                nodeId, id));
+    }
+
+    /**
+     * Encodes a notification as a payload.
+     *
+     * @param number       the notification's number within its origin node, zero if the owner made it up.
+     * @param notification the notification.
+     * @return the payload.
+     */
+    private byte[] encode(long number, ChatNotification notification) {
+        AbstractChatUser origin = notification.getOrigin();
+        AbstractChatUser recipient = notification.getRecipient();
+        String locale = origin.getLocaleId();
+        String message = notification.getMessage();
+        ByteBuffer buffer = ByteBuffer.allocate(64
+                + NotificationCodec.utf8Length(nodeOf(origin))
+                + NotificationCodec.utf8Length(origin.getUsername())
+                + NotificationCodec.utf8Length(locale)
+                + (recipient == null
+                ? 0
+                : NotificationCodec.utf8Length(nodeOf(recipient)) + NotificationCodec.utf8Length(recipient.getUsername()))
+                + NotificationCodec.utf8Length(message));
+        NotificationCodec.putString(buffer, nodeOf(origin));
+        NotificationCodec.putVarint(buffer, number);
+        NotificationCodec.putVarint(buffer, notification.getType());
+        NotificationCodec.putVarint(buffer, idOf(origin));
+        NotificationCodec.putString(buffer, origin.getUsername());
+        NotificationCodec.putString(buffer, locale);
+        NotificationCodec.putString(buffer, recipient == null ? null : nodeOf(recipient));
+        NotificationCodec.putVarint(buffer, recipient == null ? 0 : idOf(recipient));
+        NotificationCodec.putString(buffer, recipient == null ? null : recipient.getUsername());
+        NotificationCodec.putVarint(buffer, notification.getTimestamp());
+        NotificationCodec.putString(buffer, message);
+        byte[] payload = new byte[buffer.position()];
+        buffer.flip();
+        buffer.get(payload);
+        return payload;
+    }
+
+    /**
+     * Builds a frame.
+     *
+     * @param kind     the frame's kind.
+     * @param payload  the frame's payload.
+     * @param sequence the sequence number that precedes the payload, or -1 if there's none.
+     * @return the frame, ready to be read.
+     */
+    private ByteBuffer frame(byte kind, byte[] payload, long sequence) {
+        int name = NotificationCodec.utf8Length(room.getName());
+        ByteBuffer frame = ByteBuffer.allocate(1 + NotificationCodec.varintLength(name) + name
+                + NotificationCodec.varintLength(Math.max(sequence, 0)) + payload.length);
+        frame.put(kind);
+        NotificationCodec.putString(frame, room.getName());
+        if (sequence >= 0) {
+            NotificationCodec.putVarint(frame, sequence);
+        }
+        frame.put(payload);
+        frame.flip();
+        return frame;
+    }
+
+    /**
+     * Copies the rest of a frame.
+     *
+     * @param frame the frame.
+     * @return the bytes from the frame's position to its limit.
+     */
+    private static byte[] remaining(ByteBuffer frame) {
+        byte[] bytes = new byte[frame.remaining()];
+        frame.get(bytes);
+        return bytes;
+    }
+
+    /**
+     * Retrieves the id of the node a user's connected to.
+     *
+     * @param user the user.
+     * @return the node's id.
+     */
+    private String nodeOf(AbstractChatUser user) {
+        return user instanceof RemoteUser ? ((RemoteUser) user).node : node.getId();
+    }
+
+    /**
+     * Retrieves a user's id within the node it's connected to.
+     *
+     * @param user the user.
+     * @return the user's id within its node.
+     */
+    private static int idOf(AbstractChatUser user) {
+        return user instanceof RemoteUser ? ((RemoteUser) user).remoteId : user.getId();
+    }
+
+    /**
+     * Stand-in for a user connected to another node. The room never delivers to stand-ins, their own node does.
+     */
+    static final class RemoteUser extends LocalizedChatUser {
+        /**
+         * The id of the node the user's connected to.
+         */
+        private final String node;
+        /**
+         * The user's id within its node.
+         */
+        private final int remoteId;
+
+        /**
+         * Builds a stand-in.
+         *
+         * @param username the user's username.
+         * @param registry registry that holds the user's locale pack.
+         * @param locale   the user's locale id.
+         * @param node     the id of the node the user's connected to.
+         * @param remoteId the user's id within its node.
+         */
+        private RemoteUser(String username, LocaleRegistry registry, String locale, String node, int remoteId) {
+            super(username, NOWHERE, registry, locale);
+            this.node = node;
+            this.remoteId = remoteId;
+        }
+    }
+}
@@ -0,0 +1,654 @@
+package mx.unam.fciencias.myp.chat.services;
+
+import mx.unam.fciencias.myp.chat.models.AbstractChatUser;
+import mx.unam.fciencias.myp.chat.models.ChatNotification;
+import mx.unam.fciencias.myp.chat.models.RoomHistory;
+
+import java.io.Closeable;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.Consumer;
+
+/**
+ * <p>Inverted index over the messages in a room's history, see {@link ChatRoom#enableSearch()}.</p>
+ * <p>Every message is split into words, which are lower-cased according to the sender's locale and stripped of their
+ * diacritics, so that "Compañero" and "companero" match. The index keeps, for every word and every sender, the sorted
+ * sequence numbers of the messages that contain it or were sent by them, plus the creation time of every message, so
+ * queries leapfrog through those lists with binary searches instead of scanning the history.</p>
+ * <p>Indexing never slows the room down: the room only enqueues accepted notifications, and a dedicated indexer thread
+ * adds them to the index in sequence order. Queries run concurrently with the indexer and see every message indexed
+ * before they started. Entries evicted from the history drop out of the results and out of the index: every once in
+ * a while the indexer sweeps them off every word and sender, and forgets the words and senders left without any.</p>
+ * <p>Creation times don't always grow with sequence numbers: clocks get adjusted, and unsequenced rooms stamp
+ * notifications before they're ordered. Time ranges are matched against the latest creation time among a message and
+ * those before it, so a message stamped earlier than one before it counts as created at that one's time.</p>
+ *
+ * @author Luis Daniel Aragon Bermudez 416041271
+ */
+public class SearchIndex implements Closeable {
+    /**
+     * Placeholder enqueued to wake the indexer thread up when the index is closed.
+     */
+    private static final Pending WAKE_UP = new Pending(-1, null);
+    /**
+     * Least amount of notifications indexed between sweeps of evicted entries.
+     */
+    private static final int SWEEP_INTERVAL = 1024;
+    /**
+     * Java locales by locale id.
+     */
+    private static final ConcurrentHashMap<String, Locale> LOCALES = new ConcurrentHashMap<>();
+    /**
+     * The indexed history.
+     */
+    private final RoomHistory history;
+    /**
+     * Notifications waiting to be indexed.
+     */
+    private final LinkedBlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+    /**
+     * Sequence numbers of the messages that contain each word, indexed by normalized word.
+     */
+    private final ConcurrentHashMap<String, Postings> words = new ConcurrentHashMap<>();
+    /**
+     * Sequence numbers of the messages sent by each user, indexed by username.
+     */
+    private final ConcurrentHashMap<String, Postings> senders = new ConcurrentHashMap<>();
+    /**
+     * Sequence numbers and creation times of every indexed message, times made non-decreasing.
+     */
+    private final Postings timeline = new Postings(true);
+    /**
+     * The indexer thread.
+     */
+    private final Thread indexer;
+    /**
+     * Sequence number of the next notification to index. Only used by the indexer thread.
+     */
+    private long expected;
+    /**
+     * Amount of indexed notifications.
+     */
+    private volatile long indexed;
+    /**
+     * Amount of indexed notifications at which evicted entries are swept next. Only used by the indexer thread.
+     */
+    private long nextSweep = SWEEP_INTERVAL;
+    /**
+     * Sequence number of the oldest entry in the history when evicted entries were last swept. Only used by the indexer
+     * thread.
+     */
+    private long sweptFloor;
+    /**
+     * Whether the index has been closed.
+     */
+    private volatile boolean closed;
+
+    /**
+     * Builds an index and starts its indexer thread, which first indexes the messages already in the history.
+     *
+     * @param name    the room's name.
+     * @param history the room's history.
+     */
+    SearchIndex(String name, RoomHistory history) {
+        this.history = history;
+        long start = history.getNextSequence();
+        this.expected = history.getFirstSequence();
+        this.indexer = new Thread(() -> {
+            catchUp(start);
+            index();
+        }, name + "-search");
+        indexer.setDaemon(true);
+        indexer.start();
+    }
+
+    /**
+     * Enqueues a notification appended to the history to be indexed. Never blocks.
+     *
+     * @param sequence     the notification's sequence number in the history.
+     * @param notification the notification.
+     */
+    void add(long sequence, ChatNotification notification) {
+        if (!closed) {
+            queue.add(new Pending(sequence, notification));
+        }
+    }
+
+    /**
+     * <p>Finds the messages that match a query, newest first.</p>
+     * <p>Results are paginated: pass {@link Page#getNext()} as the next call's {@code before} to get the following
+     * page.</p>
+     *
+     * @param query  the query.
+     * @param before sequence number every result must come before, {@link Long#MAX_VALUE} for the first page.
+     * @param limit  the maximum amount of results.
+     * @return a page of results.
+     */
+    public Page search(SearchQuery query, long before, int limit) {
+        if (limit < 1)
+            throw new IllegalArgumentException(String.format("Invalid limit: %d", limit));
+        List<Run> runs = new ArrayList<>();
+        if (query.getText() != null) {
+            Set<String> terms = new LinkedHashSet<>();
+            tokenize(query.getText(), query.getLocaleId(), terms::add);
+            for (String term : terms) {
+                Postings postings = words.get(term);
+                if (postings == null) {
+                    return Page.EMPTY;
+                }
+                runs.add(postings.run);
+            }
+        }
+        if (query.getSender() != null) {
+            Postings postings = senders.get(query.getSender());
+            if (postings == null) {
+                return Page.EMPTY;
+            }
+            runs.add(postings.run);
+        }
+        Run times = timeline.run;
+        int timesSize = times.size;
+        long low = Math.max(history.getFirstSequence(),
+                at(times.sequences, times.timeLowerBound(timesSize, query.getSince()), timesSize, Long.MAX_VALUE));
+        long high = Math.min(before,
+                at(times.sequences, times.timeLowerBound(timesSize, query.getUntil()), timesSize, Long.MAX_VALUE));
+        if (runs.isEmpty()) {
+            runs.add(times);
+        }
+        int[] sizes = new int[runs.size()];
+        for (int i = 0; i < sizes.length; i++) {
+            sizes[i] = runs.get(i) == times ? timesSize : runs.get(i).size;
+        }
+        List<ChatNotification> results = new ArrayList<>(Math.min(limit, 64));
+        ChatNotification[] found = new ChatNotification[1];
+        AbstractChatUser viewer = query.getViewer();
+        // leapfrogs down the lists: a list that lacks the candidate lowers it to its own next element. Candidates only
+        // decrease, so every list keeps a cursor and gallops down from it.
+        int[] cursors = sizes.clone();
+        long candidate = high - 1;
+        while (candidate >= low) {
+            boolean agreed = true;
+            for (int r = 0; r < sizes.length; r++) {
+                Run run = runs.get(r);
+                int index = run.floor(cursors[r], candidate);
+                if (index < 0) {
+                    return new Page(results, -1);
+                }
+                cursors[r] = index + 1;
+                if (run.sequences[index] != candidate) {
+                    candidate = run.sequences[index];
+                    agreed = false;
+                }
+            }
+            if (!agreed) {
+                continue;
+            }
+            found[0] = null;
+            history.read(candidate, candidate + 1, 1, notification -> found[0] = notification);
+            if (found[0] != null && found[0].isVisibleTo(viewer)) {
+                results.add(found[0]);
+                if (results.size() == limit) {
+                    return new Page(results, candidate);
+                }
+            }
+            candidate--;
+        }
+        return new Page(results, -1);
+    }
+
+    /**
+     * Retrieves the amount of notifications indexed so far.
+     *
+     * @return the amount of indexed notifications.
+     */
+    public long getIndexed() {
+        return indexed;
+    }
+
+    /**
+     * Retrieves the amount of distinct words and senders indexed.
+     *
+     * @return the amount of words and senders with messages still in the history, plus those whose messages were
+     * evicted since the last sweep.
+     */
+    public int getTermCount() {
+        return words.size() + senders.size();
+    }
+
+    /**
+     * Retrieves the amount of notifications waiting to be indexed.
+     *
+     * @return the indexer's backlog.
+     */
+    public int getBacklog() {
+        return queue.size();
+    }
+
+    /**
+     * Stops the indexer thread. Queries still work on whatever was indexed.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        queue.add(WAKE_UP);
+        try {
+            indexer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Splits a text into normalized words: lower-cased according to a locale, without diacritics, and made of letters
+     * and digits only.
+     *
+     * @param text     the text.
+     * @param localeId the id of the locale the text's written in, or null.
+     * @param action   receives every word, in order.
+     */
+    public static void tokenize(String text, String localeId, Consumer<String> action) {
+        Locale locale = localeId == null ? Locale.ROOT : LOCALES.computeIfAbsent(localeId, Locale::forLanguageTag);
+        String decomposed = Normalizer.normalize(text.toLowerCase(locale), Normalizer.Form.NFD);
+        StringBuilder word = new StringBuilder();
+        for (int i = 0; i < decomposed.length(); i++) {
+            char c = decomposed.charAt(i);
+            if (Character.getType(c) == Character.NON_SPACING_MARK) {
+                continue;
+            }
+            if (Character.isLetterOrDigit(c)) {
+                word.append(c);
+            } else if (word.length() > 0) {
+                action.accept(word.toString());
+                word.setLength(0);
+            }
+        }
+        if (word.length() > 0) {
+            action.accept(word.toString());
+        }
+    }
+
+    /**
+     * Indexes the history's entries from the next one to index up to a sequence number. Used to index the messages
+     * that were already in the history when the index was built, and those whose notifications haven't been enqueued
+     * yet although later ones have.
+     *
+     * @param end sequence number after the last entry to index.
+     */
+    private void catchUp(long end) {
+        List<ChatNotification> page = new ArrayList<>(256);
+        while (expected < end && !closed) {
+            page.clear();
+            long next = history.read(expected, end, 256, page::add);
+            long first = next - page.size();
+            for (int i = 0; i < page.size(); i++) {
+                index(first + i, page.get(i));
+            }
+            // entries evicted meanwhile are skipped.
+            expected = page.isEmpty() ? end : next;
+        }
+    }
+
+    /**
+     * Indexer thread's main loop.
+     */
+    private void index() {
+        List<Pending> batch = new ArrayList<>();
+        while (!closed) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+            queue.drainTo(batch);
+            batch.sort(Comparator.comparingLong(pending -> pending.sequence));
+            for (Pending pending : batch) {
+                // older ones have already been read from the history.
+                if (pending != WAKE_UP && pending.sequence >= expected) {
+                    // every entry before it is already in the history, enqueued or not.
+                    catchUp(pending.sequence);
+                    index(pending.sequence, pending.notification);
+                    expected = pending.sequence + 1;
+                }
+            }
+            batch.clear();
+        }
+    }
+
+    /**
+     * Adds a notification to the index. Joins and departures aren't indexed.
+     *
+     * @param sequence     the notification's sequence number.
+     * @param notification the notification.
+     */
+    private void index(long sequence, ChatNotification notification) {
+        int type = notification.getType();
+        if (type != ChatNotification.NEW_USER && type != ChatNotification.USER_LEFT) {
+            long floor = history.getFirstSequence();
+            AbstractChatUser origin = notification.getOrigin();
+            senders.computeIfAbsent(origin.getUsername(), key -> new Postings(false)).add(sequence, 0, floor);
+            if (notification.getMessage() != null) {
+                tokenize(notification.getMessage(), origin.getLocaleId(), word ->
+                        words.computeIfAbsent(word, key -> new Postings(false)).add(sequence, 0, floor));
+            }
+            timeline.add(sequence, notification.getTimestamp(), floor);
+        }
+        indexed++;
+        if (indexed >= nextSweep) {
+            long floor = history.getFirstSequence();
+            if (floor > sweptFloor) {
+                sweep(words, floor);
+                sweep(senders, floor);
+                timeline.prune(floor);
+                sweptFloor = floor;
+            }
+            // sweeping visits every word, so it's done once enough notifications were indexed to pay for it.
+            nextSweep = indexed + Math.max(SWEEP_INTERVAL, words.size() + senders.size());
+        }
+    }
+
+    /**
+     * Drops the entries evicted from the history off every list of a map, and the lists left empty off the map.
+     *
+     * @param postings the map.
+     * @param floor    sequence number of the oldest entry still in the history.
+     */
+    private static void sweep(ConcurrentHashMap<String, Postings> postings, long floor) {
+        // only the indexer thread adds to the lists, so one left empty stays empty until it's removed.
+        postings.values().removeIf(list -> list.prune(floor));
+    }
+
+    /**
+     * Reads an element of a sorted array, or a default value if the index is past its end.
+     *
+     * @param sequences    the array.
+     * @param index        the index.
+     * @param size         the amount of valid elements.
+     * @param defaultValue the value for indexes past the end.
+     * @return the element, or the default value.
+     */
+    private static long at(long[] sequences, int index, int size, long defaultValue) {
+        return index < size ? sequences[index] : defaultValue;
+    }
+
+    /**
+     * A page of search results.
+     */
+    public static final class Page {
+        /**
+         * A page without results.
+         */
+        static final Page EMPTY = new Page(Collections.emptyList(), -1);
+        /**
+         * The results, newest first.
+         */
+        private final List<ChatNotification> results;
+        /**
+         * Sequence number to search before to get the next page, or -1 if there are no more results.
+         */
+        private final long next;
+
+        /**
+         * Builds a page.
+         *
+         * @param results the results, newest first.
+         * @param next    sequence number to search before to get the next page, or -1 if there are no more results.
+         */
+        Page(List<ChatNotification> results, long next) {
+            this.results = Collections.unmodifiableList(results);
+            this.next = next;
+        }
+
+        /**
+         * Retrieves the page's results.
+         *
+         * @return the results, newest first.
+         */
+        public List<ChatNotification> getResults() {
+            return results;
+        }
+
+        /**
+         * Retrieves where the next page starts.
+         *
+         * @return the sequence number to search before to get the next page, or -1 if there are no more results.
+         */
+        public long getNext() {
+            return next;
+        }
+
+        /**
+         * Checks whether there are more results after this page.
+         *
+         * @return true if there may be more results.
+         */
+        public boolean hasNext() {
+            return next >= 0;
+        }
+    }
+
+    /**
+     * A growing, sorted list of sequence numbers, optionally with their creation times. Only the indexer thread adds to
+     * it, readers take its current {@link Run}.
+     */
+    private static final class Postings {
+        /**
+         * Whether creation times are kept.
+         */
+        private final boolean timed;
+        /**
+         * Latest creation time added so far, which times earlier than it are raised to so that they never decrease.
+         */
+        private long latest = Long.MIN_VALUE;
+        /**
+         * The current run. Replaced as a whole whenever it's full.
+         */
+        private volatile Run run;
+
+        /**
+         * Builds an empty list.
+         *
+         * @param timed whether creation times are kept.
+         */
+        private Postings(boolean timed) {
+            this.timed = timed;
+            this.run = new Run(new long[4], timed ? new long[4] : null, 0);
+        }
+
+        /**
+         * Adds a sequence number, larger than every other one. Adding the last one again does nothing.
+         *
+         * @param sequence  the sequence number.
+         * @param timestamp its creation time, ignored unless times are kept. Times earlier than the latest one added
+         *                  are stored as that one.
+         * @param floor     sequence number of the oldest entry still in the history; older ones are dropped when the
+         *                  run's replaced.
+         */
+        private void add(long sequence, long timestamp, long floor) {
+            Run current = run;
+            int size = current.size;
+            if (size > 0 && current.sequences[size - 1] == sequence) {
+                return;
+            }
+            if (size == current.sequences.length) {
+                current = replace(current, size, current.lowerBound(size, floor));
+                size = current.size;
+            }
+            current.sequences[size] = sequence;
+            if (timed) {
+                latest = Math.max(latest, timestamp);
+                current.times[size] = latest;
+            }
+            // publishes the new element.
+            current.size = size + 1;
+        }
+
+        /**
+         * Drops the sequence numbers older than the history's oldest entry.
+         *
+         * @param floor sequence number of the oldest entry still in the history.
+         * @return true if no sequence number's left.
+         */
+        private boolean prune(long floor) {
+            Run current = run;
+            int size = current.size;
+            int kept = current.lowerBound(size, floor);
+            if (kept > 0) {
+                replace(current, size, kept);
+            }
+            return kept == size;
+        }
+
+        /**
+         * Replaces the current run with one that only holds its elements from an index on, with room to grow.
+         *
+         * @param current the current run.
+         * @param size    the current run's size.
+         * @param kept    index of the first element kept.
+         * @return the new run.
+         */
+        private Run replace(Run current, int size, int kept) {
+            int live = size - kept;
+            long[] sequences = new long[Math.max(4, live * 2)];
+            System.arraycopy(current.sequences, kept, sequences, 0, live);
+            long[] times = null;
+            if (timed) {
+                times = new long[sequences.length];
+                System.arraycopy(current.times, kept, times, 0, live);
+            }
+            Run replacement = new Run(sequences, times, live);
+            run = replacement;
+            return replacement;
+        }
+    }
+
+    /**
+     * Fixed-capacity storage of a {@link Postings}. Elements below its size never change.
+     */
+    private static final class Run {
+        /**
+         * Sorted sequence numbers.
+         */
+        private final long[] sequences;
+        /**
+         * Creation time of every sequence number, non-decreasing, or null if times aren't kept.
+         */
+        private final long[] times;
+        /**
+         * Amount of valid elements.
+         */
+        private volatile int size;
+
+        /**
+         * Builds a run.
+         *
+         * @param sequences sorted sequence numbers.
+         * @param times     creation time of every sequence number, or null.
+         * @param size      amount of valid elements.
+         */
+        private Run(long[] sequences, long[] times, int size) {
+            this.sequences = sequences;
+            this.times = times;
+            this.size = size;
+        }
+
+        /**
+         * Finds the first element that's not smaller than a sequence number.
+         *
+         * @param size     amount of elements to look at.
+         * @param sequence the sequence number.
+         * @return the element's index, or size if there's none.
+         */
+        private int lowerBound(int size, long sequence) {
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (sequences[middle] < sequence) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+
+        /**
+         * Finds the last element that's not larger than a sequence number, galloping down from an upper bound.
+         *
+         * @param upper    index after the last element to look at.
+         * @param sequence the sequence number.
+         * @return the element's index, or -1 if there's none.
+         */
+        private int floor(int upper, long sequence) {
+            int probe = upper - 1;
+            int step = 1;
+            while (probe >= 0 && sequences[probe] > sequence) {
+                upper = probe;
+                probe -= step;
+                step <<= 1;
+            }
+            int low = Math.max(probe, 0);
+            int high = upper;
+            // the answer's the element before the first one in [low, high) that's larger than the sequence number.
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (sequences[middle] <= sequence) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low - 1;
+        }
+
+        /**
+         * Finds the first element created at or after a time. Times never decrease, see
+         * {@link Postings#add(long, long, long)}.
+         *
+         * @param size amount of elements to look at.
+         * @param time the time.
+         * @return the element's index, or size if there's none.
+         */
+        private int timeLowerBound(int size, long time) {
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (times[middle] < time) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+
+    }
+
+    /**
+     * A notification waiting to be indexed.
+     */
+    private static final class Pending {
+        /**
+         * The notification's sequence number.
+         */
+        final long sequence;
+        /**
+         * The notification.
+         */
+        final ChatNotification notification;
+
+        Pending(long sequence, ChatNotification notification) {
+            this.sequence = sequence;
+            this.notification = notification;
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package mx.unam.fciencias.myp.chat.services;
+
+import mx.unam.fciencias.myp.chat.models.AbstractChatUser;
+
+/**
+ * <p>What to look for in a room's {@link SearchIndex}: messages containing every word of a text, sent by a user,
+ * within a time range, or any combination of those. Queries are immutable; every method returns a narrower copy.</p>
+ * <p>For example, the messages from "ana" containing "hola" sent during the last hour are
+ * {@code SearchQuery.containing("hola").from("ana").since(System.currentTimeMillis() - 3_600_000)}.</p>
+ *
+ * @author Luis Daniel Aragon Bermudez 416041271
+ */
+public final class SearchQuery {
+    /**
+     * Query that matches every message.
+     */
+    public static final SearchQuery ALL = new SearchQuery(null, null, null, Long.MIN_VALUE, Long.MAX_VALUE, null);
+    /**
+     * Words every result must contain, or null.
+     */
+    private final String text;
+    /**
+     * Id of the locale the text's written in, or null for the room's default normalization.
+     */
+    private final String localeId;
+    /**
+     * Username of the results' sender, or null.
+     */
+    private final String sender;
+    /**
+     * Earliest creation time of the results, in milliseconds since the epoch.
+     */
+    private final long since;
+    /**
+     * Latest creation time of the results, exclusive, in milliseconds since the epoch.
+     */
+    private final long until;
+    /**
+     * User whose direct messages may be part of the results, or null to leave every direct message out.
+     */
+    private final AbstractChatUser viewer;
+
+    /**
+     * Builds a query.
+     *
+     * @param text     words every result must contain, or null.
+     * @param localeId id of the locale the text's written in, or null.
+     * @param sender   username of the results' sender, or null.
+     * @param since    earliest creation time of the results.
+     * @param until    latest creation time of the results, exclusive.
+     * @param viewer   user whose direct messages may be part of the results, or null.
+     */
+    private SearchQuery(String text, String localeId, String sender, long since, long until, AbstractChatUser viewer) {
+        this.text = text;
+        this.localeId = localeId;
+        this.sender = sender;
+        this.since = since;
+        this.until = until;
+        this.viewer = viewer;
+    }
+
+    /**
+     * Builds a query for the messages that contain every word of a text, in any order.
+     *
+     * @param text the text.
+     * @return the query.
+     */
+    public static SearchQuery containing(String text) {
+        return ALL.and(text);
+    }
+
+    /**
+     * Narrows the query to the messages that also contain every word of a text.
+     *
+     * @param text the text.
+     * @return the narrower query.
+     */
+    public SearchQuery and(String text) {
+        if (text == null)
+            throw new IllegalArgumentException("Text can't be null.");
+        return new SearchQuery(this.text == null ? text : this.text + ' ' + text, localeId, sender, since, until,
+                viewer);
+    }
+
+    /**
+     * Normalizes the query's text according to a locale's rules, e.g. those of the user searching.
+     *
+     * @param localeId the locale's id, i.e. "es-MX".
+     * @return the query.
+     */
+    public SearchQuery in(String localeId) {
+        return new SearchQuery(text, localeId, sender, since, until, viewer);
+    }
+
+    /**
+     * Narrows the query to the messages sent by a user.
+     *
+     * @param username the user's username.
+     * @return the narrower query.
+     */
+    public SearchQuery from(String username) {
+        return new SearchQuery(text, localeId, username, since, until, viewer);
+    }
+
+    /**
+     * Narrows the query to the messages created at or after a time.
+     *
+     * @param since the time, in milliseconds since the epoch.
+     * @return the narrower query.
+     */
+    public SearchQuery since(long since) {
+        return new SearchQuery(text, localeId, sender, Math.max(this.since, since), until, viewer);
+    }
+
+    /**
+     * Narrows the query to the messages created before a time.
+     *
+     * @param until the time, in milliseconds since the epoch.
+     * @return the narrower query.
+     */
+    public SearchQuery until(long until) {
+        return new SearchQuery(text, localeId, sender, since, Math.min(this.until, until), viewer);
+    }
+
+    /**
+     * Lets the direct messages a user sent or received be part of the results.
+     *
+     * @param viewer the user.
+     * @return the query.
+     */
+    public SearchQuery visibleTo(AbstractChatUser viewer) {
+        return new SearchQuery(text, localeId, sender, since, until, viewer);
+    }
+
+    /**
+     * Retrieves the words every result must contain.
+     *
+     * @return the text, or null if the query doesn't look at the messages' text.
+     */
+    public String getText() {
+        return text;
+    }
+
+    /**
+     * Retrieves the id of the locale the query's text is written in.
+     *
+     * @return the locale's id, or null for the default normalization.
+     */
+    public String getLocaleId() {
+        return localeId;
+    }
+
+    /**
+     * Retrieves the username of the results' sender.
+     *
+     * @return the username, or null if the query doesn't look at the sender.
+     */
+    public String getSender() {
+        return sender;
+    }
+
+    /**
+     * Retrieves the earliest creation time of the results.
+     *
+     * @return the time, in milliseconds since the epoch.
+     */
+    public long getSince() {
+        return since;
+    }
+
+    /**
+     * Retrieves the latest creation time of the results, exclusive.
+     *
+     * @return the time, in milliseconds since the epoch.
+     */
+    public long getUntil() {
+        return until;
+    }
+
+    /**
+     * Retrieves the user whose direct messages may be part of the results.
+     *
+     * @return the user, or null if direct messages are left out.
+     */
+    public AbstractChatUser getViewer() {
+        return viewer;
+    }
+}
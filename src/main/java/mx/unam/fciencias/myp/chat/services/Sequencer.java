@@ -0,0 +1,349 @@
+package mx.unam.fciencias.myp.chat.services;
+
+import mx.unam.fciencias.myp.chat.models.AbstractChatUser;
+import mx.unam.fciencias.myp.chat.models.ChatNotification;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <p>Single ordering point for a room's notifications, built on a pre-allocated ring of reusable slots.</p>
+ * <p>Publishing claims the next sequence number with a single atomic increment, fills the slot and marks it as
+ * published, so publishers never take a lock (unless a {@link WaitStrategy#blocking()} stage has to be signalled) and
+ * only wait when the ring is full. Every accepted notification thus gets a monotonic sequence number that defines a
+ * total order. Publishers that hold a lock should {@link #awaitCapacity()} before taking it.</p>
+ * <p>Stages consume the ring on their own threads, each one following its own cursor and wait strategy. A stage can
+ * depend on other stages, in which case it never gets ahead of them.</p>
+ *
+ * @author Luis Daniel Aragon Bermudez 416041271
+ */
+public class Sequencer {
+    /**
+     * The ring's slots.
+     */
+    private final NotificationSlot[] slots;
+    /**
+     * Sequence number published in every slot, or -1 if it has never been published.
+     */
+    private final AtomicLongArray published;
+    /**
+     * Mask used to turn a sequence number into a slot index.
+     */
+    private final int mask;
+    /**
+     * Last sequence number claimed by a publisher.
+     */
+    private final AtomicLong claimed = new AtomicLong(-1);
+    /**
+     * The stages, in the order they were added.
+     */
+    private final List<Stage> stages = new ArrayList<>();
+    /**
+     * Cached lowest cursor among the stages, used to avoid scanning them on every publish.
+     */
+    private volatile long gatingCache = -1;
+    /**
+     * Whether the stages have been started.
+     */
+    private volatile boolean started;
+    /**
+     * Whether the stages have been told to stop.
+     */
+    private volatile boolean halted;
+
+    /**
+     * Builds a sequencer.
+     *
+     * @param size the amount of slots, must be a power of two.
+     */
+    public Sequencer(int size) {
+        if (size < 1 || Integer.bitCount(size) != 1)
+            throw new IllegalArgumentException(String.format("Ring size must be a power of two: %d", size));
+        this.slots = new NotificationSlot[size];
+        this.published = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            slots[i] = new NotificationSlot();
+            published.set(i, -1);
+        }
+        this.mask = size - 1;
+    }
+
+    /**
+     * Adds a stage. Stages must be added before the sequencer's started.
+     *
+     * @param name         the stage's name, used to name its thread.
+     * @param handler      what the stage does with every notification.
+     * @param waitStrategy how the stage waits for new notifications.
+     * @param dependencies stages that must process a notification before this one does.
+     * @return the stage.
+     */
+    public synchronized Stage addStage(String name, SlotHandler handler, WaitStrategy waitStrategy,
+                                       Stage... dependencies) {
+        if (started)
+            throw new IllegalStateException("Stages must be added before starting.");
+        Stage stage = new Stage(name, handler, waitStrategy, dependencies);
+        stages.add(stage);
+        return stage;
+    }
+
+    /**
+     * Starts every stage's thread.
+     */
+    public synchronized void start() {
+        if (started)
+            throw new IllegalStateException("Already started.");
+        started = true;
+        stages.forEach(stage -> stage.thread.start());
+    }
+
+    /**
+     * Stops every stage once it has processed everything published so far.
+     *
+     * @throws InterruptedException if interrupted while waiting for the stages.
+     */
+    public void halt() throws InterruptedException {
+        halted = true;
+        for (Stage stage : stages) {
+            stage.running = false;
+        }
+        for (Stage stage : stages) {
+            stage.waitStrategy.signalAll();
+            stage.thread.join();
+        }
+    }
+
+    /**
+     * Waits until the ring has a free slot, e.g. before taking a lock that's held while publishing, so that a full ring
+     * doesn't hold up everyone waiting for the lock. Publishers racing for the last free slots may still wait in
+     * {@link #publish(ChatNotification, Collection)}, but only for each other.
+     */
+    public void awaitCapacity() {
+        if (claimed.get() + 1 - slots.length <= gatingCache) {
+            return;
+        }
+        int attempt = 0;
+        // a halted ring never frees its slots, publish rejects what comes next.
+        while (!halted && claimed.get() + 1 - slots.length > minimumCursor()) {
+            if (++attempt > 100) {
+                Thread.yield();
+            }
+        }
+    }
+
+    /**
+     * Publishes a notification.
+     *
+     * @param notification the notification.
+     * @param recipients   the notification's recipients.
+     * @return the notification's sequence number.
+     * @throws IllegalStateException if the sequencer has been halted.
+     */
+    public long publish(ChatNotification notification, Collection<AbstractChatUser> recipients) {
+        if (halted)
+            throw new IllegalStateException("The sequencer has been halted.");
+        long sequence = claimed.incrementAndGet();
+        long wrapPoint = sequence - slots.length;
+        if (wrapPoint > gatingCache) {
+            long gating;
+            int attempt = 0;
+            while (wrapPoint > (gating = minimumCursor())) {
+                // the ring is full, wait for the slowest stage.
+                if (++attempt > 100) {
+                    Thread.yield();
+                }
+            }
+            gatingCache = gating;
+        }
+        int index = (int) sequence & mask;
+        NotificationSlot slot = slots[index];
+        slot.notification = notification;
+        slot.recipients = recipients;
+        published.set(index, sequence);
+        for (Stage stage : stages) {
+            stage.waitStrategy.signalAll();
+        }
+        return sequence;
+    }
+
+    /**
+     * Retrieves the last sequence number claimed by a publisher.
+     *
+     * @return the last claimed sequence number, or -1 if nothing has been published.
+     */
+    public long getClaimed() {
+        return claimed.get();
+    }
+
+    /**
+     * Retrieves the amount of notifications the slowest stage still has to process.
+     *
+     * @return the sequencer's lag.
+     */
+    public long getLag() {
+        return claimed.get() - minimumCursor();
+    }
+
+    /**
+     * Retrieves the amount of slots.
+     *
+     * @return the ring's size.
+     */
+    public int getSize() {
+        return slots.length;
+    }
+
+    /**
+     * Computes the lowest cursor among the stages.
+     *
+     * @return the sequence number every stage has processed.
+     */
+    private long minimumCursor() {
+        long minimum = Long.MAX_VALUE;
+        for (Stage stage : stages) {
+            minimum = Math.min(minimum, stage.cursor.get());
+        }
+        return minimum == Long.MAX_VALUE ? claimed.get() : minimum;
+    }
+
+    /**
+     * A reusable ring slot.
+     */
+    public static final class NotificationSlot {
+        /**
+         * The notification in the slot.
+         */
+        private ChatNotification notification;
+        /**
+         * The notification's recipients.
+         */
+        private Collection<AbstractChatUser> recipients;
+
+        /**
+         * Retrieves the notification in the slot.
+         *
+         * @return the notification.
+         */
+        public ChatNotification getNotification() {
+            return notification;
+        }
+
+        /**
+         * Retrieves the recipients of the notification in the slot.
+         *
+         * @return the notification's recipients.
+         */
+        public Collection<AbstractChatUser> getRecipients() {
+            return recipients;
+        }
+    }
+
+    /**
+     * What a stage does with every notification.
+     */
+    @FunctionalInterface
+    public interface SlotHandler {
+        /**
+         * Processes a notification. The slot must not be kept, it's reused once every stage has processed it.
+         *
+         * @param slot       the slot that holds the notification.
+         * @param sequence   the notification's sequence number.
+         * @param endOfBatch whether there are no more notifications available right now.
+         */
+        void onEvent(NotificationSlot slot, long sequence, boolean endOfBatch);
+    }
+
+    /**
+     * A consumer of the ring with its own cursor and thread.
+     */
+    public final class Stage implements Runnable {
+        /**
+         * Last sequence number processed by the stage.
+         */
+        private final AtomicLong cursor = new AtomicLong(-1);
+        /**
+         * What the stage does with every notification.
+         */
+        private final SlotHandler handler;
+        /**
+         * How the stage waits for new notifications.
+         */
+        private final WaitStrategy waitStrategy;
+        /**
+         * Stages that must process a notification before this one does.
+         */
+        private final Stage[] dependencies;
+        /**
+         * The stage's thread.
+         */
+        private final Thread thread;
+        /**
+         * Whether the stage should keep running.
+         */
+        private volatile boolean running = true;
+
+        Stage(String name, SlotHandler handler, WaitStrategy waitStrategy, Stage[] dependencies) {
+            this.handler = handler;
+            this.waitStrategy = waitStrategy;
+            this.dependencies = dependencies.clone();
+            this.thread = new Thread(this, name);
+            thread.setDaemon(true);
+        }
+
+        /**
+         * Retrieves the last sequence number processed by the stage.
+         *
+         * @return the stage's cursor.
+         */
+        public long getCursor() {
+            return cursor.get();
+        }
+
+        @Override
+        public void run() {
+            long next = cursor.get() + 1;
+            int attempt = 0;
+            while (true) {
+                long available = highestAvailable(next);
+                if (available < next) {
+                    if (!running && next > claimed.get()) {
+                        return;
+                    }
+                    waitStrategy.idle(attempt++);
+                    continue;
+                }
+                attempt = 0;
+                for (; next <= available; next++) {
+                    try {
+                        handler.onEvent(slots[(int) next & mask], next, next == available);
+                    } catch (RuntimeException e) {
+                        Thread current = Thread.currentThread();
+                        current.getUncaughtExceptionHandler().uncaughtException(current, e);
+                    }
+                }
+                cursor.lazySet(available);
+            }
+        }
+
+        /**
+         * Finds the highest sequence number that's been published, contiguously from {@code next}, and processed by
+         * every dependency.
+         *
+         * @param next the next sequence number to process.
+         * @return the highest available sequence number, lower than {@code next} if there's none.
+         */
+        private long highestAvailable(long next) {
+            long limit = claimed.get();
+            for (Stage dependency : dependencies) {
+                limit = Math.min(limit, dependency.cursor.get());
+            }
+            long available = next - 1;
+            while (available < limit && published.get((int) (available + 1) & mask) == available + 1) {
+                available++;
+            }
+            return available;
+        }
+    }
+}
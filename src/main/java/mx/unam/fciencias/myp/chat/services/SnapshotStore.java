@@ -0,0 +1,339 @@
+package mx.unam.fciencias.myp.chat.services;
+
+import mx.unam.fciencias.myp.chat.models.AbstractChatUser;
+import mx.unam.fciencias.myp.chat.models.ChatNotification;
+import mx.unam.fciencias.myp.chat.models.LogRecord;
+import mx.unam.fciencias.myp.chat.models.RoomHistory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * <p>Compact snapshots of a room's state: its members, their locales, where their chat histories start and which types
+ * of notification they muted. Together with the room's {@link EventLog} they let a room be rebuilt after a restart
+ * without replaying the whole log.</p>
+ * <p>Snapshots are taken without pausing delivery. A snapshot records the sequence number of the first notification it
+ * may not reflect and the membership as it was at some later point, so replaying the event log's joins and departures
+ * from that sequence number on brings the membership up to date no matter how they interleaved with the snapshot.</p>
+ * <p>Every snapshot is written to a temporary file, forced to disk and atomically renamed after its sequence number,
+ * so a crash never leaves a torn snapshot behind; the snapshot ends with a CRC-32 of its contents just in case. Only
+ * the two latest snapshots are kept.</p>
+ *
+ * @author Luis Daniel Aragon Bermudez 416041271
+ */
+public class SnapshotStore {
+    /**
+     * Extension of snapshot files.
+     */
+    private static final String EXTENSION = ".snap";
+    /**
+     * First bytes of every snapshot file.
+     */
+    private static final int MAGIC = 0x43534e50;
+    /**
+     * The current format's version.
+     */
+    private static final byte VERSION = 1;
+    /**
+     * Amount of snapshots kept.
+     */
+    private static final int RETAINED = 2;
+    /**
+     * Locale given to restored users whose locale is unknown, e.g. users whose phrases don't come from a registry.
+     */
+    public static final String DEFAULT_LOCALE = "en-GB";
+    /**
+     * Directory that holds the snapshot files.
+     */
+    private final Path directory;
+    /**
+     * Amount of scheduled snapshots that couldn't be written.
+     */
+    private final AtomicLong failures = new AtomicLong();
+
+    /**
+     * Builds a store.
+     *
+     * @param directory directory that holds the snapshot files, one directory per room.
+     * @throws IOException if the directory can't be created.
+     */
+    public SnapshotStore(Path directory) throws IOException {
+        this.directory = Files.createDirectories(directory);
+    }
+
+    /**
+     * <p>Writes a snapshot of a room's state. The room keeps accepting and delivering notifications meanwhile.</p>
+     * <p>The snapshot never gets ahead of the room's event log: if the log hasn't committed every notification yet, the
+     * snapshot starts at the first uncommitted one so that a restore replays it if it survived.</p>
+     *
+     * @param room the room.
+     * @return the snapshot's file.
+     * @throws IOException if the snapshot can't be written.
+     */
+    public synchronized Path write(ChatRoom room) throws IOException {
+        RoomHistory history = room.getHistory();
+        // read before the membership so that replaying from here covers every change the snapshot may miss.
+        long sequence = history.getNextSequence();
+        EventLog log = room.getEventLog();
+        if (log != null) {
+            sequence = Math.min(sequence, log.getLastCommitted() + 1);
+        }
+        long first = Math.min(history.getFirstSequence(), sequence);
+        List<AbstractChatUser> members = room.members();
+        Path temporary = directory.resolve("snapshot.tmp");
+        try (FileOutputStream file = new FileOutputStream(temporary.toFile())) {
+            CheckedOutputStream checked = new CheckedOutputStream(new BufferedOutputStream(file), new CRC32());
+            DataOutputStream out = new DataOutputStream(checked);
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            out.writeLong(sequence);
+            out.writeLong(first);
+            out.writeInt(members.size());
+            for (AbstractChatUser user : members) {
+                String locale = user.getLocaleId();
+                out.writeInt(user.getId());
+                out.writeUTF(user.getUsername());
+                out.writeUTF(locale == null ? "" : locale);
+                long start = user.getHistoryStart(history);
+                // users caught halfway through joining haven't announced it yet, which they will at or after sequence.
+                out.writeLong(start < 0 ? sequence : start);
+                out.writeByte(room.mutedTypes(user));
+            }
+            out.writeLong(checked.getChecksum().getValue());
+            out.flush();
+            file.getFD().sync();
+        }
+        Path snapshot = directory.resolve(String.format("%020d%s", sequence, EXTENSION));
+        Files.move(temporary, snapshot, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        List<Path> snapshots = snapshots();
+        for (int i = RETAINED; i < snapshots.size(); i++) {
+            Files.deleteIfExists(snapshots.get(i));
+        }
+        return snapshot;
+    }
+
+    /**
+     * Periodically writes snapshots of a room. Snapshots that can't be written are skipped and counted, see
+     * {@link #getFailures()}.
+     *
+     * @param room      the room.
+     * @param period    the time between snapshots.
+     * @param unit      the period's unit.
+     * @param scheduler executor that writes the snapshots.
+     * @return a future that can be used to stop taking snapshots.
+     */
+    public ScheduledFuture<?> schedule(ChatRoom room, long period, TimeUnit unit, ScheduledExecutorService scheduler) {
+        return scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                write(room);
+            } catch (IOException e) {
+                failures.incrementAndGet();
+            }
+        }, period, period, unit);
+    }
+
+    /**
+     * <p>Rebuilds a room from the latest valid snapshot and the tail of its event log. Only the notifications the room
+     * can still retain and those accepted since the snapshot are read, so startup time is bounded by the history's
+     * capacity plus the snapshot period rather than by the log's length.</p>
+     * <p>The history and logs are rebuilt from the retained notifications, without delivering them again; members are
+     * put back as {@link LocalizedChatUser}s in their own locale, without notifying anyone. Users that aren't members
+     * anymore are rebuilt too, so that their notifications still have an origin. Rebuilt users keep the ids they had
+     * before the restart and new users never get those ids, so the snapshots and event log records written from then
+     * on still tell them apart after the next restart; rooms must therefore be restored before any new user is built. Every custom
+     * {@link mx.unam.fciencias.myp.chat.models.NotificationKind} in the log must be defined beforehand.</p>
+     * <p>The event log is attached to the room once it's been replayed, so the room's numbering carries on where the
+     * log left off.</p>
+     *
+     * @param name       the room's name.
+     * @param dispatcher strategy used to deliver notifications to the room's users.
+     * @param history    an empty store for the notifications accepted by the room.
+     * @param eventLog   the room's event log.
+     * @param registry   registry that holds the users' locale packs.
+     * @param screens    supplies the screen of every restored user, by username.
+     * @return the restored room.
+     * @throws IOException if the event log can't be read.
+     */
+    public ChatRoom restore(String name, Dispatcher dispatcher, RoomHistory history, EventLog eventLog,
+                            LocaleRegistry registry, Function<String, PrintStream> screens) throws IOException {
+        ChatRoom room = new ChatRoom(name, dispatcher, history);
+        Map<Integer, AbstractChatUser> restored = new HashMap<>();
+        long sequence = 0;
+        long first = 0;
+        for (Path snapshot : snapshots()) {
+            try (InputStream file = Files.newInputStream(snapshot)) {
+                CheckedInputStream checked = new CheckedInputStream(new BufferedInputStream(file), new CRC32());
+                DataInputStream in = new DataInputStream(checked);
+                if (in.readInt() != MAGIC || in.readByte() != VERSION) {
+                    continue;
+                }
+                long snapshotSequence = in.readLong();
+                long snapshotFirst = in.readLong();
+                int size = in.readInt();
+                List<Member> members = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) {
+                    members.add(new Member(in.readInt(), in.readUTF(), in.readUTF(), in.readLong(), in.readByte()));
+                }
+                long checksum = checked.getChecksum().getValue();
+                if (in.readLong() != checksum) {
+                    continue;
+                }
+                sequence = snapshotSequence;
+                first = snapshotFirst;
+                for (Member member : members) {
+                    AbstractChatUser user = userOf(restored, member.id, member.username, member.locale, registry,
+                            screens);
+                    room.restoreMember(user, member.historyFrom, member.mutedTypes);
+                }
+                break;
+            } catch (IOException e) {
+                // torn or foreign file, an older snapshot may still do.
+            }
+        }
+        history.startAt(first);
+        try (EventLogReader reader = eventLog.read(first)) {
+            while (reader.hasNext()) {
+                LogRecord record = reader.next();
+                if (record.getSequence() < history.getNextSequence()) {
+                    continue;
+                }
+                if (history.size() == 0) {
+                    // the log may start after the snapshot's history did.
+                    history.startAt(record.getSequence());
+                }
+                AbstractChatUser origin = userOf(restored, record.getOriginId(), record.getUsername(),
+                        record.getLocaleId(), registry, screens);
+                // a recipient that joined before the retained notifications is unknown, so its messages stay private
+                // to their origin rather than becoming public.
+                AbstractChatUser recipient = record.getRecipientId() < 0
+                        ? null
+                        : restored.getOrDefault(record.getRecipientId(), origin);
+                long restoredSequence = room.restore(new ChatNotification(
+                        origin, record.getMessage(), record.getType(), recipient, record.getTimestamp()));
+                if (record.getSequence() < sequence) {
+                    continue;
+                }
+                if (record.getType() == ChatNotification.NEW_USER && !room.isOnline(origin)) {
+                    room.restoreMember(origin, restoredSequence, 0);
+                } else if (record.getType() == ChatNotification.USER_LEFT) {
+                    room.restoreDeparture(origin, restoredSequence);
+                }
+            }
+        }
+        room.setEventLog(eventLog);
+        return room;
+    }
+
+    /**
+     * Retrieves the amount of scheduled snapshots that couldn't be written.
+     *
+     * @return the amount of failed snapshots.
+     */
+    public long getFailures() {
+        return failures.get();
+    }
+
+    /**
+     * Retrieves a restored user, rebuilding it the first time it's seen.
+     *
+     * @param restored users restored so far, by their id before the restart.
+     * @param id       the user's id before the restart.
+     * @param username the user's username.
+     * @param locale   the user's locale id, null or empty if unknown.
+     * @param registry registry that holds the user's locale pack.
+     * @param screens  supplies the user's screen.
+     * @return the restored user.
+     */
+    private static AbstractChatUser userOf(Map<Integer, AbstractChatUser> restored, int id, String username,
+                                           String locale, LocaleRegistry registry,
+                                           Function<String, PrintStream> screens) {
+        return restored.computeIfAbsent(id, key -> new LocalizedChatUser(id, username, screens.apply(username),
+                registry, locale == null || locale.isEmpty() || !registry.getLocaleIds().contains(locale)
+                ? DEFAULT_LOCALE
+                : locale));
+    }
+
+    /**
+     * Lists the snapshot files in the directory.
+     *
+     * @return the snapshot files, latest first.
+     * @throws IOException if the directory can't be read.
+     */
+    private List<Path> snapshots() throws IOException {
+        List<Path> snapshots = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + EXTENSION)) {
+            for (Path file : files) {
+                snapshots.add(file);
+            }
+        }
+        // names are zero-padded, so they sort like their sequence numbers.
+        snapshots.sort(Collections.reverseOrder());
+        return snapshots;
+    }
+
+    /**
+     * A member as recorded by a snapshot.
+     */
+    private static final class Member {
+        /**
+         * The user's id before the restart.
+         */
+        private final int id;
+        /**
+         * The user's username.
+         */
+        private final String username;
+        /**
+         * The user's locale id, empty if unknown.
+         */
+        private final String locale;
+        /**
+         * Sequence number of the first notification the user witnessed since it joined.
+         */
+        private final long historyFrom;
+        /**
+         * Bitmask of the types of notification the user muted.
+         */
+        private final int mutedTypes;
+
+        /**
+         * Builds a member.
+         *
+         * @param id          the user's id before the restart.
+         * @param username    the user's username.
+         * @param locale      the user's locale id, empty if unknown.
+         * @param historyFrom sequence number of the first notification the user witnessed since it joined.
+         * @param mutedTypes  bitmask of the types of notification the user muted.
+         */
+        private Member(int id, String username, String locale, long historyFrom, int mutedTypes) {
+            this.id = id;
+            this.username = username;
+            this.locale = locale;
+            this.historyFrom = historyFrom;
+            this.mutedTypes = mutedTypes;
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package mx.unam.fciencias.myp.chat.services;
+
+import mx.unam.fciencias.myp.chat.models.AbstractChatUser;
+import mx.unam.fciencias.myp.chat.models.ChatNotification;
+
+import java.util.Collection;
+
+/**
+ * Dispatcher that updates every recipient, one after another, on the calling thread. This is the chat's default
+ * behaviour.
+ *
+ * @author Luis Daniel Aragon Bermudez 416041271
+ */
+public class SynchronousDispatcher implements Dispatcher {
+    @Override
+    public void dispatch(ChatNotification notification, Collection<AbstractChatUser> recipients) {
+        for (AbstractChatUser user : recipients) {
+            user.update(notification);
+        }
+    }
+}
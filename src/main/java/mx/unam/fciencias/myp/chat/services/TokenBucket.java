@@ -0,0 +1,68 @@
+package mx.unam.fciencias.myp.chat.services;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>A lock-free token bucket: tokens are added at a steady rate, up to a burst, and every admission takes one.</p>
+ * <p>The bucket is kept as the time at which it would be full again, the generic cell rate algorithm's theoretical
+ * arrival time, so taking a token is a single compare-and-set and refilling costs nothing.</p>
+ *
+ * @author Luis Daniel Aragon Bermudez 416041271
+ */
+final class TokenBucket {
+    /**
+     * Time it takes to add a token, in nanoseconds.
+     */
+    private final long interval;
+    /**
+     * How far ahead of now the theoretical arrival time may be and still admit right away, in nanoseconds.
+     */
+    private final long tolerance;
+    /**
+     * Theoretical arrival time of the next token, as given by {@link System#nanoTime()}.
+     */
+    private final AtomicLong arrival = new AtomicLong(Long.MIN_VALUE);
+
+    /**
+     * Builds a full bucket.
+     *
+     * @param rate  tokens added per second.
+     * @param burst the bucket's capacity, i.e. how many admissions can happen at once.
+     */
+    TokenBucket(double rate, int burst) {
+        if (!(rate > 0) || burst < 1)
+            throw new IllegalArgumentException(String.format("Invalid rate or burst: %f, %d", rate, burst));
+        this.interval = Math.max(1, Math.round(TimeUnit.SECONDS.toNanos(1) / rate));
+        this.tolerance = interval * (burst - 1);
+    }
+
+    /**
+     * Takes a token, if there's one now or there'll be one soon enough.
+     *
+     * @param now     the current time, as given by {@link System#nanoTime()}.
+     * @param maxWait how long the caller is willing to wait for the token, in nanoseconds.
+     * @return how long to wait before using the token, zero if it can be used right away, or -1 if no token was taken
+     * because it would take longer than {@code maxWait}.
+     */
+    long reserve(long now, long maxWait) {
+        while (true) {
+            long current = arrival.get();
+            long start = Math.max(current, now);
+            long wait = start - tolerance - now;
+            if (wait > maxWait) {
+                return -1;
+            }
+            if (arrival.compareAndSet(current, start + interval)) {
+                return Math.max(0, wait);
+            }
+        }
+    }
+
+    /**
+     * Gives back a token taken by {@link #reserve(long, long)} that won't be used.
+     */
+    void refund() {
+        arrival.addAndGet(-interval);
+    }
+}
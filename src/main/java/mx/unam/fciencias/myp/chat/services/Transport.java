@@ -0,0 +1,68 @@
+package mx.unam.fciencias.myp.chat.services;
+
+import java.nio.ByteBuffer;
+import java.util.Set;
+
+/**
+ * <p>Carries frames between the nodes of a cluster, see {@link ClusterNode}.</p>
+ * <p>Implementations must deliver the frames sent from one node to another at most once and in the order they were
+ * sent, and must deliver every frame and membership change addressed to a node one at a time, so a node never handles
+ * two of them concurrently. Frames sent to a node that isn't part of the cluster are dropped.</p>
+ *
+ * @author Luis Daniel Aragon Bermudez 416041271
+ */
+public interface Transport {
+
+    /**
+     * Adds a node to the cluster. Every node, including the new one, is then told about the cluster's new membership.
+     *
+     * @param node     the node's id.
+     * @param receiver handles the frames and membership changes addressed to the node.
+     */
+    void join(String node, Receiver receiver);
+
+    /**
+     * Removes a node from the cluster. Frames that haven't been delivered to it yet are dropped, and the remaining nodes
+     * are told about the cluster's new membership.
+     *
+     * @param node the node's id.
+     */
+    void leave(String node);
+
+    /**
+     * Sends a frame from a node to another one. Never blocks.
+     *
+     * @param from  the sender's id.
+     * @param to    the recipient's id.
+     * @param frame the frame, from its position to its limit. It isn't retained.
+     */
+    void send(String from, String to, ByteBuffer frame);
+
+    /**
+     * Retrieves the cluster's nodes.
+     *
+     * @return the ids of the nodes that are part of the cluster.
+     */
+    Set<String> getNodes();
+
+    /**
+     * Handles what a transport delivers to a node.
+     */
+    interface Receiver {
+
+        /**
+         * Handles a frame.
+         *
+         * @param from  the sender's id.
+         * @param frame the frame, which is only valid during this call.
+         */
+        void receive(String from, ByteBuffer frame);
+
+        /**
+         * Handles a change in the cluster's membership.
+         *
+         * @param nodes the ids of the nodes that are now part of the cluster.
+         */
+        void nodesChanged(Set<String> nodes);
+    }
+}
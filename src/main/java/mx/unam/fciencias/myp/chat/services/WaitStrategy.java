@@ -0,0 +1,103 @@
+package mx.unam.fciencias.myp.chat.services;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Describes how a {@link Sequencer} stage waits for new notifications. Strategies trade latency for CPU usage: busy
+ * spinning reacts the fastest but burns a core, blocking is the cheapest but has to be woken up by publishers.
+ *
+ * @author Luis Daniel Aragon Bermudez 416041271
+ */
+public interface WaitStrategy {
+    /**
+     * Called by a stage every time it finds nothing new to process.
+     *
+     * @param attempt amount of consecutive times nothing was found, starting at zero.
+     */
+    void idle(int attempt);
+
+    /**
+     * Called by publishers after publishing a notification, lets blocked stages know there's something new.
+     */
+    default void signalAll() {
+    }
+
+    /**
+     * Strategy that keeps checking for new notifications. The lowest latency, at the cost of a whole core per stage.
+     *
+     * @return a busy-spin strategy.
+     */
+    static WaitStrategy busySpin() {
+        return attempt -> {
+        };
+    }
+
+    /**
+     * Strategy that spins for a while and then yields the processor between checks.
+     *
+     * @return a yielding strategy.
+     */
+    static WaitStrategy yielding() {
+        return attempt -> {
+            if (attempt > 100) {
+                Thread.yield();
+            }
+        };
+    }
+
+    /**
+     * Strategy that spins, then yields, and finally sleeps between checks.
+     *
+     * @param sleep time to sleep between checks once spinning and yielding didn't help.
+     * @param unit  the sleep's unit.
+     * @return a sleeping strategy.
+     */
+    static WaitStrategy sleeping(long sleep, TimeUnit unit) {
+        long nanos = unit.toNanos(sleep);
+        return attempt -> {
+            if (attempt > 200) {
+                LockSupport.parkNanos(nanos);
+            } else if (attempt > 100) {
+                Thread.yield();
+            }
+        };
+    }
+
+    /**
+     * Strategy that blocks on a condition until a publisher signals it. The only strategy that makes publishers take a
+     * lock, and then only to signal.
+     *
+     * @return a blocking strategy.
+     */
+    static WaitStrategy blocking() {
+        ReentrantLock lock = new ReentrantLock();
+        Condition published = lock.newCondition();
+        return new WaitStrategy() {
+            @Override
+            public void idle(int attempt) {
+                lock.lock();
+                try {
+                    // the timeout covers signals sent between the stage's last check and taking the lock.
+                    published.awaitNanos(TimeUnit.MILLISECONDS.toNanos(1));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    lock.unlock();
+                }
+            }
+
+            @Override
+            public void signalAll() {
+                lock.lock();
+                try {
+                    published.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,60 @@
+package mx.unam.fciencias.myp.chat.controllers;
+
+import mx.unam.fciencias.myp.chat.services.ChatRoom;
+import mx.unam.fciencias.myp.chat.services.LocaleRegistry;
+import org.junit.Test;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Connects clients to a front-end and checks how it treats them.
+ *
+ * @author Luis Daniel Aragon Bermudez 416041271
+ */
+public class ChatFrontEndTest {
+
+    /**
+     * A client that sends a line longer than the limit is dropped before the line ends, and its user leaves the room.
+     *
+     * @throws Exception if the front-end can't be reached.
+     */
+    @Test(timeout = 10_000)
+    public void longLinesDropTheirClient() throws Exception {
+        ChatRoom room = new ChatRoom("room");
+        try (ChatFrontEnd frontEnd = new ChatFrontEnd(
+                room, LocaleRegistry.getDefault(), new InetSocketAddress("127.0.0.1", 0), 1, 1 << 20
+        ); Socket client = new Socket("127.0.0.1", frontEnd.getLocalAddress().getPort())) {
+            OutputStream out = client.getOutputStream();
+            out.write("ana en-GB\n".getBytes(StandardCharsets.UTF_8));
+            while (room.getOnlineCount() == 0) {
+                Thread.sleep(1);
+            }
+            byte[] chunk = new byte[1024];
+            Arrays.fill(chunk, (byte) 'a');
+            try {
+                for (int sent = 0; sent <= ChatFrontEnd.MAX_LINE_LENGTH; sent += chunk.length) {
+                    out.write(chunk);
+                }
+                out.flush();
+                InputStream in = client.getInputStream();
+                while (in.read() >= 0) {
+                    // skips the room's greeting until the front-end hangs up.
+                }
+            } catch (SocketException e) {
+                // the front-end hung up while the line was being sent.
+            }
+            while (room.getOnlineCount() > 0) {
+                Thread.sleep(1);
+            }
+            assertEquals(0, frontEnd.getConnectionCount());
+        }
+    }
+}
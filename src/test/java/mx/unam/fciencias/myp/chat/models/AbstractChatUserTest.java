@@ -0,0 +1,193 @@
+package mx.unam.fciencias.myp.chat.models;
+
+import mx.unam.fciencias.myp.chat.services.ChatRoom;
+import mx.unam.fciencias.myp.chat.services.LocaleRegistry;
+import mx.unam.fciencias.myp.chat.services.LocalizedChatUser;
+import mx.unam.fciencias.myp.chat.services.SynchronousDispatcher;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks how users' lines end up on their screens and sinks.
+ *
+ * @author Luis Daniel Aragon Bermudez 416041271
+ */
+public class AbstractChatUserTest {
+
+    /**
+     * Users with a PrintStream get their lines in the stream's charset, whether they're delivered as notifications or
+     * as broadcasts.
+     *
+     * @throws Exception if the charset isn't supported.
+     */
+    @Test
+    public void screensKeepTheirCharset() throws Exception {
+        ByteArrayOutputStream latin = new ByteArrayOutputStream();
+        AbstractChatUser ana = new LocalizedChatUser("ana", new PrintStream(latin, true, "ISO-8859-1"), "es-MX");
+        ChatRoom room = new ChatRoom("room");
+        room.register(ana);
+        ana.sendMessage(room, "ñandú");
+        room.broadcast(ana, "pingüino");
+        String separator = System.lineSeparator();
+        assertEquals("Tú le caiste al chat." + separator + "Tú dijiste: ñandú" + separator
+                + "Tú dijiste: pingüino" + separator, new String(latin.toByteArray(), "ISO-8859-1"));
+    }
+
+    /**
+     * Users with a sink get UTF-8 lines, and every recipient that shares templates and point of view gets the very
+     * same bytes.
+     */
+    @Test
+    public void sinksShareEncodedLines() {
+        Set<ByteBuffer> written = Collections.newSetFromMap(new IdentityHashMap<>());
+        StringBuilder seen = new StringBuilder();
+        Sink sink = line -> {
+            written.add(line);
+            seen.append(StandardCharsets.UTF_8.decode(line.duplicate()));
+        };
+        ChatRoom room = new ChatRoom("room");
+        AbstractChatUser sender = new LocalizedChatUser("sender", sink, LocaleRegistry.getDefault(), "en-GB");
+        room.register(sender);
+        for (int i = 0; i < 10; i++) {
+            room.register(new LocalizedChatUser("user" + i, sink, LocaleRegistry.getDefault(),
+                    i % 2 == 0 ? "es-MX" : "en-GB"));
+        }
+        written.clear();
+        seen.setLength(0);
+        sender.sendMessage(room, "ñandú");
+        // the sender's own line, plus one per locale of everyone else.
+        assertEquals(3, written.size());
+        assertEquals(11, seen.toString().split(System.lineSeparator()).length);
+        assertEquals(5, seen.toString().split("sender dijo: ñandú", -1).length - 1);
+    }
+
+    /**
+     * A user that keeps leaving and joining a room whose history evicts old entries still sees every retained entry it
+     * witnessed, and keeps what it witnessed in rooms that evicted nothing.
+     */
+    @Test
+    public void evictedSpansDontAffectTheChatHistory() {
+        PrintStream nowhere = new PrintStream(new ByteArrayOutputStream());
+        ChatRoom busy = new ChatRoom("busy", new SynchronousDispatcher(), RoomHistory.ofEntries(4));
+        ChatRoom quiet = new ChatRoom("quiet");
+        AbstractChatUser ana = new LocalizedChatUser("ana", nowhere, "en-GB");
+        AbstractChatUser bob = new LocalizedChatUser("bob", nowhere, "en-GB");
+        quiet.register(bob);
+        quiet.unregister(bob);
+        busy.register(ana);
+        for (int i = 0; i < 1_000; i++) {
+            busy.register(bob);
+            busy.unregister(bob);
+        }
+        busy.register(bob);
+        RoomHistory history = busy.getHistory();
+        assertTrue(history.getFirstSequence() > 0);
+        // both of the quiet room's entries, then every entry the busy room retained.
+        assertEquals(2 + history.size(), bob.getChatHistory().size());
+        assertEquals(history.size(), ana.getChatHistory().size());
+        assertEquals("bob has joined the chat.", ana.getChatHistory().get((int) history.size() - 1));
+        assertEquals("You have joined the chat.", bob.getChatHistory().get((int) history.size() + 1));
+    }
+
+    /**
+     * A user class that overrides a rendering method gets it called once it opts in, and only then.
+     */
+    @Test
+    public void renderingOverridesNeedAnOptIn() {
+        ByteArrayOutputStream loud = new ByteArrayOutputStream();
+        ByteArrayOutputStream quiet = new ByteArrayOutputStream();
+        ChatRoom room = new ChatRoom("room");
+        AbstractChatUser cid = new LocalizedChatUser("cid", new PrintStream(new ByteArrayOutputStream()), "en-GB");
+        room.register(new OptedIn("ana", new PrintStream(loud)));
+        room.register(new Shouting("bob", new PrintStream(quiet)));
+        room.register(cid);
+        cid.sendMessage(room, "hi");
+        assertTrue(loud.toString().contains("HI"));
+        assertTrue(quiet.toString().contains("cid said: hi"));
+    }
+
+    /**
+     * Once warmed up, broadcasting to users with a sink allocates nothing on the broadcasting thread.
+     */
+    @Test
+    public void broadcastsToSinksDontAllocate() {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long[] written = new long[1];
+        Sink sink = line -> written[0] += line.remaining();
+        ChatRoom room = new ChatRoom("room");
+        AbstractChatUser sender = new LocalizedChatUser("sender", sink, LocaleRegistry.getDefault(), "en-GB");
+        room.register(sender);
+        String[] locales = {"es-MX", "es-ES", "en-GB"};
+        for (int i = 0; i < 30; i++) {
+            room.register(new LocalizedChatUser("user" + i, sink, LocaleRegistry.getDefault(), locales[i % 3]));
+        }
+        StringBuilder message = new StringBuilder();
+        long allocated = 0;
+        for (int round = 0; round < 2; round++) {
+            // the first round warms the broadcast up, the second one's measured.
+            long before = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+            for (int i = 0; i < 100_000; i++) {
+                message.setLength(0);
+                message.append("message ").append(i);
+                room.broadcast(sender, message);
+            }
+            allocated = threads.getThreadAllocatedBytes(Thread.currentThread().getId()) - before;
+        }
+        assertTrue(written[0] > 0);
+        // well under a byte per broadcast, whatever the measurement itself takes.
+        assertTrue("Allocated " + allocated + " bytes.", allocated < 10_000);
+    }
+
+    /**
+     * A user that would shout every message, but doesn't opt in to render them itself.
+     */
+    private static class Shouting extends LocalizedChatUser {
+
+        /**
+         * Builds a user.
+         *
+         * @param username the user's username.
+         * @param screen   the user's screen.
+         */
+        Shouting(String username, PrintStream screen) {
+            super(username, screen, "en-GB");
+        }
+
+        @Override
+        protected void gotNewMessage(AbstractChatUser user, String message) {
+            super.gotNewMessage(user, message.toUpperCase());
+        }
+    }
+
+    /**
+     * A user that shouts every message, rendering them itself.
+     */
+    private static final class OptedIn extends Shouting {
+
+        /**
+         * Builds a user.
+         *
+         * @param username the user's username.
+         * @param screen   the user's screen.
+         */
+        OptedIn(String username, PrintStream screen) {
+            super(username, screen);
+        }
+
+        @Override
+        protected boolean rendersItself() {
+            return true;
+        }
+    }
+}
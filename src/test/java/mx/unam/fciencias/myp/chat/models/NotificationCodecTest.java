@@ -0,0 +1,37 @@
+package mx.unam.fciencias.myp.chat.models;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Encodes strings and checks they match the JDK's UTF-8 encoder.
+ *
+ * @author Luis Daniel Aragon Bermudez 416041271
+ */
+public class NotificationCodecTest {
+
+    /**
+     * Every string, unpaired surrogates included, is encoded to the same bytes as {@link String#getBytes}.
+     */
+    @Test
+    public void stringsEncodeLikeTheJdk() {
+        String[] strings = {
+                "", "hola", "ñandú", "日本語", "😀", "a\uD83Db", "a\uDE00b", "\uDE00\uD83D", "x\uD83D",
+                "\uD83D😀", "€\uD800ñ\uDFFF😀"
+        };
+        for (String string : strings) {
+            byte[] expected = string.getBytes(StandardCharsets.UTF_8);
+            assertEquals(string, expected.length, NotificationCodec.utf8Length(string));
+            ByteBuffer buffer = ByteBuffer.allocate(expected.length);
+            NotificationCodec.putUtf8(buffer, string);
+            assertEquals(string, 0, buffer.remaining());
+            assertTrue(string, Arrays.equals(expected, buffer.array()));
+        }
+    }
+}
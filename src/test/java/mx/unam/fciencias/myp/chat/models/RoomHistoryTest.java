@@ -0,0 +1,74 @@
+package mx.unam.fciencias.myp.chat.models;
+
+import mx.unam.fciencias.myp.chat.services.LocalizedChatUser;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Fills histories with rendered notifications and checks how much they think they hold.
+ *
+ * @author Luis Daniel Aragon Bermudez 416041271
+ */
+public class RoomHistoryTest {
+    /**
+     * The user that sends every message.
+     */
+    private final AbstractChatUser ana =
+            new LocalizedChatUser("ana", new PrintStream(new ByteArrayOutputStream()), "en-GB");
+    /**
+     * A user whose templates differ from the sender's.
+     */
+    private final AbstractChatUser bob =
+            new LocalizedChatUser("bob", new PrintStream(new ByteArrayOutputStream()), "es-MX");
+
+    /**
+     * A notification's renderings and their encoded bytes count towards its history's size, and stop counting once
+     * it's evicted.
+     */
+    @Test
+    public void renderingsCountTowardsTheSize() {
+        RoomHistory single = RoomHistory.ofEntries(1);
+        ChatNotification first = deliver(single);
+        assertTrue(single.getBytes() > estimate(new ChatNotification(ana, "message", ChatNotification.NEW_MESSAGE)));
+        long entry = single.getBytes();
+        first.render(bob.getTemplates(), false);
+        assertEquals(entry, single.getBytes());
+        // every entry costs the same, and evicted ones stop counting.
+        RoomHistory history = RoomHistory.ofEntries(1_000);
+        for (int i = 0; i < 10_000; i++) {
+            deliver(history);
+        }
+        assertEquals(entry * history.size(), history.getBytes());
+    }
+
+    /**
+     * Appends a message and delivers it to both users, who render and encode it.
+     *
+     * @param history the history.
+     * @return the message.
+     */
+    private ChatNotification deliver(RoomHistory history) {
+        ChatNotification notification = new ChatNotification(ana, "message", ChatNotification.NEW_MESSAGE);
+        history.append(notification);
+        notification.encode(ana.getTemplates(), true);
+        notification.encode(bob.getTemplates(), false);
+        return notification;
+    }
+
+    /**
+     * Estimates the size of an unrendered notification.
+     *
+     * @param notification the notification.
+     * @return the size a history estimates for it.
+     */
+    private static long estimate(ChatNotification notification) {
+        RoomHistory history = RoomHistory.ofEntries(1);
+        history.append(notification);
+        return history.getBytes();
+    }
+}
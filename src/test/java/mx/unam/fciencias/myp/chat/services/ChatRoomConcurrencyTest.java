@@ -0,0 +1,269 @@
+package mx.unam.fciencias.myp.chat.services;
+
+import mx.unam.fciencias.myp.chat.models.AbstractChatUser;
+import mx.unam.fciencias.myp.chat.models.ChatNotification;
+import mx.unam.fciencias.myp.chat.models.RoomHistory;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Drives a room from many threads at once, every one of them churning its own user through joins, messages and
+ * departures, and checks that the room's total order is one every thread could have observed: each user's operations
+ * appear in the order it made them, within its membership, and nothing's lost or duplicated.
+ *
+ * @author Luis Daniel Aragon Bermudez 416041271
+ */
+public class ChatRoomConcurrencyTest {
+    /**
+     * Amount of churning threads, one user each.
+     */
+    private static final int THREADS = 8;
+    /**
+     * Amount of times every user joins and leaves.
+     */
+    private static final int ROUNDS = 50;
+    /**
+     * Amount of messages every user sends per round.
+     */
+    private static final int MESSAGES = 10;
+    /**
+     * Matches the messages sent by the churning users, wherever they're shown.
+     */
+    private static final Pattern MESSAGE = Pattern.compile("u(\\d+) r(\\d+) m(\\d+)");
+
+    /**
+     * Every user's joins, messages and departures are accepted in program order, only while the user's online, and
+     * exactly once; an observer that stays online is shown every one of them, each user's in order.
+     *
+     * @throws Exception if a churning thread fails.
+     */
+    @Test(timeout = 60_000)
+    public void churningUsersAreLinearizable() throws Exception {
+        RoomHistory history = RoomHistory.ofEntries(1_000_000);
+        ChatRoom room = new ChatRoom("stress", new SynchronousDispatcher(), history);
+        ByteArrayOutputStream observed = new ByteArrayOutputStream();
+        AbstractChatUser observer = new LocalizedChatUser("observer", new PrintStream(observed, true, "UTF-8"),
+                "en-GB");
+        room.register(observer);
+        List<AbstractChatUser> users = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            users.add(new LocalizedChatUser("u" + t, new PrintStream(new ByteArrayOutputStream()),
+                    t % 2 == 0 ? "es-MX" : "en-GB"));
+        }
+        CyclicBarrier start = new CyclicBarrier(THREADS);
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        List<Future<?>> churns = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            AbstractChatUser user = users.get(t);
+            String prefix = user.getUsername();
+            churns.add(pool.submit((Callable<Void>) () -> {
+                start.await();
+                for (int r = 0; r < ROUNDS; r++) {
+                    room.register(user);
+                    for (int m = 0; m < MESSAGES; m++) {
+                        user.sendMessage(room, prefix + " r" + r + " m" + m);
+                    }
+                    room.unregister(user);
+                }
+                return null;
+            }));
+        }
+        for (Future<?> churn : churns) {
+            churn.get();
+        }
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+
+        long expected = 1 + (long) THREADS * ROUNDS * (MESSAGES + 2);
+        assertEquals(1, room.getOnlineCount());
+        assertEquals(expected, history.getNextSequence());
+        assertEquals(expected, room.getLogs().size());
+        assertEquals(expected, room.getMetrics().getAccepted());
+        assertEquals(0, room.getMetrics().getRejected());
+
+        // replays the room's total order, checking every user's operations against its program order.
+        Map<AbstractChatUser, Integer> steps = new HashMap<>();
+        history.read(1, Long.MAX_VALUE, Integer.MAX_VALUE, notification -> {
+            AbstractChatUser origin = notification.getOrigin();
+            int step = steps.merge(origin, 1, Integer::sum) - 1;
+            int round = step / (MESSAGES + 2);
+            int offset = step % (MESSAGES + 2);
+            if (offset == 0) {
+                assertEquals(ChatNotification.NEW_USER, notification.getType());
+            } else if (offset == MESSAGES + 1) {
+                assertEquals(ChatNotification.USER_LEFT, notification.getType());
+            } else {
+                assertEquals(ChatNotification.NEW_MESSAGE, notification.getType());
+                assertEquals(origin.getUsername() + " r" + round + " m" + (offset - 1), notification.getMessage());
+            }
+        });
+        for (AbstractChatUser user : users) {
+            assertEquals(ROUNDS * (MESSAGES + 2), (int) steps.get(user));
+        }
+
+        // the observer was shown every notification, its own join included, each user's messages in order.
+        String[] lines = new String(observed.toByteArray(), StandardCharsets.UTF_8).split(System.lineSeparator());
+        assertEquals(expected, lines.length);
+        int[] next = new int[THREADS];
+        for (String line : lines) {
+            Matcher matcher = MESSAGE.matcher(line);
+            if (matcher.find()) {
+                int user = Integer.parseInt(matcher.group(1));
+                int sent = Integer.parseInt(matcher.group(2)) * MESSAGES + Integer.parseInt(matcher.group(3));
+                assertEquals(next[user], sent);
+                next[user]++;
+            }
+        }
+        for (int t = 0; t < THREADS; t++) {
+            assertEquals(ROUNDS * MESSAGES, next[t]);
+        }
+    }
+
+    /**
+     * Users that try to send while they're out of the room are rejected, no matter how their attempts interleave with
+     * other users' churn, and the rejections are counted exactly.
+     *
+     * @throws Exception if a thread fails.
+     */
+    @Test(timeout = 60_000)
+    public void offlineSendersAreRejectedUnderChurn() throws Exception {
+        ChatRoom room = new ChatRoom("rejections", new SynchronousDispatcher(), RoomHistory.ofEntries(1_000_000));
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        List<Future<Integer>> results = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            AbstractChatUser user = new LocalizedChatUser("u" + t, new PrintStream(new ByteArrayOutputStream()),
+                    "en-GB");
+            results.add(pool.submit(() -> {
+                int rejected = 0;
+                for (int r = 0; r < ROUNDS; r++) {
+                    room.register(user);
+                    user.sendMessage(room, "in");
+                    room.unregister(user);
+                    try {
+                        user.sendMessage(room, "out");
+                    } catch (IllegalStateException e) {
+                        rejected++;
+                    }
+                }
+                return rejected;
+            }));
+        }
+        for (Future<Integer> result : results) {
+            assertEquals(ROUNDS, (int) result.get());
+        }
+        pool.shutdown();
+        assertEquals(0, room.getOnlineCount());
+        assertEquals((long) THREADS * ROUNDS * 3, room.getMetrics().getAccepted());
+    }
+
+    /**
+     * Users that join and leave while others keep sending are shown exactly the notifications their chat history spans,
+     * in the same order if the room's sequenced.
+     *
+     * @throws Exception if a thread fails.
+     */
+    @Test(timeout = 60_000)
+    public void joinersSeeExactlyTheirHistory() throws Exception {
+        for (boolean sequenced : new boolean[]{false, true}) {
+            ChatRoom room = new ChatRoom("spans", new SynchronousDispatcher(), RoomHistory.ofEntries(1_000_000));
+            if (sequenced) {
+                room.enableSequencing(1024, WaitStrategy.yielding());
+            }
+            ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+            List<Future<?>> senders = new ArrayList<>();
+            List<Future<List<AbstractChatUser>>> joiners = new ArrayList<>();
+            List<ByteArrayOutputStream> screens = new ArrayList<>();
+            for (int t = 0; t < THREADS / 2; t++) {
+                AbstractChatUser sender = new LocalizedChatUser("s" + t, new PrintStream(new ByteArrayOutputStream()),
+                        "en-GB");
+                room.register(sender);
+                senders.add(pool.submit(() -> {
+                    for (int m = 0; m < 20 * ROUNDS * MESSAGES; m++) {
+                        sender.sendMessage(room, "m" + m);
+                    }
+                    return null;
+                }));
+            }
+            for (int t = 0; t < THREADS / 2; t++) {
+                List<AbstractChatUser> joined = new ArrayList<>();
+                for (int r = 0; r < 10 * ROUNDS; r++) {
+                    ByteArrayOutputStream screen = new ByteArrayOutputStream();
+                    screens.add(screen);
+                    joined.add(new LocalizedChatUser("j" + t + "-" + r,
+                            new PrintStream(screen, true, "UTF-8"), "en-GB"));
+                }
+                joiners.add(pool.submit(() -> {
+                    for (AbstractChatUser user : joined) {
+                        room.register(user);
+                        room.unregister(user);
+                    }
+                    return joined;
+                }));
+            }
+            for (Future<?> sender : senders) {
+                sender.get();
+            }
+            List<AbstractChatUser> users = new ArrayList<>();
+            for (Future<List<AbstractChatUser>> joiner : joiners) {
+                users.addAll(joiner.get());
+            }
+            pool.shutdown();
+            room.close();
+            for (int i = 0; i < users.size(); i++) {
+                List<String> shown = new ArrayList<>();
+                for (String line : screens.get(i).toString("UTF-8").split(System.lineSeparator())) {
+                    shown.add(line);
+                }
+                List<String> spanned = users.get(i).getChatHistory();
+                if (!sequenced) {
+                    // only sequenced rooms deliver different users' notifications in their total order.
+                    Collections.sort(shown);
+                    Collections.sort(spanned);
+                }
+                assertEquals(users.get(i).getUsername(), shown, spanned);
+            }
+        }
+    }
+
+    /**
+     * Every thread that asks for the process-wide chat at once gets the same instance.
+     *
+     * @throws Exception if a thread fails.
+     */
+    @Test(timeout = 60_000)
+    public void singletonIsSharedAcrossThreads() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        CyclicBarrier start = new CyclicBarrier(THREADS);
+        List<Future<MultilingualChat>> instances = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            instances.add(pool.submit(() -> {
+                start.await();
+                return MultilingualChat.getInstance();
+            }));
+        }
+        for (Future<MultilingualChat> instance : instances) {
+            assertSame(MultilingualChat.getInstance(), instance.get());
+        }
+        pool.shutdown();
+    }
+}
@@ -0,0 +1,133 @@
+package mx.unam.fciencias.myp.chat.services;
+
+import mx.unam.fciencias.myp.chat.models.AbstractChatUser;
+import mx.unam.fciencias.myp.chat.models.ChatNotification;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Routes notifications through a room and checks who's shown them.
+ *
+ * @author Luis Daniel Aragon Bermudez 416041271
+ */
+public class ChatRoomTest {
+
+    /**
+     * Direct messages only reach their recipient and their origin, and users that muted messages are still shown the
+     * ones that mention them.
+     *
+     * @throws Exception if the charset isn't supported.
+     */
+    @Test
+    public void notificationsOnlyReachTheirRecipients() throws Exception {
+        ChatRoom room = new ChatRoom("room");
+        ByteArrayOutputStream bobScreen = new ByteArrayOutputStream();
+        ByteArrayOutputStream cidScreen = new ByteArrayOutputStream();
+        AbstractChatUser ana = new LocalizedChatUser("ana", new PrintStream(new ByteArrayOutputStream()), "en-GB");
+        AbstractChatUser bob = new LocalizedChatUser("bob", new PrintStream(bobScreen, true, "UTF-8"), "en-GB");
+        AbstractChatUser cid = new LocalizedChatUser("cid", new PrintStream(cidScreen, true, "UTF-8"), "en-GB");
+        room.register(ana);
+        room.register(bob);
+        room.register(cid);
+        assertTrue(room.mute(cid, ChatNotification.NEW_MESSAGE));
+        assertFalse(room.mute(cid, ChatNotification.NEW_MESSAGE));
+        ana.sendMessage(room, "hello");
+        ana.sendMessage(room, "hi @cid!");
+        ana.sendDirectMessage(room, bob, "psst");
+        assertTrue(room.unmute(cid, ChatNotification.NEW_MESSAGE));
+        ana.sendMessage(room, "again");
+        String bobSaw = bobScreen.toString("UTF-8");
+        String cidSaw = cidScreen.toString("UTF-8");
+        assertTrue(bobSaw.contains("hello") && bobSaw.contains("hi @cid!") && bobSaw.contains("psst"));
+        assertFalse(cidSaw.contains("hello"));
+        assertTrue(cidSaw.contains("hi @cid!"));
+        assertFalse(cidSaw.contains("psst"));
+        assertTrue(cidSaw.contains("again"));
+    }
+
+    /**
+     * A tail sends nothing before it's asked to, then exactly as many notifications as requested, replayed and live
+     * alike, and nothing once cancelled.
+     */
+    @Test
+    public void tailsOnlySendWhatWasRequested() {
+        ChatRoom room = new ChatRoom("room");
+        AbstractChatUser ana = new LocalizedChatUser("ana", new PrintStream(new ByteArrayOutputStream()), "en-GB");
+        room.register(ana);
+        ana.sendMessage(room, "one");
+        List<Long> sent = new ArrayList<>();
+        HistorySubscriber.Subscription subscription = room.tail(0, new HistorySubscriber() {
+            @Override
+            public void onSubscribe(Subscription subscription) {
+            }
+
+            @Override
+            public void onNext(long sequence, ChatNotification notification) {
+                sent.add(sequence);
+            }
+        }, Runnable::run);
+        assertTrue(sent.isEmpty());
+        subscription.request(1);
+        assertEquals(1, sent.size());
+        subscription.request(2);
+        assertEquals(2, sent.size());
+        ana.sendMessage(room, "two");
+        assertEquals(3, sent.size());
+        subscription.cancel();
+        ana.sendMessage(room, "three");
+        assertEquals(3, sent.size());
+        assertEquals(0L, (long) sent.get(0));
+        assertEquals(2L, (long) sent.get(2));
+    }
+
+    /**
+     * Paging through the logs resumes where the previous page stopped and reads every line once.
+     */
+    @Test
+    public void logsArePagedBySequenceNumber() {
+        ChatRoom room = new ChatRoom("room");
+        AbstractChatUser ana = new LocalizedChatUser("ana", new PrintStream(new ByteArrayOutputStream()), "en-GB");
+        room.register(ana);
+        for (int i = 0; i < 10; i++) {
+            ana.sendMessage(room, "message " + i);
+        }
+        List<String> lines = new ArrayList<>();
+        long from = 0;
+        int pages = 0;
+        for (long next; (next = room.readLogs(from, 3, lines::add)) != from; from = next) {
+            pages++;
+        }
+        assertEquals(4, pages);
+        assertEquals(room.getLogs(), lines);
+    }
+
+    /**
+     * A user flooding a rate-limited room only gets its burst through, and the rest is rejected without holding anyone
+     * else up.
+     */
+    @Test
+    public void floodsAreCutToTheirBurst() {
+        ChatRoom room = new ChatRoom("room");
+        RateLimiter limiter = room.limitRate(1, 5, 1000, 1000);
+        AbstractChatUser ana = new LocalizedChatUser("ana", new PrintStream(new ByteArrayOutputStream()), "en-GB");
+        AbstractChatUser bob = new LocalizedChatUser("bob", new PrintStream(new ByteArrayOutputStream()), "en-GB");
+        room.register(ana);
+        room.register(bob);
+        for (int i = 0; i < 10; i++) {
+            ana.sendMessage(room, "flood " + i);
+        }
+        bob.sendMessage(room, "hi");
+        assertEquals(2 + 5 + 1, room.getHistory().getNextSequence());
+        assertEquals(5, limiter.getRejected());
+        assertEquals(5, room.getMetrics().getRejected());
+        assertTrue(room.getIncidents().get(0).contains("exceeded the rate limit"));
+    }
+}
@@ -0,0 +1,74 @@
+package mx.unam.fciencias.myp.chat.services;
+
+import mx.unam.fciencias.myp.chat.models.AbstractChatUser;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs a room across loopback cluster nodes and checks every replica agrees on it.
+ *
+ * @author Luis Daniel Aragon Bermudez 416041271
+ */
+public class ClusterNodeTest {
+
+    /**
+     * Users connected to different nodes see each other's messages, every replica logs the same order, and the users of
+     * a node that leaves are announced as gone.
+     *
+     * @throws Exception if interrupted.
+     */
+    @Test(timeout = 10_000)
+    public void replicasAgreeOnTheirRoom() throws Exception {
+        LoopbackTransport transport = new LoopbackTransport();
+        ClusterNode[] nodes = new ClusterNode[2];
+        ChatRoom[] rooms = new ChatRoom[nodes.length];
+        for (int n = 0; n < nodes.length; n++) {
+            nodes[n] = new ClusterNode("node" + n, transport);
+            rooms[n] = new ChatRoom("room");
+            nodes[n].replicate(rooms[n]);
+            nodes[n].start();
+        }
+        for (ClusterNode node : nodes) {
+            while (node.getNodes().size() < nodes.length) {
+                Thread.sleep(1);
+            }
+        }
+        ByteArrayOutputStream bobScreen = new ByteArrayOutputStream();
+        AbstractChatUser ana = new LocalizedChatUser("ana", new PrintStream(new ByteArrayOutputStream()), "en-GB");
+        AbstractChatUser bob = new LocalizedChatUser("bob", new PrintStream(bobScreen, true, "UTF-8"), "en-GB");
+        rooms[0].register(ana);
+        rooms[1].register(bob);
+        awaitOnline(rooms, 2);
+        ana.sendMessage(rooms[0], "hello");
+        for (ChatRoom room : rooms) {
+            while (room.getHistory().getNextSequence() < 3) {
+                Thread.sleep(1);
+            }
+        }
+        assertEquals(rooms[0].getLogs(), rooms[1].getLogs());
+        assertTrue(bobScreen.toString("UTF-8").contains("ana said: hello"));
+        nodes[0].stop();
+        awaitOnline(new ChatRoom[]{rooms[1]}, 1);
+        nodes[1].stop();
+    }
+
+    /**
+     * Waits until every replica counts the same amount of online users.
+     *
+     * @param rooms  the replicas.
+     * @param online the amount of online users.
+     * @throws InterruptedException if interrupted.
+     */
+    private static void awaitOnline(ChatRoom[] rooms, int online) throws InterruptedException {
+        for (ChatRoom room : rooms) {
+            while (room.getOnlineCount() != online) {
+                Thread.sleep(1);
+            }
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package mx.unam.fciencias.myp.chat.services;
+
+import mx.unam.fciencias.myp.chat.models.AbstractChatUser;
+import mx.unam.fciencias.myp.chat.models.ChatNotification;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Breaks event logs and checks that their failures are reported, both by the log and by the rooms that persist to it.
+ *
+ * @author Luis Daniel Aragon Bermudez 416041271
+ */
+public class EventLogTest {
+    /**
+     * Directory that holds the log's segments.
+     */
+    private Path directory;
+
+    /**
+     * Creates the test's directory.
+     *
+     * @throws IOException if it can't be created.
+     */
+    @Before
+    public void createDirectory() throws IOException {
+        directory = Files.createTempDirectory("event-log");
+    }
+
+    /**
+     * Deletes the test's directory.
+     *
+     * @throws IOException if it can't be deleted.
+     */
+    @After
+    public void deleteDirectory() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+
+    /**
+     * A writer thread that dies of something other than an I/O error still records why, so closing the log finishes
+     * and reports it, and the log stops taking notifications.
+     *
+     * @throws Exception if the log can't be opened.
+     */
+    @Test(timeout = 10_000)
+    public void writerErrorsAreReported() throws Exception {
+        EventLog log = new EventLog(directory, 1 << 20, 0, TimeUnit.MILLISECONDS);
+        AbstractChatUser broken = new BrokenUser("broken");
+        log.append(0, new ChatNotification(broken, "broken joined", ChatNotification.NEW_USER));
+        while (log.getFailure() == null) {
+            Thread.sleep(1);
+        }
+        assertTrue(log.getFailure().getCause() instanceof IllegalStateException);
+        assertFalse(log.offer(1, new ChatNotification(broken, "hi", ChatNotification.NEW_MESSAGE)));
+        try {
+            log.append(1, new ChatNotification(broken, "hi", ChatNotification.NEW_MESSAGE));
+            fail("A failed log took a notification.");
+        } catch (UncheckedIOException e) {
+            assertNotNull(e.getCause());
+        }
+        try {
+            log.close();
+            fail("Closing a failed log didn't report its failure.");
+        } catch (IOException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+    }
+
+    /**
+     * A log fed sequence numbers it already has fails instead of appending them to the segment they belong to.
+     *
+     * @throws Exception if the log can't be opened.
+     */
+    @Test(timeout = 10_000)
+    public void reusedSequencesFailLoudly() throws Exception {
+        AbstractChatUser ana = new LocalizedChatUser("ana", new PrintStream(new ByteArrayOutputStream()), "en-GB");
+        // every record fills its own segment.
+        EventLog log = new EventLog(directory, EventLog.HEADER_SIZE, 0, TimeUnit.MILLISECONDS);
+        for (int i = 0; i < 3; i++) {
+            log.append(i, new ChatNotification(ana, "message " + i, ChatNotification.NEW_MESSAGE));
+        }
+        log.close();
+        long segments = EventLog.segments(directory).size();
+        log = new EventLog(directory, EventLog.HEADER_SIZE, 0, TimeUnit.MILLISECONDS);
+        log.append(1, new ChatNotification(ana, "message 1", ChatNotification.NEW_MESSAGE));
+        try {
+            log.close();
+            fail("A log overwrote one of its segments.");
+        } catch (FileAlreadyExistsException e) {
+            assertEquals(segments, EventLog.segments(directory).size());
+        }
+    }
+
+    /**
+     * Every notification the log took while it was being closed is written: appends racing with closing the log are
+     * either rejected or make it to disk.
+     *
+     * @throws Exception if the log can't be opened.
+     */
+    @Test(timeout = 30_000)
+    public void appendsRacingCloseArentLost() throws Exception {
+        AbstractChatUser ana = new LocalizedChatUser("ana", new PrintStream(new ByteArrayOutputStream()), "en-GB");
+        ChatNotification message = new ChatNotification(ana, "message", ChatNotification.NEW_MESSAGE);
+        for (int round = 0; round < 100; round++) {
+            Path rounds = Files.createDirectory(directory.resolve("round-" + round));
+            EventLog log = new EventLog(rounds, 1 << 20, 0, TimeUnit.MILLISECONDS);
+            long[] taken = new long[1];
+            Thread appender = new Thread(() -> {
+                while (log.offer(taken[0], message)) {
+                    taken[0]++;
+                }
+            });
+            appender.start();
+            Thread.sleep(1);
+            log.close();
+            appender.join();
+            long read = 0;
+            try (EventLogReader reader = log.read(0)) {
+                while (reader.hasNext()) {
+                    assertEquals(read++, reader.next().getSequence());
+                }
+            }
+            assertEquals(taken[0], read);
+        }
+    }
+
+    /**
+     * A room whose log can't take notifications anymore still delivers them: a leaving user gets its departure, and the
+     * failure's reported as one of the room's incidents.
+     *
+     * @throws Exception if the log can't be opened.
+     */
+    @Test(timeout = 10_000)
+    public void closedLogsDontStopDepartures() throws Exception {
+        EventLog log = new EventLog(directory, 1 << 20, 0, TimeUnit.MILLISECONDS);
+        ChatRoom room = new ChatRoom("room");
+        room.setEventLog(log);
+        ByteArrayOutputStream screen = new ByteArrayOutputStream();
+        AbstractChatUser ana = new LocalizedChatUser("ana", new PrintStream(screen, true, "UTF-8"), "en-GB");
+        AbstractChatUser bob = new LocalizedChatUser("bob", new PrintStream(new ByteArrayOutputStream()), "en-GB");
+        room.register(ana);
+        room.register(bob);
+        log.close();
+        room.unregister(ana);
+        assertFalse(room.isOnline(ana));
+        assertEquals(3, room.getHistory().getNextSequence());
+        assertTrue(screen.toString("UTF-8").contains("ana"));
+        assertEquals(3, screen.toString("UTF-8").split(System.lineSeparator()).length);
+        assertTrue(room.getIncidents().contains("Notification 2 couldn't be persisted."));
+        room.updateUsers(new ChatNotification(bob, "still here", ChatNotification.NEW_MESSAGE));
+        assertTrue(room.getIncidents().contains("Notification 3 couldn't be persisted."));
+    }
+
+    /**
+     * A user whose locale can't be written to the log.
+     */
+    private static final class BrokenUser extends LocalizedChatUser {
+
+        /**
+         * Builds a user.
+         *
+         * @param username the user's username.
+         */
+        BrokenUser(String username) {
+            super(username, new PrintStream(new ByteArrayOutputStream()), "en-GB");
+        }
+
+        @Override
+        public String getLocaleId() {
+            throw new IllegalStateException("Broken locale.");
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package mx.unam.fciencias.myp.chat.services;
+
+import mx.unam.fciencias.myp.chat.models.AbstractChatUser;
+import mx.unam.fciencias.myp.chat.models.ChatNotification;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Lets users go idle and checks who gets evicted.
+ *
+ * @author Luis Daniel Aragon Bermudez 416041271
+ */
+public class PresenceTrackerTest {
+    /**
+     * Screen of every user, whose output isn't looked at.
+     */
+    private static final PrintStream NOWHERE = new PrintStream(new ByteArrayOutputStream());
+
+    /**
+     * A user found idle that leaves and joins again before it's evicted keeps its new session: only the session found
+     * idle is evicted.
+     *
+     * @throws Exception if interrupted.
+     */
+    @Test(timeout = 10_000)
+    public void rejoinedUsersArentEvicted() throws Exception {
+        AbstractChatUser ana = new LocalizedChatUser("ana", NOWHERE, "en-GB");
+        AbstractChatUser bob = new LocalizedChatUser("bob", NOWHERE, "en-GB");
+        AtomicBoolean bounced = new AtomicBoolean();
+        ChatRoom[] rooms = new ChatRoom[1];
+        SynchronousDispatcher synchronous = new SynchronousDispatcher();
+        // whoever's evicted first makes the other one leave and join again, after both were found idle.
+        ChatRoom room = new ChatRoom("room", (notification, recipients) -> {
+            synchronous.dispatch(notification, recipients);
+            if (notification.getType() == ChatNotification.USER_LEFT && bounced.compareAndSet(false, true)) {
+                AbstractChatUser other = notification.getOrigin() == ana ? bob : ana;
+                rooms[0].unregister(other);
+                rooms[0].register(other);
+            }
+        });
+        rooms[0] = room;
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        try {
+            PresenceTracker tracker = room.trackPresence(300, 100, TimeUnit.MILLISECONDS, scheduler);
+            room.register(ana);
+            room.register(bob);
+            while (tracker.getEvicted() == 0) {
+                Thread.sleep(1);
+            }
+            assertTrue(bounced.get());
+            assertEquals(1, tracker.getEvicted());
+            assertEquals(1, room.getOnlineCount());
+            AbstractChatUser rejoined = room.isOnline(ana) ? ana : bob;
+            assertTrue(tracker.getOnlineUsers().contains(rejoined));
+            assertFalse(tracker.getOnlineUsers().contains(rejoined == ana ? bob : ana));
+        } finally {
+            scheduler.shutdownNow();
+        }
+    }
+
+    /**
+     * A user seen after it was found idle, while its eviction waits for its lock stripe, is kept and its heartbeat
+     * says so.
+     *
+     * @throws Exception if interrupted.
+     */
+    @Test(timeout = 10_000)
+    public void lateHeartbeatsKeepTheirUser() throws Exception {
+        AbstractChatUser ana = new LocalizedChatUser("ana", NOWHERE, "en-GB");
+        CountDownLatch held = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        // delivering ana's message holds her lock stripe until released.
+        ChatRoom room = new ChatRoom("room", (notification, recipients) -> {
+            if ("hold".equals(notification.getMessage())) {
+                held.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        Thread[] ticker = new Thread[1];
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(task -> {
+            ticker[0] = new Thread(task, "ticker");
+            return ticker[0];
+        });
+        try {
+            PresenceTracker tracker = room.trackPresence(200, 50, TimeUnit.MILLISECONDS, scheduler);
+            room.register(ana);
+            Thread sender = new Thread(() ->
+                    room.updateUsers(new ChatNotification(ana, "hold", ChatNotification.NEW_MESSAGE)));
+            sender.start();
+            held.await();
+            // the ticker finds ana idle and waits for her stripe.
+            while (ticker[0] == null || ticker[0].getState() != Thread.State.BLOCKED) {
+                Thread.sleep(1);
+            }
+            assertTrue(tracker.heartbeat(ana));
+            release.countDown();
+            sender.join();
+            // once the ticker's done with its tick, the eviction's been decided.
+            scheduler.submit(() -> { }).get();
+            assertEquals(0, tracker.getEvicted());
+            assertTrue(room.isOnline(ana));
+            assertTrue(tracker.getOnlineUsers().contains(ana));
+            // ana's still tracked, so she's evicted once she goes idle again.
+            while (tracker.getEvicted() == 0) {
+                Thread.sleep(1);
+            }
+            assertFalse(room.isOnline(ana));
+            assertFalse(tracker.heartbeat(ana));
+        } finally {
+            scheduler.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package mx.unam.fciencias.myp.chat.services;
+
+import mx.unam.fciencias.myp.chat.models.AbstractChatUser;
+import mx.unam.fciencias.myp.chat.models.ChatNotification;
+import mx.unam.fciencias.myp.chat.models.RoomHistory;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Searches rooms by time and checks that no message is missed.
+ *
+ * @author Luis Daniel Aragon Bermudez 416041271
+ */
+public class SearchIndexTest {
+
+    /**
+     * A message stamped earlier than the one before it, e.g. after the clock went back, doesn't hide the messages
+     * around it from time ranges, and counts as created at the earlier message's time.
+     *
+     * @throws Exception if the indexer's interrupted.
+     */
+    @Test(timeout = 10_000)
+    public void clockSkewDoesntHideMessages() throws Exception {
+        ChatRoom room = new ChatRoom("room");
+        SearchIndex index = room.enableSearch();
+        AbstractChatUser ana = new LocalizedChatUser("ana", new PrintStream(new ByteArrayOutputStream()), "en-GB");
+        room.register(ana);
+        long[] times = {1_000, 3_000, 2_000, 4_000};
+        for (int i = 0; i < times.length; i++) {
+            room.updateUsers(new ChatNotification(ana, "message " + i, ChatNotification.NEW_MESSAGE, null, times[i]));
+        }
+        while (index.getIndexed() < room.getHistory().getNextSequence()) {
+            Thread.sleep(1);
+        }
+        assertEquals(Arrays.asList("message 3", "message 2", "message 1"),
+                messages(index, SearchQuery.ALL.since(2_500)));
+        assertEquals(Arrays.asList("message 3", "message 2", "message 1"),
+                messages(index, SearchQuery.ALL.since(3_000)));
+        assertEquals(Arrays.asList("message 0"), messages(index, SearchQuery.ALL.until(2_500)));
+        assertEquals(Arrays.asList("message 2", "message 1"),
+                messages(index, SearchQuery.containing("message").since(2_000).until(4_000)));
+        index.close();
+    }
+
+    /**
+     * Words and senders whose messages were all evicted from the history are forgotten, so the index doesn't grow with
+     * every word ever said.
+     *
+     * @throws Exception if the indexer's interrupted.
+     */
+    @Test(timeout = 30_000)
+    public void evictedWordsAreForgotten() throws Exception {
+        ChatRoom room = new ChatRoom("room", new SynchronousDispatcher(), RoomHistory.ofEntries(512));
+        SearchIndex index = room.enableSearch();
+        PrintStream nowhere = new PrintStream(new ByteArrayOutputStream());
+        AbstractChatUser ana = new LocalizedChatUser("ana", nowhere, "en-GB");
+        room.register(ana);
+        for (int i = 0; i < 20_000; i++) {
+            if (i == 1_000) {
+                room.unregister(ana);
+                ana = new LocalizedChatUser("bob", nowhere, "en-GB");
+                room.register(ana);
+            }
+            room.updateUsers(new ChatNotification(ana, "word" + i, ChatNotification.NEW_MESSAGE));
+        }
+        while (messages(index, SearchQuery.containing("word19999")).isEmpty()) {
+            Thread.sleep(1);
+        }
+        assertTrue(index.getTermCount() < 5_000);
+        assertEquals(Collections.emptyList(), messages(index, SearchQuery.containing("word0")));
+        index.close();
+    }
+
+    /**
+     * Runs a query.
+     *
+     * @param index the index.
+     * @param query the query.
+     * @return the results' messages, newest first.
+     */
+    private static List<String> messages(SearchIndex index, SearchQuery query) {
+        List<String> messages = new ArrayList<>();
+        for (ChatNotification notification : index.search(query, Long.MAX_VALUE, 100).getResults()) {
+            messages.add(notification.getMessage());
+        }
+        return messages;
+    }
+}
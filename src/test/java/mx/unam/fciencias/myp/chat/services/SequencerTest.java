@@ -0,0 +1,98 @@
+package mx.unam.fciencias.myp.chat.services;
+
+import mx.unam.fciencias.myp.chat.models.AbstractChatUser;
+import mx.unam.fciencias.myp.chat.models.ChatNotification;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Fills sequenced rooms' rings and shuts them down.
+ *
+ * @author Luis Daniel Aragon Bermudez 416041271
+ */
+public class SequencerTest {
+    /**
+     * Screen of every user, whose output isn't looked at.
+     */
+    private static final PrintStream NOWHERE = new PrintStream(new ByteArrayOutputStream());
+
+    /**
+     * A sender waiting for room in a full ring doesn't hold its lock stripe, so other operations on the same user go
+     * on; once the ring drains the sender publishes, and closing the room stops its stages.
+     *
+     * @throws Exception if interrupted.
+     */
+    @Test(timeout = 10_000)
+    public void fullRingsDontHoldStripes() throws Exception {
+        CountDownLatch stalled = new CountDownLatch(1);
+        ChatRoom room = new ChatRoom("full", (notification, recipients) -> {
+            try {
+                stalled.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        room.enableSequencing(2, WaitStrategy.yielding());
+        AbstractChatUser ana = new LocalizedChatUser("ana", NOWHERE, "en-GB");
+        // the fan-out stage stalls on the join, so the message fills the ring.
+        room.register(ana);
+        room.updateUsers(new ChatNotification(ana, "one", ChatNotification.NEW_MESSAGE));
+        Thread sender = new Thread(() ->
+                room.updateUsers(new ChatNotification(ana, "two", ChatNotification.NEW_MESSAGE)));
+        sender.start();
+        Thread.sleep(100);
+        assertTrue(sender.isAlive());
+        assertTrue(room.mute(ana, ChatNotification.NEW_USER));
+        stalled.countDown();
+        sender.join();
+        assertEquals(2, room.getSequencer().getClaimed());
+        room.close();
+        assertEquals(3, room.getHistory().getNextSequence());
+        assertEquals(0, room.getSequencer().getLag());
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            assertFalse(thread.getName(), thread.getName().startsWith("full-"));
+        }
+        try {
+            room.register(new LocalizedChatUser("bob", NOWHERE, "en-GB"));
+            fail("A closed room took a user.");
+        } catch (IllegalStateException e) {
+            assertEquals(1, room.getOnlineCount());
+        }
+    }
+
+    /**
+     * The fan-out stage never delivers a notification the history stage hasn't appended yet.
+     *
+     * @throws Exception if interrupted.
+     */
+    @Test(timeout = 30_000)
+    public void deliveriesFollowTheHistory() throws Exception {
+        ChatRoom[] rooms = new ChatRoom[1];
+        AtomicLong delivered = new AtomicLong();
+        AtomicLong ahead = new AtomicLong();
+        ChatRoom room = new ChatRoom("ordered", (notification, recipients) -> {
+            if (rooms[0].getHistory().getNextSequence() <= delivered.getAndIncrement()) {
+                ahead.incrementAndGet();
+            }
+        });
+        rooms[0] = room;
+        room.enableSequencing(1024, WaitStrategy.busySpin());
+        AbstractChatUser ana = new LocalizedChatUser("ana", NOWHERE, "en-GB");
+        room.register(ana);
+        for (int i = 0; i < 100_000; i++) {
+            room.updateUsers(new ChatNotification(ana, "message", ChatNotification.NEW_MESSAGE));
+        }
+        room.close();
+        assertEquals(100_001, delivered.get());
+        assertEquals(0, ahead.get());
+    }
+}
@@ -0,0 +1,189 @@
+package mx.unam.fciencias.myp.chat.services;
+
+import mx.unam.fciencias.myp.chat.models.AbstractChatUser;
+import mx.unam.fciencias.myp.chat.models.RoomHistory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Restores rooms from their snapshots and event logs, over and over, and checks that they come back as they were.
+ *
+ * @author Luis Daniel Aragon Bermudez 416041271
+ */
+public class SnapshotStoreTest {
+    /**
+     * Screen of every user, whose output isn't looked at.
+     */
+    private static final PrintStream NOWHERE = new PrintStream(new ByteArrayOutputStream());
+    /**
+     * Directory that holds the room's event log and snapshots.
+     */
+    private Path directory;
+
+    /**
+     * Creates the test's directory.
+     *
+     * @throws IOException if it can't be created.
+     */
+    @Before
+    public void createDirectory() throws IOException {
+        directory = Files.createTempDirectory("snapshots");
+    }
+
+    /**
+     * Deletes the test's directory.
+     *
+     * @throws IOException if it can't be deleted.
+     */
+    @After
+    public void deleteDirectory() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+
+    /**
+     * A room restored twice, with new users and messages in between, still attributes every notification to the user
+     * that created it: users keep their ids across restores and new users never get them.
+     *
+     * @throws Exception if the log or the snapshots can't be read or written.
+     */
+    @Test(timeout = 60_000)
+    public void restoringTwiceKeepsEveryOrigin() throws Exception {
+        SnapshotStore store = new SnapshotStore(directory.resolve("snapshots"));
+        EventLog log = openLog();
+        ChatRoom room = new ChatRoom("room");
+        room.setEventLog(log);
+        AbstractChatUser alice = new LocalizedChatUser("alice", NOWHERE, "es-MX");
+        AbstractChatUser bob = new LocalizedChatUser("bob", NOWHERE, "en-GB");
+        room.register(alice);
+        room.register(bob);
+        alice.sendMessage(room, "uno");
+        bob.sendMessage(room, "dos");
+        commit(room, log);
+        store.write(room);
+        bob.sendMessage(room, "tres");
+        commit(room, log);
+        log.close();
+
+        log = openLog();
+        ChatRoom first = restore(store, log);
+        alice = memberOf(first, "alice");
+        AbstractChatUser carol = new LocalizedChatUser("carol", NOWHERE, "es-ES");
+        first.register(carol);
+        carol.sendMessage(first, "cuatro");
+        alice.sendMessage(first, "cinco");
+        commit(first, log);
+        store.write(first);
+        alice.sendMessage(first, "seis");
+        first.unregister(memberOf(first, "bob"));
+        commit(first, log);
+        log.close();
+
+        log = openLog();
+        ChatRoom second = restore(store, log);
+        assertEquals(first.getLogs(), second.getLogs());
+        assertEquals(new HashSet<>(Arrays.asList("alice", "carol")), usernamesOf(second));
+        List<String> seen = memberOf(second, "alice").getChatHistory();
+        assertEquals(Arrays.asList(
+                "Tú le caiste al chat.",
+                "bob le cayó al chat.",
+                "Tú dijiste: uno",
+                "bob dijo: dos",
+                "bob dijo: tres",
+                "carol le cayó al chat.",
+                "carol dijo: cuatro",
+                "Tú dijiste: cinco",
+                "Tú dijiste: seis",
+                "bob se peló del chat."), seen);
+        int aliceId = memberOf(second, "alice").getId();
+        int carolId = memberOf(second, "carol").getId();
+        assertTrue(aliceId != carolId);
+        // users built from now on don't take any restored id.
+        AbstractChatUser dave = new LocalizedChatUser("dave", NOWHERE, "en-GB");
+        assertTrue(dave.getId() > Math.max(aliceId, carolId));
+        log.close();
+    }
+
+    /**
+     * Opens the room's event log, committing every write right away.
+     *
+     * @return the event log.
+     * @throws IOException if the log can't be opened.
+     */
+    private EventLog openLog() throws IOException {
+        return new EventLog(directory.resolve("log"), 1 << 20, 0, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Restores the room from the test's store.
+     *
+     * @param store the store.
+     * @param log   the room's event log.
+     * @return the restored room.
+     * @throws IOException if the log can't be read.
+     */
+    private static ChatRoom restore(SnapshotStore store, EventLog log) throws IOException {
+        return store.restore("room", new SynchronousDispatcher(), RoomHistory.ofEntries(1000), log,
+                LocaleRegistry.getDefault(), username -> NOWHERE);
+    }
+
+    /**
+     * Waits until the event log has committed every notification the room accepted.
+     *
+     * @param room the room.
+     * @param log  the room's event log.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    private static void commit(ChatRoom room, EventLog log) throws InterruptedException {
+        while (log.getLastCommitted() + 1 < room.getHistory().getNextSequence()) {
+            Thread.sleep(1);
+        }
+    }
+
+    /**
+     * Finds a member of a room by username.
+     *
+     * @param room     the room.
+     * @param username the member's username.
+     * @return the member.
+     */
+    private static AbstractChatUser memberOf(ChatRoom room, String username) {
+        for (AbstractChatUser user : room.members()) {
+            if (user.getUsername().equals(username)) {
+                return user;
+            }
+        }
+        throw new AssertionError(username + " isn't a member.");
+    }
+
+    /**
+     * Lists the usernames of a room's members.
+     *
+     * @param room the room.
+     * @return the usernames.
+     */
+    private static HashSet<String> usernamesOf(ChatRoom room) {
+        HashSet<String> usernames = new HashSet<>();
+        for (AbstractChatUser user : room.members()) {
+            usernames.add(user.getUsername());
+        }
+        return usernames;
+    }
+}